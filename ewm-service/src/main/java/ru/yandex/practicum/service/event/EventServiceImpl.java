@@ -36,7 +36,10 @@ import ru.yandex.practicum.service.util.UnionService;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 import static ru.yandex.practicum.Util.START_HISTORY;
 import static ru.yandex.practicum.enums.State.PUBLISHED;
@@ -333,10 +336,11 @@ public class EventServiceImpl implements EventService {
                 sort,
                 pageRequest);
         sendInfo(uri, ip);
+        Map<Long, Long> views = getViewsEvents(events);
         for (Event event : events) {
-            event.setViews(getViewsEventById(event.getId()));
-            eventRepository.save(event);
+            event.setViews(views.getOrDefault(event.getId(), 0L));
         }
+        eventRepository.saveAll(events);
         return EventMapper.returnEventShortDtoList(events);
     }
 
@@ -402,6 +406,7 @@ public class EventServiceImpl implements EventService {
                 .uri(uri)
                 .ip(ip)
                 .timestamp(LocalDateTime.now())
+                .clientId(UUID.randomUUID().toString())
                 .build();
         client.addHit(hitDto);
     }
@@ -424,4 +429,32 @@ public class EventServiceImpl implements EventService {
             return result.get(0).getHits();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Получает количество просмотров списка событий одним запросом к сервису статистики.
+     *
+     * @param events События.
+     * @return Количество просмотров по идентификаторам событий; события без просмотров отсутствуют.
+     */
+    private Map<Long, Long> getViewsEvents(List<Event> events) {
+        Map<String, Long> eventIds = new HashMap<>();
+        for (Event event : events) {
+            eventIds.put("/events/" + event.getId(), event.getId());
+        }
+        Map<Long, Long> views = new HashMap<>();
+        if (eventIds.isEmpty()) {
+            return views;
+        }
+        ResponseEntity<Object> response = client.findStats(START_HISTORY, LocalDateTime.now(),
+                new ArrayList<>(eventIds.keySet()), true);
+        List<StatsDto> result = objectMapper.convertValue(response.getBody(), new TypeReference<>() {
+        });
+        for (StatsDto stats : result) {
+            Long eventId = eventIds.get(stats.getUri());
+            if (eventId != null) {
+                views.merge(eventId, stats.getHits(), Math::max);
+            }
+        }
+        return views;
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.lang.Nullable;
 import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
 public class BaseClient {
@@ -23,6 +24,38 @@ public class BaseClient {
         return makeAndSendRequest(HttpMethod.POST, path, null, body);
     }
 
+    /**
+     * Отправляет POST-запрос и повторяет его с тем же телом при сетевой ошибке, ответе 429 или 5xx,
+     * удваивая паузу между попытками. Подходит только для запросов, повтор которых безопасен.
+     *
+     * @param maxAttempts наибольшее число попыток
+     * @param delayMs     пауза перед второй попыткой
+     * @return ответ последней попытки
+     * @throws ResourceAccessException если сервер недоступен и попытки кончились
+     */
+    protected <T> ResponseEntity<Object> postWithRetry(String path, T body, int maxAttempts, long delayMs) {
+        long delay = delayMs;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                ResponseEntity<Object> response = post(path, body);
+                if (attempt >= maxAttempts || !isRetryable(response)) {
+                    return response;
+                }
+            } catch (ResourceAccessException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ResourceAccessException("Interrupted while retrying " + path);
+            }
+            delay *= 2;
+        }
+    }
+
     protected ResponseEntity<Object> get(String path, @Nullable Map<String, Object> parameters) {
         return makeAndSendRequest(HttpMethod.GET, path, parameters, null);
     }
@@ -45,6 +78,10 @@ public class BaseClient {
         return prepareGatewayResponse(statsServiceResponse);
     }
 
+    private static boolean isRetryable(ResponseEntity<Object> response) {
+        return response.getStatusCode().is5xxServerError() || response.getStatusCodeValue() == 429;
+    }
+
     private HttpHeaders defaultHeaders() {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
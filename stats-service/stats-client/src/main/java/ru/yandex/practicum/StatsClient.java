@@ -10,21 +10,43 @@ import org.springframework.web.util.DefaultUriBuilderFactory;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Map;
 
 import static ru.yandex.practicum.Util.DATE_FORMAT;
 
 @Service
 public class StatsClient extends BaseClient {
+    private final int maxAttempts;
+    private final long retryDelayMs;
 
     /**
-     * Добавляет новый хит в статистику.
+     * Добавляет новый хит в статистику. Хит с заполненным clientId можно безопасно
+     * отправить повторно: сервер сохранит его один раз, поэтому при сетевой ошибке, ответе 429 или 5xx
+     * он отправляется ещё раз, всего до {@code stats-server.client.max-attempts} попыток.
      *
      * @param hitDto объект с данными о хите
      * @return ответ от сервера статистики
      */
     public ResponseEntity<Object> addHit(HitDto hitDto) {
-        return post("/hit", hitDto);
+        if (hitDto.getClientId() == null) {
+            return post("/hit", hitDto);
+        }
+        return postWithRetry("/hit", hitDto, maxAttempts, retryDelayMs);
+    }
+
+    /**
+     * Добавляет пачку хитов в статистику одним запросом. Пачка, в которой у всех хитов
+     * заполнен clientId, повторяется так же, как {@link #addHit(HitDto)}.
+     *
+     * @param hitDtos список объектов с данными о хитах
+     * @return ответ от сервера статистики
+     */
+    public ResponseEntity<Object> addHits(List<HitDto> hitDtos) {
+        if (hitDtos.stream().anyMatch(hitDto -> hitDto.getClientId() == null)) {
+            return post("/hits/batch", hitDtos);
+        }
+        return postWithRetry("/hits/batch", hitDtos, maxAttempts, retryDelayMs);
     }
 
     /**
@@ -32,18 +54,24 @@ public class StatsClient extends BaseClient {
      * с сервером статистики. Он инициализирует клиент с заданным URL-адресом сервера
      * и настраивает RestTemplate для отправки HTTP-запросов к этому серверу.
      *
-     * @param serverUrl URL-адрес сервера статистики, к которому будет выполняться
-     *                  HTTP-запросы. Значение этого параметра берется из конфигурации
-     *                  приложения с помощью аннотации {@code @Value("${stats-server.url}")}.
-     * @param builder   Объект RestTemplateBuilder, который используется для настройки
-     *                  RestTemplate.
+     * @param serverUrl    URL-адрес сервера статистики, к которому будет выполняться
+     *                     HTTP-запросы. Значение этого параметра берется из конфигурации
+     *                     приложения с помощью аннотации {@code @Value("${stats-server.url}")}.
+     * @param builder      Объект RestTemplateBuilder, который используется для настройки
+     *                     RestTemplate.
+     * @param maxAttempts  наибольшее число попыток отправки хитов с clientId
+     * @param retryDelayMs пауза перед повторной отправкой, удваивается с каждой попыткой
      */
     @Autowired
-    public StatsClient(@Value("${stats-server.url}") String serverUrl, RestTemplateBuilder builder) {
+    public StatsClient(@Value("${stats-server.url}") String serverUrl, RestTemplateBuilder builder,
+                       @Value("${stats-server.client.max-attempts:3}") int maxAttempts,
+                       @Value("${stats-server.client.retry-delay-ms:100}") long retryDelayMs) {
         super(builder.uriTemplateHandler(new DefaultUriBuilderFactory(serverUrl))
                 .requestFactory(HttpComponentsClientHttpRequestFactory::new)
                 .build()
         );
+        this.maxAttempts = maxAttempts;
+        this.retryDelayMs = retryDelayMs;
     }
 
     /**
@@ -64,4 +92,24 @@ public class StatsClient extends BaseClient {
         );
         return get("/stats?start={start}&end={end}&uris={uris}&unique={unique}", parameters);
     }
+
+    /**
+     * Находит статистику за указанный период времени по списку адресов любой длины:
+     * параметры передаются в теле запроса POST /stats/query.
+     *
+     * @param start  начало периода времени
+     * @param end    конец периода времени
+     * @param uris   список URL-адресов, по которым велась статистика
+     * @param unique флаг, указывающий, считать ли уникальные хиты
+     * @return ответ от сервера статистики
+     */
+    public ResponseEntity<Object> findStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                            boolean unique) {
+        return post("/stats/query", StatsQueryDto.builder()
+                .start(start)
+                .end(end)
+                .uris(uris)
+                .unique(unique)
+                .build());
+    }
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import lombok.experimental.FieldDefaults;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
 
 import java.time.LocalDateTime;
 
@@ -19,12 +20,16 @@ import static ru.yandex.practicum.Util.DATE_FORMAT;
 public class HitDto {
     Long id;
     @NotBlank
+    @Size(max = 255)
     String app;
     @NotBlank
+    @Size(max = 255)
     String uri;
     @NotBlank
     String ip;
     @NotNull
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = DATE_FORMAT)
     LocalDateTime timestamp;
+    @Size(max = 64)
+    String clientId;
 }
\ No newline at end of file
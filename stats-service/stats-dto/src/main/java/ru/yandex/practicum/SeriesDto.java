@@ -0,0 +1,17 @@
+package ru.yandex.practicum;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class SeriesDto {
+    String app;
+    String uri;
+    List<SeriesPointDto> points;
+}
@@ -2,7 +2,11 @@ package ru.yandex.practicum;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
+@EnableAsync(proxyTargetClass = true)
+@EnableScheduling
 @SpringBootApplication
 public class StatsServerApp {
     public static void main(String[] args) {
@@ -0,0 +1,113 @@
+package ru.yandex.practicum.alltime;
+
+import lombok.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.dictionary.AppUri;
+import ru.yandex.practicum.hit.Hit;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Repository
+@StandaloneNode
+public class AllTimeRepository {
+    private static final String POSTGRES_UPSERT = "INSERT INTO hits_all_time (app_id, uri_id, hits, first_seen, last_seen) " +
+            "VALUES (:appId, :uriId, :hits, :firstSeen, :lastSeen) " +
+            "ON CONFLICT (uri_id, app_id) DO UPDATE SET hits = hits_all_time.hits + EXCLUDED.hits, " +
+            "first_seen = LEAST(hits_all_time.first_seen, EXCLUDED.first_seen), " +
+            "last_seen = GREATEST(hits_all_time.last_seen, EXCLUDED.last_seen)";
+    private static final String H2_UPSERT = "MERGE INTO hits_all_time AS t " +
+            "USING (VALUES (CAST(:appId AS INTEGER), CAST(:uriId AS INTEGER), CAST(:hits AS BIGINT), " +
+            "CAST(:firstSeen AS TIMESTAMP), CAST(:lastSeen AS TIMESTAMP))) " +
+            "AS s (app_id, uri_id, hits, first_seen, last_seen) " +
+            "ON t.uri_id = s.uri_id AND t.app_id = s.app_id " +
+            "WHEN MATCHED THEN UPDATE SET hits = t.hits + s.hits, first_seen = LEAST(t.first_seen, s.first_seen), " +
+            "last_seen = GREATEST(t.last_seen, s.last_seen) " +
+            "WHEN NOT MATCHED THEN INSERT (app_id, uri_id, hits, first_seen, last_seen) " +
+            "VALUES (s.app_id, s.uri_id, s.hits, s.first_seen, s.last_seen)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final String upsert;
+
+    public AllTimeRepository(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        String database = jdbcTemplate.getJdbcTemplate().execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        this.upsert = "H2".equals(database) ? H2_UPSERT : POSTGRES_UPSERT;
+    }
+
+    /**
+     * Увеличивает счётчики хитов за всё время и сдвигает границы времени хитов по парам приложение-адрес.
+     * Должен вызываться в той же транзакции, что и вставка самих хитов.
+     *
+     * @param hits список хитов
+     */
+    public void addAll(List<Hit> hits) {
+        Map<AppUri, Counter> counters = new TreeMap<>();
+        for (Hit hit : hits) {
+            counters.computeIfAbsent(new AppUri(hit.getAppId(), hit.getUriId()), key -> new Counter(hit.getTimestamp()))
+                    .add(hit.getTimestamp());
+        }
+        List<SqlParameterSource> params = new ArrayList<>(counters.size());
+        counters.forEach((key, counter) -> params.add(new MapSqlParameterSource()
+                .addValue("appId", key.getAppId())
+                .addValue("uriId", key.getUriId())
+                .addValue("hits", counter.hits)
+                .addValue("firstSeen", Timestamp.valueOf(counter.firstSeen))
+                .addValue("lastSeen", Timestamp.valueOf(counter.lastSeen))));
+        jdbcTemplate.batchUpdate(upsert, params.toArray(new SqlParameterSource[0]));
+    }
+
+    /**
+     * Читает все счётчики за всё время.
+     *
+     * @return счётчики по парам приложение-адрес
+     */
+    public List<AllTimeCount> findAll() {
+        return jdbcTemplate.getJdbcTemplate().query(
+                "SELECT app_id, uri_id, hits, first_seen, last_seen FROM hits_all_time",
+                (rs, rowNum) -> new AllTimeCount(
+                        new AppUri(rs.getInt("app_id"), rs.getInt("uri_id")),
+                        rs.getLong("hits"),
+                        rs.getTimestamp("first_seen").toLocalDateTime(),
+                        rs.getTimestamp("last_seen").toLocalDateTime()));
+    }
+
+    @Value
+    public static class AllTimeCount {
+        AppUri key;
+        long hits;
+        LocalDateTime firstSeen;
+        LocalDateTime lastSeen;
+    }
+
+    private static final class Counter {
+        private long hits;
+        private LocalDateTime firstSeen;
+        private LocalDateTime lastSeen;
+
+        private Counter(LocalDateTime timestamp) {
+            this.firstSeen = timestamp;
+            this.lastSeen = timestamp;
+        }
+
+        private void add(LocalDateTime timestamp) {
+            hits++;
+            if (timestamp.isBefore(firstSeen)) {
+                firstSeen = timestamp;
+            }
+            if (timestamp.isAfter(lastSeen)) {
+                lastSeen = timestamp;
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package ru.yandex.practicum.alltime;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.bitmap.BitmapStore;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.dictionary.AppUri;
+import ru.yandex.practicum.hit.Hit;
+import ru.yandex.practicum.ingest.HitListener;
+import ru.yandex.practicum.ingest.HitWriter;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Отвечает на запросы за всю историю, например, от START_HISTORY до текущего момента,
+ * по счётчикам за всё время: числу хитов из таблицы `hits_all_time`, которая обновляется
+ * в транзакции записи хитов, и битовым картам уникальных IP-адресов за всё время.
+ * Счётчики читаются из таблицы один раз после старта, пока запись хитов приостановлена,
+ * а дальше пополняются в памяти после каждой записи, поэтому запрос не обращается к базе.
+ * Период покрывает историю, если по каждому запрошенному адресу и каждому его приложению
+ * и первый, и последний хит попадают в период; иначе запрос считается обычным путём.
+ */
+@Component
+@Order(HitListener.AGGREGATE_ORDER)
+@StandaloneNode
+@Slf4j
+public class AllTimeStatsReader implements HitListener {
+    private final AllTimeRepository allTimeRepository;
+    private final BitmapStore bitmapStore;
+    private final ObjectProvider<HitWriter> hitWriter;
+    private final boolean enabled;
+    private final ConcurrentMap<Integer, ConcurrentMap<Integer, AllTimeRepository.AllTimeCount>> counters =
+            new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    public AllTimeStatsReader(AllTimeRepository allTimeRepository,
+                              BitmapStore bitmapStore,
+                              ObjectProvider<HitWriter> hitWriter,
+                              @Value("${stats-server.all-time.enabled:true}") boolean enabled) {
+        this.allTimeRepository = allTimeRepository;
+        this.bitmapStore = bitmapStore;
+        this.hitWriter = hitWriter;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Читает счётчики из таблицы в фоне после старта сервера. Запись хитов на это время
+     * приостанавливается, чтобы ни один хит не попал и в прочитанные счётчики, и в пополнение.
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        int rows = hitWriter.getObject().paused(() -> {
+            List<AllTimeRepository.AllTimeCount> all = allTimeRepository.findAll();
+            for (AllTimeRepository.AllTimeCount row : all) {
+                counters.computeIfAbsent(row.getKey().getUriId(), key -> new ConcurrentHashMap<>())
+                        .put(row.getKey().getAppId(), row);
+            }
+            loaded = true;
+            return all.size();
+        });
+        log.info("Loaded {} all-time counters in {} ms", rows, System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Считает хиты за полуоткрытый интервал времени, если он покрывает всю историю запрошенных адресов.
+     *
+     * @param from   начало интервала
+     * @param to     конец интервала
+     * @param uriIds идентификаторы адресов или null для всех адресов
+     * @param unique флаг, указывающий, считать ли уникальные хиты
+     * @return счётчики по парам приложение-адрес или null, если интервал не покрывает историю
+     */
+    public Map<AppUri, Long> count(LocalDateTime from, LocalDateTime to, List<Integer> uriIds, boolean unique) {
+        if (!enabled || !loaded || unique && !bitmapStore.isLoaded()) {
+            return null;
+        }
+        Map<AppUri, Long> counts = new HashMap<>();
+        Collection<Integer> keys = uriIds == null ? counters.keySet() : uriIds;
+        for (Integer uriId : keys) {
+            ConcurrentMap<Integer, AllTimeRepository.AllTimeCount> byApp = counters.get(uriId);
+            if (byApp == null) {
+                continue;
+            }
+            for (AllTimeRepository.AllTimeCount row : byApp.values()) {
+                if (row.getFirstSeen().isBefore(from) || !row.getLastSeen().isBefore(to)) {
+                    return null;
+                }
+                counts.put(row.getKey(), row.getHits());
+            }
+        }
+        if (!unique) {
+            return counts;
+        }
+        for (Map.Entry<AppUri, Long> entry : counts.entrySet()) {
+            Long ips = bitmapStore.countAllTime(entry.getKey());
+            if (ips == null) {
+                return null;
+            }
+            entry.setValue(ips);
+        }
+        return counts;
+    }
+
+    @Override
+    public void onHits(List<Hit> hits) {
+        if (!loaded) {
+            return;
+        }
+        for (Hit hit : hits) {
+            AllTimeRepository.AllTimeCount added = new AllTimeRepository.AllTimeCount(
+                    new AppUri(hit.getAppId(), hit.getUriId()), 1, hit.getTimestamp(), hit.getTimestamp());
+            counters.computeIfAbsent(hit.getUriId(), key -> new ConcurrentHashMap<>())
+                    .merge(hit.getAppId(), added, AllTimeStatsReader::plus);
+        }
+    }
+
+    private static AllTimeRepository.AllTimeCount plus(AllTimeRepository.AllTimeCount left,
+                                                       AllTimeRepository.AllTimeCount right) {
+        return new AllTimeRepository.AllTimeCount(left.getKey(), left.getHits() + right.getHits(),
+                left.getFirstSeen().isBefore(right.getFirstSeen()) ? left.getFirstSeen() : right.getFirstSeen(),
+                left.getLastSeen().isAfter(right.getLastSeen()) ? left.getLastSeen() : right.getLastSeen());
+    }
+}
@@ -0,0 +1,102 @@
+package ru.yandex.practicum.bitmap;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.StatsDto;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.dictionary.AppUri;
+import ru.yandex.practicum.dictionary.HitDictionary;
+import ru.yandex.practicum.hit.HitCursorRepository;
+import ru.yandex.practicum.rollup.TimeRange;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Точно считает уникальные IP-адреса по дневным битовым картам.
+ * Целые дни периода объединяются операцией OR над картами, а неполные дни по краям
+ * досчитываются по сырой таблице `hits` в те же карты, поэтому стоимость запроса
+ * зависит от числа дней и хитов на краях периода, а не от всех хитов за период.
+ */
+@Component
+@RequiredArgsConstructor
+@StandaloneNode
+public class BitmapStatsReader {
+    private final BitmapStore bitmapStore;
+    private final HitCursorRepository hitCursorRepository;
+    private final HitDictionary hitDictionary;
+
+    public boolean isReady() {
+        return bitmapStore.isLoaded();
+    }
+
+    /**
+     * Находит точную статистику по уникальным IP-адресам за указанный период, включая его границы.
+     *
+     * @param start  начало периода времени
+     * @param end    конец периода времени
+     * @param uriIds идентификаторы адресов или null для всех адресов
+     * @return список объектов со статистикой по хитам, отсортированный по убыванию числа хитов
+     */
+    public List<StatsDto> findUniqueStats(LocalDateTime start, LocalDateTime end, List<Integer> uriIds) {
+        return hitDictionary.toStats(countUnique(start.truncatedTo(ChronoUnit.SECONDS),
+                end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1), uriIds));
+    }
+
+    /**
+     * Точно считает уникальные IP-адреса за полуоткрытый интервал времени.
+     *
+     * @param from   начало интервала
+     * @param to     конец интервала
+     * @param uriIds идентификаторы адресов или null для всех адресов
+     * @return число уникальных IP-адресов по парам приложение-адрес
+     */
+    public Map<AppUri, Long> countUnique(LocalDateTime from, LocalDateTime to, List<Integer> uriIds) {
+        Map<AppUri, Long> counts = new HashMap<>();
+        union(from, to, uriIds).forEach((key, bitmap) -> counts.put(key, bitmap.cardinality()));
+        return counts;
+    }
+
+    /**
+     * Собирает карты IP-адресов за полуоткрытый интервал времени.
+     *
+     * @param from   начало интервала
+     * @param to     конец интервала
+     * @param uriIds идентификаторы адресов или null для всех адресов
+     * @return новые карты по парам приложение-адрес
+     */
+    public Map<AppUri, IpBitmap> union(LocalDateTime from, LocalDateTime to, List<Integer> uriIds) {
+        LocalDateTime daysFrom = ceilDay(from);
+        LocalDateTime daysTo = to.truncatedTo(ChronoUnit.DAYS);
+        Map<AppUri, IpBitmap> bitmaps;
+        List<TimeRange> edges = new ArrayList<>();
+        if (daysFrom.isBefore(daysTo)) {
+            bitmaps = bitmapStore.union(daysFrom.toLocalDate(), daysTo.toLocalDate(), uriIds);
+            addIfNotEmpty(edges, new TimeRange(from, daysFrom));
+            addIfNotEmpty(edges, new TimeRange(daysTo, to));
+        } else {
+            bitmaps = new HashMap<>();
+            addIfNotEmpty(edges, new TimeRange(from, to));
+        }
+        if (!edges.isEmpty()) {
+            hitCursorRepository.forEach(edges, uriIds, (appId, uriId, ip, timestamp) ->
+                    bitmapStore.addIp(bitmaps.computeIfAbsent(new AppUri(appId, uriId), key -> new IpBitmap()), ip));
+        }
+        return bitmaps;
+    }
+
+    private static LocalDateTime ceilDay(LocalDateTime time) {
+        LocalDateTime day = time.truncatedTo(ChronoUnit.DAYS);
+        return day.equals(time) ? day : day.plusDays(1);
+    }
+
+    private static void addIfNotEmpty(List<TimeRange> ranges, TimeRange range) {
+        if (!range.isEmpty()) {
+            ranges.add(range);
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package ru.yandex.practicum.bitmap;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.dictionary.AppUri;
+import ru.yandex.practicum.dictionary.HitDictionary;
+import ru.yandex.practicum.hit.Hit;
+import ru.yandex.practicum.hit.IpAddress;
+import ru.yandex.practicum.ingest.HitListener;
+import ru.yandex.practicum.partition.HitPartitionManager;
+import ru.yandex.practicum.snapshot.SnapshotPart;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Хранит в памяти сжатые битовые карты IP-адресов для каждой тройки (приложение, адрес, день)
+ * и карту за всё время для каждой пары приложение-адрес.
+ * Карты пополняются после сохранения хитов, а при старте сервера восстанавливаются из снимка
+ * и более новых хитов таблицы `hits`. Порядковые номера IPv6-адресов берутся из словаря в базе,
+ * поэтому карты из снимка остаются верными после перезапуска; новые порядковые номера при загрузке
+ * создаются пачками по {@code IPV6_BATCH} адресов.
+ * Дневные карты хранятся в пределах срока хранения сырых хитов {@code stats-server.partitions.retention-days}:
+ * более ранние дни не нужны запросам уникальных IP и удаляются вместе с партициями.
+ * Карта за всё время, в которой набралось больше {@code stats-server.bitmaps.all-time-max-ips} адресов,
+ * заменяется отметкой о переполнении: запросы за всю историю такой пары считаются обычным путём.
+ * Хиты добавляются под общей блокировкой, а удаление старых дней и опустевших карт - под исключительной,
+ * чтобы хит не попал в уже удалённую карту.
+ */
+@Slf4j
+@Component
+@Order(HitListener.AGGREGATE_ORDER)
+@StandaloneNode
+public class BitmapStore implements HitListener, SnapshotPart {
+    private static final int IPV4_BYTES = 4;
+    private static final int IPV6_BATCH = 1000;
+    private static final IpBitmap OVERFLOWED = new IpBitmap();
+
+    private final HitDictionary hitDictionary;
+    private final HitPartitionManager hitPartitionManager;
+    private final boolean enabled;
+    private final long allTimeMaxIps;
+    private final ReadWriteLock evictionLock = new ReentrantReadWriteLock();
+    private final ConcurrentMap<Integer, ConcurrentMap<Integer, ConcurrentNavigableMap<Long, IpBitmap>>> bitmaps =
+            new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, ConcurrentMap<Integer, IpBitmap>> allTime = new ConcurrentHashMap<>();
+    private final List<PendingIpv6> pendingIpv6 = new ArrayList<>();
+    private final Set<String> pendingAddresses = new HashSet<>();
+    private volatile long horizonDay = Long.MIN_VALUE;
+    private volatile boolean loaded;
+
+    public BitmapStore(HitDictionary hitDictionary,
+                       HitPartitionManager hitPartitionManager,
+                       @Value("${stats-server.bitmaps.enabled:true}") boolean enabled,
+                       @Value("${stats-server.bitmaps.all-time-max-ips:1000000}") long allTimeMaxIps) {
+        this.hitDictionary = hitDictionary;
+        this.hitPartitionManager = hitPartitionManager;
+        this.enabled = enabled;
+        this.allTimeMaxIps = allTimeMaxIps;
+        evictExpired();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    @Override
+    public String section() {
+        return "bitmaps";
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Записывает дневные карты записями (адрес, приложение, день, карта), затем карты за всё время
+     * записями (приложение, адрес, признак карты, карта), где карты переполненной пары нет;
+     * каждый список завершается признаком конца.
+     */
+    @Override
+    public void writeSnapshot(DataOutput out) throws IOException {
+        for (Map.Entry<Integer, ConcurrentMap<Integer, ConcurrentNavigableMap<Long, IpBitmap>>> byUri :
+                bitmaps.entrySet()) {
+            for (Map.Entry<Integer, ConcurrentNavigableMap<Long, IpBitmap>> byApp : byUri.getValue().entrySet()) {
+                for (Map.Entry<Long, IpBitmap> byDay : byApp.getValue().entrySet()) {
+                    out.writeBoolean(true);
+                    out.writeInt(byUri.getKey());
+                    out.writeInt(byApp.getKey());
+                    out.writeLong(byDay.getKey());
+                    byDay.getValue().write(out);
+                }
+            }
+        }
+        out.writeBoolean(false);
+        for (Map.Entry<Integer, ConcurrentMap<Integer, IpBitmap>> byUri : allTime.entrySet()) {
+            for (Map.Entry<Integer, IpBitmap> byApp : byUri.getValue().entrySet()) {
+                out.writeBoolean(true);
+                out.writeInt(byApp.getKey());
+                out.writeInt(byUri.getKey());
+                out.writeBoolean(byApp.getValue() != OVERFLOWED);
+                if (byApp.getValue() != OVERFLOWED) {
+                    byApp.getValue().write(out);
+                }
+            }
+        }
+        out.writeBoolean(false);
+    }
+
+    @Override
+    public void readSnapshot(DataInput in) throws IOException {
+        while (in.readBoolean()) {
+            int uriId = in.readInt();
+            int appId = in.readInt();
+            long day = in.readLong();
+            IpBitmap bitmap = IpBitmap.read(in);
+            if (day >= horizonDay) {
+                evictionLock.readLock().lock();
+                try {
+                    dayBitmap(appId, uriId, day).merge(bitmap);
+                } finally {
+                    evictionLock.readLock().unlock();
+                }
+            }
+        }
+        while (in.readBoolean()) {
+            int appId = in.readInt();
+            int uriId = in.readInt();
+            if (!in.readBoolean()) {
+                allTime.computeIfAbsent(uriId, key -> new ConcurrentHashMap<>()).put(appId, OVERFLOWED);
+                continue;
+            }
+            IpBitmap bitmap = IpBitmap.read(in);
+            evictionLock.readLock().lock();
+            try {
+                IpBitmap target = allTimeBitmap(appId, uriId);
+                if (target != OVERFLOWED) {
+                    target.merge(bitmap);
+                    limitAllTime(appId, uriId, target);
+                }
+            } finally {
+                evictionLock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Добавляет хит из таблицы при загрузке. IPv6-адреса без порядкового номера в кеше словаря откладываются,
+     * пока их не наберётся {@code IPV6_BATCH}, и получают номера одной вставкой в словарь.
+     */
+    @Override
+    public void replay(int appId, int uriId, byte[] ip, LocalDateTime timestamp) {
+        if (ip.length == IPV4_BYTES) {
+            evictionLock.readLock().lock();
+            try {
+                add(appId, uriId, ip, timestamp.toLocalDate());
+            } finally {
+                evictionLock.readLock().unlock();
+            }
+            return;
+        }
+        String address = IpAddress.format(ip);
+        Integer ordinal = hitDictionary.cachedIpv6Ordinal(address);
+        if (ordinal != null) {
+            evictionLock.readLock().lock();
+            try {
+                addIpv6(appId, uriId, ordinal, timestamp.toLocalDate().toEpochDay());
+            } finally {
+                evictionLock.readLock().unlock();
+            }
+            return;
+        }
+        pendingIpv6.add(new PendingIpv6(appId, uriId, address, timestamp.toLocalDate().toEpochDay()));
+        pendingAddresses.add(address);
+        if (pendingAddresses.size() >= IPV6_BATCH) {
+            flushPendingIpv6();
+        }
+    }
+
+    @Override
+    public void clear() {
+        bitmaps.clear();
+        allTime.clear();
+    }
+
+    @Override
+    public void markLoaded() {
+        flushPendingIpv6();
+        loaded = true;
+    }
+
+    /**
+     * Удаляет дневные карты за дни раньше срока хранения сырых хитов и опустевшие карты пар.
+     * Выполняется при старте и по расписанию обслуживания партиций.
+     */
+    @Scheduled(cron = "${stats-server.partitions.cron:0 5 0 * * *}")
+    public void evictExpired() {
+        LocalDateTime horizon = hitPartitionManager.getRawHorizon();
+        if (horizon == null) {
+            return;
+        }
+        long day = horizon.toLocalDate().toEpochDay();
+        evictionLock.writeLock().lock();
+        try {
+            horizonDay = day;
+            bitmaps.values().forEach(byApp -> byApp.values().forEach(byDay -> byDay.headMap(day).clear()));
+            bitmaps.values().forEach(byApp -> byApp.values().removeIf(Map::isEmpty));
+            bitmaps.values().removeIf(Map::isEmpty);
+        } finally {
+            evictionLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onHits(List<Hit> hits) {
+        if (!enabled) {
+            return;
+        }
+        evictionLock.readLock().lock();
+        try {
+            for (Hit hit : hits) {
+                add(hit.getAppId(), hit.getUriId(), hit.getIp(), hit.getTimestamp().toLocalDate());
+            }
+        } finally {
+            evictionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Объединяет дневные карты за полуоткрытый интервал дней по каждой паре приложение-адрес.
+     *
+     * @param from   первый день интервала
+     * @param to     день после последнего дня интервала
+     * @param uriIds идентификаторы адресов или null для всех адресов
+     * @return новые карты по парам приложение-адрес
+     */
+    public Map<AppUri, IpBitmap> union(LocalDate from, LocalDate to, List<Integer> uriIds) {
+        Map<AppUri, IpBitmap> result = new HashMap<>();
+        Collection<Integer> keys = uriIds == null ? bitmaps.keySet() : uriIds;
+        for (Integer uriId : keys) {
+            ConcurrentMap<Integer, ConcurrentNavigableMap<Long, IpBitmap>> byApp = bitmaps.get(uriId);
+            if (byApp == null) {
+                continue;
+            }
+            byApp.forEach((appId, byDay) -> {
+                Collection<IpBitmap> days = byDay.subMap(from.toEpochDay(), to.toEpochDay()).values();
+                if (days.isEmpty()) {
+                    return;
+                }
+                IpBitmap union = new IpBitmap();
+                for (IpBitmap day : days) {
+                    day.orInto(union);
+                }
+                result.put(new AppUri(appId, uriId), union);
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Считает уникальные IP-адреса за всё время по карте пары приложение-адрес.
+     *
+     * @param key пара приложение-адрес
+     * @return число уникальных IP-адресов или null, если карты пары нет или она переполнена
+     */
+    public Long countAllTime(AppUri key) {
+        ConcurrentMap<Integer, IpBitmap> byApp = allTime.get(key.getUriId());
+        IpBitmap bitmap = byApp == null ? null : byApp.get(key.getAppId());
+        return bitmap == null || bitmap == OVERFLOWED ? null : bitmap.cardinality();
+    }
+
+    /**
+     * Добавляет IP-адрес в карту.
+     *
+     * @param bitmap карта
+     * @param ip     IP-адрес
+     */
+    public void addIp(IpBitmap bitmap, byte[] ip) {
+        if (ip.length == IPV4_BYTES) {
+            bitmap.addIpv4((ip[0] & 0xff) << 24 | (ip[1] & 0xff) << 16 | (ip[2] & 0xff) << 8 | ip[3] & 0xff);
+        } else {
+            bitmap.addIpv6(hitDictionary.ipv6Ordinal(IpAddress.format(ip)));
+        }
+    }
+
+    private void add(int appId, int uriId, byte[] ip, LocalDate day) {
+        IpBitmap bitmap = allTimeBitmap(appId, uriId);
+        if (bitmap != OVERFLOWED) {
+            addIp(bitmap, ip);
+            limitAllTime(appId, uriId, bitmap);
+        }
+        if (day.toEpochDay() >= horizonDay) {
+            addIp(dayBitmap(appId, uriId, day.toEpochDay()), ip);
+        }
+    }
+
+    private void addIpv6(int appId, int uriId, int ordinal, long day) {
+        IpBitmap bitmap = allTimeBitmap(appId, uriId);
+        if (bitmap != OVERFLOWED) {
+            bitmap.addIpv6(ordinal);
+            limitAllTime(appId, uriId, bitmap);
+        }
+        if (day >= horizonDay) {
+            dayBitmap(appId, uriId, day).addIpv6(ordinal);
+        }
+    }
+
+    private void limitAllTime(int appId, int uriId, IpBitmap bitmap) {
+        if (allTimeMaxIps > 0 && bitmap.cardinality() > allTimeMaxIps
+                && allTime.get(uriId).replace(appId, bitmap, OVERFLOWED)) {
+            log.info("All-time bitmap of app {} uri {} exceeded {} ips and was dropped", appId, uriId, allTimeMaxIps);
+        }
+    }
+
+    private void flushPendingIpv6() {
+        if (pendingIpv6.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> ordinals = hitDictionary.ipv6Ordinals(pendingAddresses);
+        evictionLock.readLock().lock();
+        try {
+            for (PendingIpv6 hit : pendingIpv6) {
+                addIpv6(hit.getAppId(), hit.getUriId(), ordinals.get(hit.getAddress()), hit.getDay());
+            }
+        } finally {
+            evictionLock.readLock().unlock();
+        }
+        pendingIpv6.clear();
+        pendingAddresses.clear();
+    }
+
+    private IpBitmap dayBitmap(int appId, int uriId, long day) {
+        return bitmaps.computeIfAbsent(uriId, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(appId, key -> new ConcurrentSkipListMap<>())
+                .computeIfAbsent(day, key -> new IpBitmap());
+    }
+
+    private IpBitmap allTimeBitmap(int appId, int uriId) {
+        return allTime.computeIfAbsent(uriId, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(appId, key -> new IpBitmap());
+    }
+
+    @lombok.Value
+    private static class PendingIpv6 {
+        int appId;
+        int uriId;
+        String address;
+        long day;
+    }
+}
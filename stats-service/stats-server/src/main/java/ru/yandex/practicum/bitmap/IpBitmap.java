@@ -0,0 +1,97 @@
+package ru.yandex.practicum.bitmap;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.IntConsumer;
+
+/**
+ * Множество IP-адресов из двух сжатых битовых карт: IPv4-адрес хранится как 32-битное число,
+ * IPv6-адрес - как порядковый номер из словаря. Запись и чтение синхронизированы,
+ * так как хиты добавляются из потоков записи одновременно с запросами статистики.
+ * Число адресов хранится отдельно, чтобы проверять размер карты после каждого хита без обхода контейнеров;
+ * после объединения карт оно пересчитывается при следующем запросе.
+ */
+public class IpBitmap {
+    private static final long UNKNOWN = -1;
+
+    private final RoaringBitmap ipv4 = new RoaringBitmap();
+    private final RoaringBitmap ipv6 = new RoaringBitmap();
+    private long cardinality;
+
+    public synchronized void addIpv4(int address) {
+        if (ipv4.checkedAdd(address) && cardinality != UNKNOWN) {
+            cardinality++;
+        }
+    }
+
+    public synchronized void addIpv6(int ordinal) {
+        if (ipv6.checkedAdd(ordinal) && cardinality != UNKNOWN) {
+            cardinality++;
+        }
+    }
+
+    /**
+     * Добавляет адреса этой карты в другую.
+     *
+     * @param target карта, в которую добавляются адреса
+     */
+    public synchronized void orInto(IpBitmap target) {
+        target.ipv4.or(ipv4);
+        target.ipv6.or(ipv6);
+        target.cardinality = UNKNOWN;
+    }
+
+    /**
+     * Добавляет в эту карту адреса другой карты, в отличие от {@link #orInto(IpBitmap)}
+     * под блокировкой обеих карт, поэтому подходит для карт, которые пополняются одновременно.
+     *
+     * @param other другая карта
+     */
+    public synchronized void merge(IpBitmap other) {
+        synchronized (other) {
+            ipv4.or(other.ipv4);
+            ipv6.or(other.ipv6);
+        }
+        cardinality = UNKNOWN;
+    }
+
+    /**
+     * Добавляет IPv4-адреса карты в другую битовую карту и передаёт порядковые номера IPv6-адресов.
+     *
+     * @param ipv4Target   карта, в которую добавляются IPv4-адреса
+     * @param ipv6Ordinals получатель порядковых номеров IPv6-адресов
+     */
+    public synchronized void copyInto(RoaringBitmap ipv4Target, IntConsumer ipv6Ordinals) {
+        ipv4Target.or(ipv4);
+        for (int ordinal : ipv6.toArray()) {
+            ipv6Ordinals.accept(ordinal);
+        }
+    }
+
+    public synchronized void write(DataOutput out) throws IOException {
+        ipv4.serialize(out);
+        ipv6.serialize(out);
+    }
+
+    public static IpBitmap read(DataInput in) throws IOException {
+        IpBitmap bitmap = new IpBitmap();
+        bitmap.ipv4.deserialize(in);
+        bitmap.ipv6.deserialize(in);
+        bitmap.cardinality = UNKNOWN;
+        return bitmap;
+    }
+
+    public synchronized long cardinality() {
+        if (cardinality == UNKNOWN) {
+            recount();
+        }
+        return cardinality;
+    }
+
+    private void recount() {
+        cardinality = ipv4.getLongCardinality() + ipv6.getLongCardinality();
+    }
+}
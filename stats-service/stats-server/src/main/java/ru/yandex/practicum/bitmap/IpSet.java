@@ -0,0 +1,89 @@
+package ru.yandex.practicum.bitmap;
+
+import org.roaringbitmap.RoaringBitmap;
+import ru.yandex.practicum.hit.IpAddress;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * Множество IP-адресов, которое шард передаёт маршрутизатору, чтобы тот объединил множества
+ * всех шардов. IPv4-адреса хранятся сжатой битовой картой, как в {@link IpBitmap}, а IPv6-адреса -
+ * текстом: порядковые номера IPv6 у каждого шарда свои, и объединять их нельзя.
+ */
+public class IpSet {
+    private static final int IPV4_BYTES = 4;
+
+    private final RoaringBitmap ipv4 = new RoaringBitmap();
+    private final Set<String> ipv6 = new HashSet<>();
+
+    /**
+     * Переводит карту шарда в переносимое множество.
+     *
+     * @param bitmap      карта IP-адресов
+     * @param ipv6Address IPv6-адрес по порядковому номеру из словаря шарда
+     * @return множество адресов карты
+     */
+    public static IpSet of(IpBitmap bitmap, IntFunction<String> ipv6Address) {
+        IpSet set = new IpSet();
+        bitmap.copyInto(set.ipv4, ordinal -> set.ipv6.add(ipv6Address.apply(ordinal)));
+        return set;
+    }
+
+    public void add(byte[] ip) {
+        if (ip.length == IPV4_BYTES) {
+            ipv4.add((ip[0] & 0xff) << 24 | (ip[1] & 0xff) << 16 | (ip[2] & 0xff) << 8 | ip[3] & 0xff);
+        } else {
+            ipv6.add(IpAddress.format(ip));
+        }
+    }
+
+    public void merge(IpSet other) {
+        ipv4.or(other.ipv4);
+        ipv6.addAll(other.ipv6);
+    }
+
+    public long cardinality() {
+        return ipv4.getLongCardinality() + ipv6.size();
+    }
+
+    /**
+     * @return множество в Base64: битовая карта IPv4, число IPv6-адресов и сами адреса
+     */
+    public String encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            ipv4.runOptimize();
+            ipv4.serialize(out);
+            out.writeInt(ipv6.size());
+            for (String address : ipv6) {
+                out.writeUTF(address);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    public static IpSet decode(String encoded) {
+        IpSet set = new IpSet();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(encoded)))) {
+            set.ipv4.deserialize(in);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                set.ipv6.add(in.readUTF());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return set;
+    }
+}
@@ -0,0 +1,171 @@
+package ru.yandex.practicum.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.StatsDto;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.dictionary.UriPrefixIndex;
+import ru.yandex.practicum.hit.Hit;
+import ru.yandex.practicum.ingest.HitListener;
+import ru.yandex.practicum.partition.RetentionNotice;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Кеш ответов GET /stats с инвалидацией по отметкам приёма хитов.
+ * Для каждого адреса и для всех адресов вместе ведётся счётчик сохранённых пачек хитов;
+ * запросы с шаблонами адресов сверяются с общим счётчиком.
+ * Запись кеша запоминает значение счётчиков своих адресов на момент подсчёта и отдаётся,
+ * пока оно не изменилось, а после изменения - ещё не дольше {@code staleness-ms}.
+ * Границы периода входят в ключ точно. Исключение - конец периода не раньше чем за
+ * {@code now-tolerance-seconds} до текущего момента: такой запрос, как у ewm с концом «сейчас»,
+ * считается запросом до текущего момента, и повторы с каждой новой секундой получают общий ответ.
+ * Такой ответ может не учесть только хиты со временем в последние {@code now-tolerance-seconds}
+ * перед концом периода, сохранённые до его подсчёта; новые хиты сдвигают отметку как обычно.
+ * Отметки сдвигаются последним слушателем, когда агрегаты в памяти уже учли пачку.
+ * Запись хранит и {@link RetentionNotice} подсчёта, чтобы ответ из кеша получил тот же заголовок.
+ */
+@Component
+@Order(HitListener.CACHE_ORDER)
+@StandaloneNode
+public class StatsCache implements HitListener {
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long nowToleranceSeconds;
+    private final long stalenessMs;
+    private final AtomicLong globalWatermark = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> uriWatermarks = new ConcurrentHashMap<>();
+    private final Map<Key, Entry> entries;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public StatsCache(MeterRegistry meterRegistry,
+                      @Value("${stats-server.cache.enabled:true}") boolean enabled,
+                      @Value("${stats-server.cache.max-entries:10000}") int maxEntries,
+                      @Value("${stats-server.cache.now-tolerance-seconds:2}") long nowToleranceSeconds,
+                      @Value("${stats-server.cache.staleness-ms:1000}") long stalenessMs) {
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.nowToleranceSeconds = nowToleranceSeconds;
+        this.stalenessMs = stalenessMs;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > StatsCache.this.maxEntries;
+            }
+        };
+        this.hitCounter = Counter.builder("stats.cache.requests")
+                .description("Запросы статистики, отданные из кеша или посчитанные заново")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("stats.cache.requests")
+                .description("Запросы статистики, отданные из кеша или посчитанные заново")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Возвращает статистику из кеша или считает её и кладёт в кеш.
+     *
+     * @param start       начало периода времени
+     * @param end         конец периода времени
+     * @param uris        список адресов или null для всех адресов
+     * @param unique      флаг, указывающий, считать ли уникальные хиты
+     * @param approximate флаг приближённого подсчёта
+     * @param loader      подсчёт статистики
+     * @return статистика по хитам
+     */
+    public List<StatsDto> get(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                              boolean approximate, Supplier<List<StatsDto>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        List<String> sortedUris = uris == null || uris.isEmpty() ? null : new ArrayList<>(new TreeSet<>(uris));
+        Key key = new Key(start, untilNow(end) ? null : end, sortedUris, unique, approximate);
+        long watermark = watermark(sortedUris);
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null && (entry.getWatermark() == watermark
+                || System.currentTimeMillis() - entry.getCreatedAt() <= stalenessMs)) {
+            hitCounter.increment();
+            RetentionNotice.record(entry.getUniqueFrom());
+            return entry.getStats();
+        }
+        missCounter.increment();
+        List<StatsDto> stats = Collections.unmodifiableList(loader.get());
+        synchronized (entries) {
+            entries.put(key, new Entry(stats, watermark, System.currentTimeMillis(), RetentionNotice.get()));
+        }
+        return stats;
+    }
+
+    /**
+     * Сдвигает отметки приёма для адресов сохранённых хитов.
+     *
+     * @param hits список сохранённых хитов
+     */
+    @Override
+    public void onHits(List<Hit> hits) {
+        Set<String> uris = new HashSet<>();
+        for (Hit hit : hits) {
+            uris.add(hit.getUri());
+        }
+        for (String uri : uris) {
+            uriWatermarks.computeIfAbsent(uri, key -> new AtomicLong()).incrementAndGet();
+        }
+        globalWatermark.incrementAndGet();
+    }
+
+    private long watermark(List<String> uris) {
+        if (uris == null || uris.stream().anyMatch(UriPrefixIndex::isPattern)) {
+            return globalWatermark.get();
+        }
+        long watermark = 0;
+        for (String uri : uris) {
+            AtomicLong uriWatermark = uriWatermarks.get(uri);
+            if (uriWatermark != null) {
+                watermark += uriWatermark.get();
+            }
+        }
+        return watermark;
+    }
+
+    private boolean untilNow(LocalDateTime end) {
+        LocalDateTime now = LocalDateTime.now();
+        return !end.isAfter(now) && !end.isBefore(now.minusSeconds(nowToleranceSeconds));
+    }
+
+    @lombok.Value
+    private static class Key {
+        LocalDateTime start;
+        LocalDateTime end;
+        List<String> uris;
+        boolean unique;
+        boolean approximate;
+    }
+
+    @lombok.Value
+    private static class Entry {
+        List<StatsDto> stats;
+        long watermark;
+        long createdAt;
+        LocalDateTime uniqueFrom;
+    }
+}
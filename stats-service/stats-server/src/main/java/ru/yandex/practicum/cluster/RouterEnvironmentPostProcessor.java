@@ -0,0 +1,51 @@
+package ru.yandex.practicum.cluster;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.data.jpa.JpaRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.sql.init.SqlInitializationAutoConfiguration;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Отключает на маршрутизаторе автоконфигурацию базы данных: источник данных, инициализацию схемы,
+ * JPA и транзакции. Компоненты хранилища помечены {@link StandaloneNode} и на маршрутизаторе не создаются,
+ * так что ему не нужна ни своя база, ни её настройки.
+ */
+public class RouterEnvironmentPostProcessor implements EnvironmentPostProcessor, Ordered {
+    private static final String EXCLUDE = "spring.autoconfigure.exclude";
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (!"router".equals(environment.getProperty("stats-server.cluster.role"))) {
+            return;
+        }
+        String excluded = Stream.of(environment.getProperty(EXCLUDE, ""),
+                        DataSourceAutoConfiguration.class.getName(),
+                        DataSourceTransactionManagerAutoConfiguration.class.getName(),
+                        JdbcTemplateAutoConfiguration.class.getName(),
+                        HibernateJpaAutoConfiguration.class.getName(),
+                        JpaRepositoriesAutoConfiguration.class.getName(),
+                        SqlInitializationAutoConfiguration.class.getName())
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.joining(","));
+        environment.getPropertySources().addFirst(new MapPropertySource("statsServerRouter", Map.of(EXCLUDE, excluded)));
+    }
+
+    /**
+     * Выполняется после чтения application.properties и аргументов командной строки.
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+}
@@ -0,0 +1,323 @@
+package ru.yandex.practicum.cluster;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.HitDto;
+import ru.yandex.practicum.SeriesDto;
+import ru.yandex.practicum.StatsDto;
+import ru.yandex.practicum.StatsQueryDto;
+import ru.yandex.practicum.bitmap.IpSet;
+import ru.yandex.practicum.dictionary.UriPrefixIndex;
+import ru.yandex.practicum.exceptions.StatisticsValidationException;
+import ru.yandex.practicum.export.ExportFormat;
+import ru.yandex.practicum.hit.HitService;
+import ru.yandex.practicum.sketch.Hashing;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static ru.yandex.practicum.Util.FORMATTER;
+
+/**
+ * Маршрутизатор кластера stats-server. Каждый адрес принадлежит одному шарду по хешу адреса,
+ * поэтому хиты отправляются владельцу адреса, а запросы статистики - параллельно владельцам
+ * запрошенных адресов или всем шардам; шаблоны адресов со звёздочкой отправляются всем шардам.
+ * Пара приложение-адрес целиком хранится на одном шарде, и ответы шардов, включая число
+ * уникальных IP-адресов, объединяются без пересчёта: списки сливаются и сортируются, топ отбирается
+ * из топов шардов, потоковые ответы сливаются по убыванию числа хитов. Адреса одного шаблона
+ * разложены по разным шардам, поэтому уникальные IP-адреса по шаблону считаются объединением
+ * множеств адресов, которые отдают шарды.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "stats-server.cluster.role", havingValue = "router")
+public class RoutingHitService implements HitService {
+    private static final Comparator<StatsDto> BY_HITS_DESC = Comparator.comparing(StatsDto::getHits).reversed();
+    private static final TypeReference<List<StatsDto>> STATS = new TypeReference<>() {
+    };
+    private static final TypeReference<List<SeriesDto>> SERIES = new TypeReference<>() {
+    };
+    private static final TypeReference<List<UniqueIpsDto>> UNIQUE_IPS = new TypeReference<>() {
+    };
+
+    private final ShardClient shardClient;
+    private final ObjectReader statsReader;
+    private final ObjectWriter statsWriter;
+    private final int batchMaxSize;
+
+    public RoutingHitService(ShardClient shardClient,
+                             ObjectMapper objectMapper,
+                             @Value("${stats-server.hits.batch-max-size:5000}") int batchMaxSize) {
+        this.shardClient = shardClient;
+        this.statsReader = objectMapper.readerFor(StatsDto.class);
+        this.statsWriter = objectMapper.writerFor(StatsDto.class)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.batchMaxSize = batchMaxSize;
+    }
+
+    /**
+     * Отправляет хит шарду, которому принадлежит его адрес.
+     *
+     * @param hitDto объект с данными о хите
+     */
+    @Override
+    public void addHit(HitDto hitDto) {
+        ShardClient.join(shardClient.post(shardOf(hitDto.getUri()), "/hit", hitDto));
+    }
+
+    /**
+     * Раскладывает пачку хитов по шардам и отправляет части параллельно.
+     *
+     * @param hitDtos список объектов с данными о хитах
+     */
+    @Override
+    public void addHits(List<HitDto> hitDtos) {
+        if (hitDtos.size() > batchMaxSize) {
+            throw new StatisticsValidationException("Batch size must not exceed " + batchMaxSize);
+        }
+        Map<Integer, List<HitDto>> parts = new LinkedHashMap<>();
+        for (HitDto hitDto : hitDtos) {
+            parts.computeIfAbsent(shardOf(hitDto.getUri()), shard -> new ArrayList<>()).add(hitDto);
+        }
+        List<CompletableFuture<Void>> requests = new ArrayList<>(parts.size());
+        parts.forEach((shard, part) -> requests.add(shardClient.post(shard, "/hits/batch", part)));
+        joinAll(requests);
+    }
+
+    @Override
+    public List<StatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                                   Boolean approximate) {
+        validatePeriod(start, end);
+        List<CompletableFuture<List<StatsDto>>> requests = new ArrayList<>();
+        route(uris).forEach((shard, shardUris) -> requests.add(shardClient.post(shard, "/stats/query",
+                new StatsQueryDto(start, end, shardUris, unique, approximate), STATS)));
+        List<StatsDto> result = new ArrayList<>();
+        joinAll(requests).forEach(result::addAll);
+        result.sort(BY_HITS_DESC);
+        return result;
+    }
+
+    /**
+     * Суммирует статистику по шаблону адресов с ответов всех шардов: адреса одного шаблона
+     * разложены по разным шардам. Уникальные IP-адреса разных шардов пересекаются,
+     * поэтому для них шарды отдают множества адресов по приложениям, которые объединяются.
+     */
+    @Override
+    public List<StatsDto> getTemplateStats(LocalDateTime start, LocalDateTime end, String template, Boolean unique) {
+        validatePeriod(start, end);
+        if (unique) {
+            return getUniqueTemplateStats(start, end, template);
+        }
+        List<CompletableFuture<List<StatsDto>>> requests = new ArrayList<>();
+        for (int shard = 0; shard < shardClient.size(); shard++) {
+            requests.add(shardClient.get(shard, "/stats?" + period(start, end) + param("template", template), STATS));
+        }
+        Map<String, Long> hitsByApp = new LinkedHashMap<>();
+        joinAll(requests).forEach(stats -> stats.forEach(dto -> hitsByApp.merge(dto.getApp(), dto.getHits(), Long::sum)));
+        List<StatsDto> result = new ArrayList<>(hitsByApp.size());
+        hitsByApp.forEach((app, hits) -> result.add(new StatsDto(app, template, hits)));
+        result.sort(BY_HITS_DESC);
+        return result;
+    }
+
+    @Override
+    public List<UniqueIpsDto> getTemplateUniqueIps(LocalDateTime start, LocalDateTime end, String template) {
+        throw new StatisticsValidationException("Unique ip sets are served by shards, not by the router");
+    }
+
+    /**
+     * Сливает потоковые ответы шардов, каждый из которых отсортирован по убыванию числа хитов,
+     * держа в памяти по одной строке от шарда.
+     */
+    @Override
+    public StreamingResponseBody streamStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                             Boolean unique) {
+        validatePeriod(start, end);
+        Map<Integer, List<String>> targets = route(uris);
+        return out -> {
+            List<CompletableFuture<Stream<String>>> requests = new ArrayList<>();
+            targets.forEach((shard, shardUris) -> requests.add(shardClient.lines(shard, "/stats/stream?"
+                    + period(start, end) + param("uris", shardUris) + param("unique", unique))));
+            List<Stream<String>> streams = joinAll(requests);
+            try {
+                PriorityQueue<Head> heads = new PriorityQueue<>(Comparator.comparing(Head::getStats, BY_HITS_DESC));
+                for (Stream<String> stream : streams) {
+                    Head.next(stream.iterator(), statsReader, heads);
+                }
+                while (!heads.isEmpty()) {
+                    Head head = heads.poll();
+                    statsWriter.writeValue(out, head.getStats());
+                    out.write('\n');
+                    Head.next(head.getLines(), statsReader, heads);
+                }
+            } finally {
+                streams.forEach(Stream::close);
+            }
+        };
+    }
+
+    @Override
+    public List<StatsDto> getTopStats(LocalDateTime start, LocalDateTime end, Integer k, Boolean unique,
+                                      Boolean approximate) {
+        validatePeriod(start, end);
+        if (k < 1) {
+            throw new StatisticsValidationException("k must be positive");
+        }
+        List<CompletableFuture<List<StatsDto>>> requests = new ArrayList<>();
+        for (int shard = 0; shard < shardClient.size(); shard++) {
+            requests.add(shardClient.get(shard, "/stats/top?" + period(start, end) + param("k", k)
+                    + param("unique", unique) + param("approximate", approximate), STATS));
+        }
+        List<StatsDto> result = new ArrayList<>();
+        joinAll(requests).forEach(result::addAll);
+        result.sort(BY_HITS_DESC);
+        return new ArrayList<>(result.subList(0, Math.min(k, result.size())));
+    }
+
+    @Override
+    public List<SeriesDto> getSeries(LocalDateTime start, LocalDateTime end, List<String> uris, String interval,
+                                     Boolean unique, Boolean approximate) {
+        validatePeriod(start, end);
+        List<CompletableFuture<List<SeriesDto>>> requests = new ArrayList<>();
+        route(uris).forEach((shard, shardUris) -> requests.add(shardClient.get(shard, "/stats/series?"
+                + period(start, end) + param("uri", shardUris) + param("interval", interval)
+                + param("unique", unique) + param("approximate", approximate), SERIES)));
+        List<SeriesDto> result = new ArrayList<>();
+        joinAll(requests).forEach(result::addAll);
+        result.sort(Comparator.comparingLong(RoutingHitService::total).reversed());
+        return result;
+    }
+
+    /**
+     * Выгрузка сырых хитов продолжается по идентификаторам хитов, которые у каждого шарда свои,
+     * поэтому выгружать хиты нужно с шардов напрямую.
+     */
+    @Override
+    public StreamingResponseBody exportHits(LocalDateTime start, LocalDateTime end, String app, List<String> uris,
+                                            ExportFormat format, LocalDateTime afterTime, Long afterId) {
+        throw new StatisticsValidationException("Hit export is served by shards, not by the router");
+    }
+
+    private List<StatsDto> getUniqueTemplateStats(LocalDateTime start, LocalDateTime end, String template) {
+        List<CompletableFuture<List<UniqueIpsDto>>> requests = new ArrayList<>();
+        for (int shard = 0; shard < shardClient.size(); shard++) {
+            requests.add(shardClient.get(shard, "/stats/template/ips?" + period(start, end)
+                    + param("template", template), UNIQUE_IPS));
+        }
+        Map<String, IpSet> ipsByApp = new LinkedHashMap<>();
+        joinAll(requests).forEach(sets -> sets.forEach(dto -> ipsByApp.merge(dto.getApp(), IpSet.decode(dto.getIps()),
+                (left, right) -> {
+                    left.merge(right);
+                    return left;
+                })));
+        List<StatsDto> result = new ArrayList<>(ipsByApp.size());
+        ipsByApp.forEach((app, ips) -> result.add(new StatsDto(app, template, ips.cardinality())));
+        result.sort(BY_HITS_DESC);
+        return result;
+    }
+
+    private int shardOf(String uri) {
+        return (int) Math.floorMod(Hashing.hash64(uri), (long) shardClient.size());
+    }
+
+    private Map<Integer, List<String>> route(List<String> uris) {
+        Map<Integer, List<String>> targets = new LinkedHashMap<>();
+        if (uris == null || uris.isEmpty()) {
+            for (int shard = 0; shard < shardClient.size(); shard++) {
+                targets.put(shard, null);
+            }
+            return targets;
+        }
+        for (String uri : uris) {
+            if (UriPrefixIndex.isPattern(uri)) {
+                for (int shard = 0; shard < shardClient.size(); shard++) {
+                    targets.computeIfAbsent(shard, key -> new ArrayList<>()).add(uri);
+                }
+            } else {
+                targets.computeIfAbsent(shardOf(uri), shard -> new ArrayList<>()).add(uri);
+            }
+        }
+        return targets;
+    }
+
+    private static <T> List<T> joinAll(List<CompletableFuture<T>> requests) {
+        List<T> results = new ArrayList<>(requests.size());
+        for (CompletableFuture<T> request : requests) {
+            results.add(ShardClient.join(request));
+        }
+        return results;
+    }
+
+    private static void validatePeriod(LocalDateTime start, LocalDateTime end) {
+        if (start != null && end != null && start.isAfter(end)) {
+            throw new StatisticsValidationException("Start must be after End");
+        }
+    }
+
+    private static long total(SeriesDto series) {
+        return series.getPoints().stream().mapToLong(point -> point.getHits()).sum();
+    }
+
+    private static String period(LocalDateTime start, LocalDateTime end) {
+        return "start=" + encode(FORMATTER.format(start)) + "&end=" + encode(FORMATTER.format(end));
+    }
+
+    private static String param(String name, Object value) {
+        if (value == null) {
+            return "";
+        }
+        if (value instanceof List) {
+            StringBuilder result = new StringBuilder();
+            for (Object item : (List<?>) value) {
+                result.append('&').append(name).append('=').append(encode(item.toString()));
+            }
+            return result.toString();
+        }
+        return "&" + name + "=" + encode(value.toString());
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    @lombok.Value
+    private static class Head {
+        StatsDto stats;
+        Iterator<String> lines;
+
+        static void next(Iterator<String> lines, ObjectReader reader, PriorityQueue<Head> heads) {
+            while (lines.hasNext()) {
+                String line = lines.next();
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    heads.add(new Head(reader.readValue(line), lines));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return;
+            }
+        }
+    }
+}
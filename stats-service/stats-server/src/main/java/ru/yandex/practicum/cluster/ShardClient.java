@@ -0,0 +1,200 @@
+package ru.yandex.practicum.cluster;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import ru.yandex.practicum.exceptions.ShardRequestException;
+import ru.yandex.practicum.partition.RetentionNotice;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * HTTP-клиент маршрутизатора к шардам. Запросы к разным шардам выполняются параллельно,
+ * ошибки шардов превращаются в {@link ShardRequestException} с кодом и текстом ответа шарда.
+ * Заголовок {@link RetentionNotice#HEADER} ответа шарда переносится в ответ маршрутизатора.
+ */
+@Component
+@ConditionalOnProperty(name = "stats-server.cluster.role", havingValue = "router")
+public class ShardClient {
+    private final List<URI> shards;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final Duration timeout;
+
+    public ShardClient(ObjectMapper objectMapper,
+                       @Value("${stats-server.cluster.shards}") List<String> shards,
+                       @Value("${stats-server.cluster.timeout-ms:5000}") long timeoutMs) {
+        if (shards.isEmpty()) {
+            throw new IllegalStateException("stats-server.cluster.shards must list at least one shard");
+        }
+        this.shards = shards.stream().map(URI::create).collect(Collectors.toUnmodifiableList());
+        this.objectMapper = objectMapper;
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    public int size() {
+        return shards.size();
+    }
+
+    /**
+     * Отправляет тело запроса шарду методом POST.
+     *
+     * @param shard номер шарда
+     * @param path  путь запроса
+     * @param body  тело запроса
+     * @return завершение запроса
+     */
+    public CompletableFuture<Void> post(int shard, String path, Object body) {
+        return send(shard, postRequest(shard, path, body), HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> null);
+    }
+
+    /**
+     * Отправляет тело запроса шарду методом POST и читает JSON из ответа.
+     *
+     * @param shard номер шарда
+     * @param path  путь запроса
+     * @param body  тело запроса
+     * @param type  тип ответа
+     * @return ответ шарда
+     */
+    public <T> CompletableFuture<T> post(int shard, String path, Object body, TypeReference<T> type) {
+        return send(shard, postRequest(shard, path, body), HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> fromJson(response.body(), type));
+    }
+
+    /**
+     * Запрашивает у шарда JSON методом GET.
+     *
+     * @param shard номер шарда
+     * @param path  путь запроса со строкой параметров
+     * @param type  тип ответа
+     * @return ответ шарда
+     */
+    public <T> CompletableFuture<T> get(int shard, String path, TypeReference<T> type) {
+        return send(shard, getRequest(shard, path).build(), HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> fromJson(response.body(), type));
+    }
+
+    /**
+     * Запрашивает у шарда ответ построчно, не дожидаясь его окончания.
+     *
+     * @param shard номер шарда
+     * @param path  путь запроса со строкой параметров
+     * @return строки ответа; поток нужно закрыть
+     */
+    public CompletableFuture<Stream<String>> lines(int shard, String path) {
+        return send(shard, getRequest(shard, path).build(), HttpResponse.BodyHandlers.ofLines())
+                .thenApply(HttpResponse::body);
+    }
+
+    /**
+     * Дожидается ответа шарда, разворачивая ошибку запроса.
+     *
+     * @param future ответ шарда
+     * @return результат
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private HttpRequest postRequest(int shard, String path, Object body) {
+        return HttpRequest.newBuilder(shards.get(shard).resolve(path))
+                .timeout(timeout)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(toJson(body)))
+                .build();
+    }
+
+    private HttpRequest.Builder getRequest(int shard, String path) {
+        return HttpRequest.newBuilder(shards.get(shard).resolve(path))
+                .timeout(timeout)
+                .GET();
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> send(int shard, HttpRequest request,
+                                                        HttpResponse.BodyHandler<T> handler) {
+        RequestAttributes routerRequest = RequestContextHolder.getRequestAttributes();
+        return httpClient.sendAsync(request, info -> {
+                    if (info.statusCode() / 100 != 2) {
+                        return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofString(
+                                StandardCharsets.UTF_8), body -> {
+                                    throw error(shard, info, body);
+                                });
+                    }
+                    info.headers().firstValue(RetentionNotice.HEADER).ifPresent(uniqueFrom ->
+                            RetentionNotice.record(routerRequest, RetentionNotice.parse(uniqueFrom)));
+                    return handler.apply(info);
+                })
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof ShardRequestException) {
+                        throw (ShardRequestException) cause;
+                    }
+                    throw new ShardRequestException("Shard " + shards.get(shard) + " is unavailable: "
+                            + cause.getMessage(), HttpStatus.BAD_GATEWAY, null);
+                });
+    }
+
+    private ShardRequestException error(int shard, HttpResponse.ResponseInfo info, String body) {
+        HttpStatus status = HttpStatus.resolve(info.statusCode());
+        String message = body;
+        try {
+            JsonNode error = objectMapper.readTree(body).get("error");
+            if (error != null) {
+                message = error.asText();
+            }
+        } catch (JsonProcessingException e) {
+            message = "Shard " + shards.get(shard) + " responded " + info.statusCode();
+        }
+        return new ShardRequestException(message, status == null ? HttpStatus.BAD_GATEWAY : status,
+                info.headers().firstValue(HttpHeaders.RETRY_AFTER).orElse(null));
+    }
+
+    private byte[] toJson(Object body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private <T> T fromJson(String body, TypeReference<T> type) {
+        try {
+            return objectMapper.readValue(body, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package ru.yandex.practicum.cluster;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Компонент узла с собственным хранилищем хитов: база, приём и запись хитов, агрегаты в памяти
+ * и их загрузка при старте. Маршрутизатор кластера хранит только список шардов, поэтому
+ * с {@code stats-server.cluster.role=router} такие компоненты не создаются.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@ConditionalOnProperty(name = "stats-server.cluster.role", havingValue = "standalone", matchIfMissing = true)
+public @interface StandaloneNode {
+}
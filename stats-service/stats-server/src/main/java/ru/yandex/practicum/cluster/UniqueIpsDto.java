@@ -0,0 +1,19 @@
+package ru.yandex.practicum.cluster;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Множество уникальных IP-адресов приложения по шаблону адресов, которое шард отдаёт маршрутизатору.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UniqueIpsDto {
+    private String app;
+    /**
+     * Множество IP-адресов в виде {@link ru.yandex.practicum.bitmap.IpSet#encode()}.
+     */
+    private String ips;
+}
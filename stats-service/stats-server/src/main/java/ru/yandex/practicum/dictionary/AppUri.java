@@ -0,0 +1,22 @@
+package ru.yandex.practicum.dictionary;
+
+import lombok.Value;
+
+import java.util.Comparator;
+
+/**
+ * Пара идентификаторов приложения и адреса из словарей - ключ группировки статистики.
+ */
+@Value
+public class AppUri implements Comparable<AppUri> {
+    private static final Comparator<AppUri> ORDER = Comparator.comparingInt(AppUri::getUriId)
+            .thenComparingInt(AppUri::getAppId);
+
+    int appId;
+    int uriId;
+
+    @Override
+    public int compareTo(AppUri other) {
+        return ORDER.compare(this, other);
+    }
+}
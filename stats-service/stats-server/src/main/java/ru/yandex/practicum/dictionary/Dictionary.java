@@ -0,0 +1,111 @@
+package ru.yandex.practicum.dictionary;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Двунаправленный кеш словаря строк поверх таблицы с идентификаторами.
+ * Словарь без ограничения загружается в память целиком, и {@link #find(String)} отвечает по памяти.
+ * Словарь с ограничением {@code capacity} держит в памяти только последние использованные значения
+ * в обе стороны, остальные читаются из таблицы; {@link #find(String)} в нём ищет только в кеше.
+ */
+class Dictionary {
+    private final String table;
+    private final DictionaryRepository repository;
+    private final int capacity;
+    private final Map<String, Integer> ids;
+    private final Map<Integer, String> names;
+
+    Dictionary(String table, DictionaryRepository repository) {
+        this(table, repository, 0);
+    }
+
+    /**
+     * @param table      таблица словаря
+     * @param repository репозиторий словарей
+     * @param capacity   наибольшее число значений в кеше или 0, чтобы держать в памяти весь словарь
+     */
+    Dictionary(String table, DictionaryRepository repository, int capacity) {
+        this.table = table;
+        this.repository = repository;
+        this.capacity = capacity;
+        this.ids = capacity > 0 ? lru(capacity) : new ConcurrentHashMap<>();
+        this.names = capacity > 0 ? lru(capacity) : new ConcurrentHashMap<>();
+    }
+
+    void load() {
+        if (capacity <= 0) {
+            repository.findAll(table).forEach(this::put);
+        }
+    }
+
+    int getOrCreate(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = repository.findOrInsert(table, name);
+            put(id, name);
+        }
+        return id;
+    }
+
+    Map<String, Integer> getOrCreateAll(Collection<String> names) {
+        Map<String, Integer> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String name : names) {
+            Integer id = ids.get(name);
+            if (id == null) {
+                missing.add(name);
+            } else {
+                result.put(name, id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            repository.findOrInsertAll(table, missing).forEach((name, id) -> {
+                put(id, name);
+                result.put(name, id);
+            });
+        }
+        return result;
+    }
+
+    Integer find(String name) {
+        return ids.get(name);
+    }
+
+    String name(int id) {
+        String name = names.get(id);
+        if (name == null) {
+            name = repository.findName(table, id);
+            if (name == null) {
+                throw new IllegalStateException("Dictionary " + table + " has no value for id " + id);
+            }
+            put(id, name);
+        }
+        return name;
+    }
+
+    void forEach(BiConsumer<Integer, String> action) {
+        names.forEach(action);
+    }
+
+    private void put(int id, String name) {
+        names.put(id, name);
+        ids.put(name, id);
+    }
+
+    private static <K, V> Map<K, V> lru(int capacity) {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        });
+    }
+}
@@ -0,0 +1,119 @@
+package ru.yandex.practicum.dictionary;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.cluster.StandaloneNode;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Repository
+@StandaloneNode
+public class DictionaryRepository {
+    private static final String POSTGRES_INSERT = "INSERT INTO %s (name) VALUES (?) ON CONFLICT (name) DO NOTHING";
+    private static final String H2_INSERT = "MERGE INTO %s AS t USING (VALUES (CAST(? AS VARCHAR))) AS s (name) " +
+            "ON t.name = s.name WHEN NOT MATCHED THEN INSERT (name) VALUES (s.name)";
+
+    private static final int LOOKUP_BATCH = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate newTransaction;
+    private final String insert;
+
+    public DictionaryRepository(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        this.insert = "H2".equals(database) ? H2_INSERT : POSTGRES_INSERT;
+    }
+
+    /**
+     * Загружает словарь целиком.
+     *
+     * @param table таблица словаря
+     * @return значения по идентификаторам
+     */
+    public Map<Integer, String> findAll(String table) {
+        Map<Integer, String> result = new HashMap<>();
+        jdbcTemplate.query("SELECT id, name FROM " + table, rs -> {
+            result.put(rs.getInt("id"), rs.getString("name"));
+        });
+        return result;
+    }
+
+    /**
+     * Находит значение по идентификатору.
+     *
+     * @param table таблица словаря
+     * @param id    идентификатор
+     * @return значение или null, если идентификатор неизвестен
+     */
+    public String findName(String table, int id) {
+        List<String> names = jdbcTemplate.queryForList("SELECT name FROM " + table + " WHERE id = ?",
+                String.class, id);
+        return names.isEmpty() ? null : names.get(0);
+    }
+
+    /**
+     * Возвращает идентификатор значения, добавляя значение в словарь при необходимости.
+     * Добавление фиксируется в отдельной транзакции, чтобы откат записи хитов
+     * не оставил в кеше идентификатор несуществующей строки.
+     *
+     * @param table таблица словаря
+     * @param name  значение
+     * @return идентификатор значения
+     */
+    public int findOrInsert(String table, String name) {
+        Integer id = newTransaction.execute(status -> {
+            jdbcTemplate.update(String.format(insert, table), name);
+            return jdbcTemplate.queryForObject("SELECT id FROM " + table + " WHERE name = ?", Integer.class, name);
+        });
+        if (id == null) {
+            throw new IllegalStateException("Dictionary " + table + " has no id for " + name);
+        }
+        return id;
+    }
+
+    /**
+     * Возвращает идентификаторы значений, добавляя отсутствующие значения пакетной вставкой
+     * в одной отдельной транзакции.
+     *
+     * @param table таблица словаря
+     * @param names значения
+     * @return идентификаторы по значениям
+     */
+    public Map<String, Integer> findOrInsertAll(String table, Collection<String> names) {
+        List<String> list = List.copyOf(names);
+        Map<String, Integer> result = newTransaction.execute(status -> {
+            jdbcTemplate.batchUpdate(String.format(insert, table),
+                    list.stream().map(name -> new Object[]{name}).collect(Collectors.toList()));
+            Map<String, Integer> ids = new HashMap<>();
+            for (int from = 0; from < list.size(); from += LOOKUP_BATCH) {
+                List<String> chunk = list.subList(from, Math.min(list.size(), from + LOOKUP_BATCH));
+                namedJdbcTemplate.query("SELECT id, name FROM " + table + " WHERE name IN (:names)",
+                        new MapSqlParameterSource("names", chunk),
+                        rs -> {
+                            ids.put(rs.getString("name"), rs.getInt("id"));
+                        });
+            }
+            return ids;
+        });
+        if (result == null || result.size() < list.size()) {
+            throw new IllegalStateException("Dictionary " + table + " has no ids for some of " + list.size() + " values");
+        }
+        return result;
+    }
+}
@@ -0,0 +1,253 @@
+package ru.yandex.practicum.dictionary;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.StatsDto;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.hit.Hit;
+import ru.yandex.practicum.template.TemplateRollupRepository;
+import ru.yandex.practicum.template.UriTemplates;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Словари приложений и адресов с кешем в памяти в обе стороны.
+ * В таблицах хитов и агрегатов вместо строк хранятся целочисленные идентификаторы,
+ * а строки подставляются только при формировании ответа.
+ * Словарь порядковых номеров IPv6-адресов растёт с числом посетителей, поэтому в памяти держатся
+ * только последние {@code stats-server.dictionary.ipv6-cache-size} адресов, остальные читаются из таблицы.
+ * Для адресов, подходящих к настроенным шаблонам, ведётся словарь шаблонов и соответствие адрес-шаблон.
+ * Если при старте соответствие разошлось с сохранённым, например, шаблон добавлен в настройку,
+ * агрегаты затронутых шаблонов пересобираются с учётом всей истории их адресов.
+ */
+@Component
+@StandaloneNode
+public class HitDictionary {
+    private static final int NO_TEMPLATE = 0;
+
+    private final Dictionary apps;
+    private final Dictionary uris;
+    private final Dictionary ipv6;
+    private final Dictionary templates;
+    private final UriTemplates uriTemplates;
+    private final TemplateRollupRepository templateRollupRepository;
+    private final Map<Integer, Integer> uriTemplateIds = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> templateUriIds = new ConcurrentHashMap<>();
+    private final UriPrefixIndex uriPrefixIndex = new UriPrefixIndex();
+    private volatile boolean loaded;
+
+    public HitDictionary(DictionaryRepository dictionaryRepository,
+                         UriTemplates uriTemplates,
+                         TemplateRollupRepository templateRollupRepository,
+                         @Value("${stats-server.dictionary.ipv6-cache-size:100000}") int ipv6CacheSize) {
+        this.apps = new Dictionary("apps", dictionaryRepository);
+        this.uris = new Dictionary("uris", dictionaryRepository);
+        this.ipv6 = new Dictionary("ipv6_ordinals", dictionaryRepository, ipv6CacheSize);
+        this.templates = new Dictionary("uri_templates", dictionaryRepository);
+        this.uriTemplates = uriTemplates;
+        this.templateRollupRepository = templateRollupRepository;
+    }
+
+    @PostConstruct
+    public void load() {
+        apps.load();
+        uris.load();
+        ipv6.load();
+        templates.load();
+        Map<Integer, Integer> stored = templateRollupRepository.findUriTemplates();
+        uris.forEach((id, name) -> indexUri(id));
+        syncTemplates(stored);
+        loaded = true;
+    }
+
+    /**
+     * Проставляет хитам идентификаторы приложения, адреса и шаблона адреса, добавляя новые значения в словари.
+     *
+     * @param hits список хитов
+     */
+    public void encode(List<Hit> hits) {
+        for (Hit hit : hits) {
+            if (hit.getAppId() == null) {
+                hit.setAppId(apps.getOrCreate(hit.getApp()));
+            }
+            if (hit.getUriId() == null) {
+                hit.setUriId(uris.getOrCreate(hit.getUri()));
+            }
+            hit.setTemplateId(indexUri(hit.getUriId()));
+        }
+    }
+
+    /**
+     * Находит идентификатор шаблона адресов.
+     *
+     * @param template шаблон
+     * @return идентификатор шаблона или null, если ни один адрес ещё не подошёл к шаблону
+     */
+    public Integer findTemplateId(String template) {
+        return templates.find(template);
+    }
+
+    /**
+     * Возвращает идентификаторы известных адресов, подходящих к шаблону.
+     *
+     * @param templateId идентификатор шаблона
+     * @return идентификаторы адресов
+     */
+    public List<Integer> findTemplateUriIds(int templateId) {
+        return new ArrayList<>(templateUriIds.getOrDefault(templateId, Collections.emptySet()));
+    }
+
+    /**
+     * Добавляет адрес в индекс адресов по префиксам и находит его шаблон; для каждого адреса выполняется один раз.
+     * Обращения к базе выполняются вне блокировок карты: если адрес индексируют два потока,
+     * шаблон находят оба, а сохраняет соответствие только тот, чья запись попала в карту первой.
+     *
+     * @param uriId идентификатор адреса
+     * @return идентификатор шаблона или null, если адрес не подходит ни к одному шаблону
+     */
+    private Integer indexUri(int uriId) {
+        Integer templateId = uriTemplateIds.get(uriId);
+        if (templateId == null) {
+            String uri = uri(uriId);
+            String template = uriTemplates.match(uri);
+            int newTemplateId = template == null ? NO_TEMPLATE : templates.getOrCreate(template);
+            templateId = uriTemplateIds.putIfAbsent(uriId, newTemplateId);
+            if (templateId == null) {
+                templateId = newTemplateId;
+                uriPrefixIndex.add(uri, uriId);
+                if (newTemplateId != NO_TEMPLATE) {
+                    if (loaded) {
+                        templateRollupRepository.saveUriTemplate(uriId, newTemplateId);
+                    }
+                    templateUriIds.computeIfAbsent(newTemplateId, key -> ConcurrentHashMap.newKeySet()).add(uriId);
+                }
+            }
+        }
+        return templateId == NO_TEMPLATE ? null : templateId;
+    }
+
+    private void syncTemplates(Map<Integer, Integer> stored) {
+        Map<Integer, Integer> current = new HashMap<>();
+        uriTemplateIds.forEach((uriId, templateId) -> {
+            if (templateId != NO_TEMPLATE) {
+                current.put(uriId, templateId);
+            }
+        });
+        Set<Integer> changed = new HashSet<>();
+        stored.forEach((uriId, templateId) -> {
+            if (!templateId.equals(current.get(uriId))) {
+                changed.add(templateId);
+            }
+        });
+        current.forEach((uriId, templateId) -> {
+            if (!templateId.equals(stored.get(uriId))) {
+                changed.add(templateId);
+            }
+        });
+        if (!changed.isEmpty()) {
+            templateRollupRepository.rebuild(current, changed);
+        }
+    }
+
+    /**
+     * Находит идентификаторы известных адресов; неизвестные адреса пропускаются.
+     * Адрес со звёздочкой, например, /events/*, разрешается в подходящие адреса по индексу {@link UriPrefixIndex}.
+     *
+     * @param names список адресов и шаблонов
+     * @return идентификаторы адресов без повторов
+     */
+    public List<Integer> findUriIds(Collection<String> names) {
+        Set<Integer> result = new LinkedHashSet<>();
+        for (String name : names) {
+            if (UriPrefixIndex.isPattern(name)) {
+                uriPrefixIndex.match(name, result);
+                continue;
+            }
+            Integer id = uris.find(name);
+            if (id != null) {
+                result.add(id);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Находит идентификатор известного приложения.
+     *
+     * @param name имя приложения
+     * @return идентификатор приложения или null, если хитов приложения не было
+     */
+    public Integer findAppId(String name) {
+        return apps.find(name);
+    }
+
+    /**
+     * Возвращает порядковый номер IPv6-адреса, добавляя новый адрес в словарь.
+     *
+     * @param address IPv6-адрес
+     * @return порядковый номер адреса
+     */
+    public int ipv6Ordinal(String address) {
+        return ipv6.getOrCreate(address);
+    }
+
+    /**
+     * Находит порядковый номер IPv6-адреса только в кеше словаря, не обращаясь к базе.
+     *
+     * @param address IPv6-адрес
+     * @return порядковый номер адреса или null, если адреса нет в кеше
+     */
+    public Integer cachedIpv6Ordinal(String address) {
+        return ipv6.find(address);
+    }
+
+    /**
+     * Возвращает порядковые номера IPv6-адресов, добавляя новые адреса в словарь одной транзакцией.
+     *
+     * @param addresses IPv6-адреса
+     * @return порядковые номера по адресам
+     */
+    public Map<String, Integer> ipv6Ordinals(Collection<String> addresses) {
+        return ipv6.getOrCreateAll(addresses);
+    }
+
+    /**
+     * @param ordinal порядковый номер IPv6-адреса
+     * @return IPv6-адрес
+     */
+    public String ipv6Address(int ordinal) {
+        return ipv6.name(ordinal);
+    }
+
+    public String appName(int id) {
+        return apps.name(id);
+    }
+
+    public String uri(int id) {
+        return uris.name(id);
+    }
+
+    /**
+     * Преобразует счётчики по идентификаторам в статистику с именами приложений и адресов.
+     *
+     * @param counts счётчики по парам приложение-адрес
+     * @return список объектов со статистикой, отсортированный по убыванию числа хитов
+     */
+    public List<StatsDto> toStats(Map<AppUri, Long> counts) {
+        List<StatsDto> result = new ArrayList<>(counts.size());
+        counts.forEach((key, hits) -> result.add(new StatsDto(appName(key.getAppId()), uri(key.getUriId()), hits)));
+        result.sort(Comparator.comparing(StatsDto::getHits).reversed());
+        return result;
+    }
+}
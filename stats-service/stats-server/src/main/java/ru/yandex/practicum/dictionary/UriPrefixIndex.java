@@ -0,0 +1,89 @@
+package ru.yandex.practicum.dictionary;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Индекс известных адресов для поиска по шаблонам с {@code *}, например,
+ * {@code /events/*} или {@code /compilations/1*}. Звёздочка совпадает с любой, в том числе пустой,
+ * последовательностью символов, включая {@code /}. Адреса хранятся в отсортированной карте,
+ * поэтому адреса с общим префиксом образуют непрерывный диапазон: часть шаблона до первой звёздочки
+ * выбирает диапазон, а остаток шаблона проверяется для каждого адреса диапазона за один проход по адресу.
+ * Карта не блокирует чтение, поэтому поиск идёт одновременно с пополнением словаря.
+ */
+public class UriPrefixIndex {
+    private static final char WILDCARD = '*';
+    private static final String WILDCARD_SPLIT = "\\*+";
+
+    private final ConcurrentSkipListMap<String, Integer> ids = new ConcurrentSkipListMap<>();
+
+    public static boolean isPattern(String uri) {
+        return uri.indexOf(WILDCARD) >= 0;
+    }
+
+    /**
+     * Добавляет адрес в индекс.
+     *
+     * @param uri адрес
+     * @param id  идентификатор адреса в словаре
+     */
+    public void add(String uri, int id) {
+        ids.put(uri, id);
+    }
+
+    /**
+     * Находит идентификаторы адресов, подходящих к шаблону.
+     *
+     * @param pattern шаблон со звёздочками
+     * @param result  множество, в которое добавляются идентификаторы
+     */
+    public void match(String pattern, Set<Integer> result) {
+        int wildcard = pattern.indexOf(WILDCARD);
+        if (wildcard < 0) {
+            Integer id = ids.get(pattern);
+            if (id != null) {
+                result.add(id);
+            }
+            return;
+        }
+        String prefix = pattern.substring(0, wildcard);
+        ConcurrentNavigableMap<String, Integer> range = ids.tailMap(prefix, true);
+        boolean trailingOnly = pattern.lastIndexOf(WILDCARD) == wildcard && wildcard == pattern.length() - 1;
+        String[] segments = trailingOnly ? null : pattern.substring(wildcard).split(WILDCARD_SPLIT, -1);
+        for (Map.Entry<String, Integer> entry : range.entrySet()) {
+            String uri = entry.getKey();
+            if (!uri.startsWith(prefix)) {
+                break;
+            }
+            if (trailingOnly || matchesAfterPrefix(uri, prefix.length(), segments)) {
+                result.add(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Проверяет остаток адреса на совпадение с частью шаблона, начинающейся со звёздочки.
+     * Части между звёздочками ищутся слева направо с самого раннего вхождения, последняя часть
+     * должна заканчивать адрес; для шаблонов только со звёздочками такой жадный поиск точен.
+     *
+     * @param uri      адрес
+     * @param from     позиция в адресе после префикса шаблона
+     * @param segments части шаблона между звёздочками; первая пустая, последняя пустая, если шаблон
+     *                 заканчивается звёздочкой
+     */
+    private static boolean matchesAfterPrefix(String uri, int from, String[] segments) {
+        int position = from;
+        int last = segments.length - 1;
+        for (int i = 1; i < last; i++) {
+            int found = uri.indexOf(segments[i], position);
+            if (found < 0) {
+                return false;
+            }
+            position = found + segments[i].length();
+        }
+        String suffix = segments[last];
+        return uri.length() - suffix.length() >= position && uri.endsWith(suffix);
+    }
+}
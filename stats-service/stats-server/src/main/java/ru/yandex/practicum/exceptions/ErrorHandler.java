@@ -1,10 +1,14 @@
 package ru.yandex.practicum.exceptions;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import javax.validation.ConstraintViolationException;
+
 @RestControllerAdvice
 public class ErrorHandler {
 
@@ -13,4 +17,26 @@ public class ErrorHandler {
     public ErrorResponse handleThrowable(final StatisticsValidationException e) {
         return new ErrorResponse(e.getMessage());
     }
-}
\ No newline at end of file
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ErrorResponse handleConstraintViolation(final ConstraintViolationException e) {
+        return new ErrorResponse(e.getMessage());
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponse> handleIngestionOverloaded(final IngestionOverloadedException e) {
+        return ResponseEntity.status(e.getStatus())
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+                .body(new ErrorResponse(e.getMessage()));
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponse> handleShardRequest(final ShardRequestException e) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(e.getStatus());
+        if (e.getRetryAfter() != null) {
+            response.header(HttpHeaders.RETRY_AFTER, e.getRetryAfter());
+        }
+        return response.body(new ErrorResponse(e.getMessage()));
+    }
+}
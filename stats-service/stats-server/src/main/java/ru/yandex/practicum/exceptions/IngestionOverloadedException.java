@@ -0,0 +1,22 @@
+package ru.yandex.practicum.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+public class IngestionOverloadedException extends RuntimeException {
+    private final HttpStatus status;
+    private final long retryAfterSeconds;
+
+    public IngestionOverloadedException(String message, HttpStatus status, long retryAfterSeconds) {
+        super(message);
+        this.status = status;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
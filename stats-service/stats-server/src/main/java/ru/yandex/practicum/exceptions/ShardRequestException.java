@@ -0,0 +1,22 @@
+package ru.yandex.practicum.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+public class ShardRequestException extends RuntimeException {
+    private final HttpStatus status;
+    private final String retryAfter;
+
+    public ShardRequestException(String message, HttpStatus status, String retryAfter) {
+        super(message);
+        this.status = status;
+        this.retryAfter = retryAfter;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    public String getRetryAfter() {
+        return retryAfter;
+    }
+}
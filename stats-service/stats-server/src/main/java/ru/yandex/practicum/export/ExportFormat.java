@@ -0,0 +1,38 @@
+package ru.yandex.practicum.export;
+
+import ru.yandex.practicum.exceptions.StatisticsValidationException;
+
+/**
+ * Формат выгрузки сырых хитов.
+ */
+public enum ExportFormat {
+    NDJSON("ndjson", "application/x-ndjson"),
+    CSV("csv", "text/csv");
+
+    private final String name;
+    private final String contentType;
+
+    ExportFormat(String name, String contentType) {
+        this.name = name;
+        this.contentType = contentType;
+    }
+
+    /**
+     * Находит формат по имени из запроса.
+     *
+     * @param name имя формата: ndjson или csv
+     * @return формат выгрузки
+     */
+    public static ExportFormat of(String name) {
+        for (ExportFormat format : values()) {
+            if (format.name.equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new StatisticsValidationException("Unknown export format: " + name);
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+}
@@ -0,0 +1,80 @@
+package ru.yandex.practicum.export;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.rollup.RangeFilter;
+import ru.yandex.practicum.rollup.TimeRange;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Читает сырые хиты страницами в порядке (time_stamp, id) курсором с фиксированным размером выборки.
+ * Каждая страница начинается строго после последнего хита предыдущей, поэтому чтение не держит
+ * транзакцию на всю выгрузку и может быть продолжено с любого выданного хита.
+ */
+@Repository
+@StandaloneNode
+public class HitExportRepository {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public HitExportRepository(JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${stats-server.hits.fetch-size:1000}") int fetchSize) {
+        JdbcTemplate cursorTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        cursorTemplate.setFetchSize(fetchSize);
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(cursorTemplate);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Передаёт обработчику страницу хитов за полуоткрытый интервал времени.
+     *
+     * @param range    интервал
+     * @param appId    идентификатор приложения или null для всех приложений
+     * @param uriIds   идентификаторы адресов или null для всех адресов
+     * @param after    позиция, после которой начинается страница, или null для начала интервала
+     * @param limit    наибольшее число хитов на странице
+     * @param callback обработчик хита
+     * @return позиция последнего переданного хита или null, если страница пуста
+     */
+    public HitKey forEachAfter(TimeRange range, Integer appId, List<Integer> uriIds, HitKey after, int limit,
+                               ExportRowCallback callback) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        StringBuilder sql = new StringBuilder("SELECT id, app_id, uri_id, ip, time_stamp, client_id FROM hits");
+        RangeFilter.appendWhere(sql, params, "r", "time_stamp", List.of(range), uriIds);
+        if (appId != null) {
+            sql.append(" AND app_id = :appId");
+            params.addValue("appId", appId);
+        }
+        if (after != null) {
+            sql.append(" AND (time_stamp > :afterTime OR (time_stamp = :afterTime AND id > :afterId))");
+            params.addValue("afterTime", Timestamp.valueOf(after.getTimestamp()));
+            params.addValue("afterId", after.getId());
+        }
+        sql.append(" ORDER BY time_stamp, id LIMIT :limit");
+        params.addValue("limit", limit);
+        long[] lastId = new long[1];
+        LocalDateTime[] lastTimestamp = new LocalDateTime[1];
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(sql.toString(), params, rs -> {
+            lastId[0] = rs.getLong("id");
+            lastTimestamp[0] = rs.getTimestamp("time_stamp").toLocalDateTime();
+            callback.accept(lastId[0], rs.getInt("app_id"), rs.getInt("uri_id"), rs.getBytes("ip"), lastTimestamp[0],
+                    rs.getString("client_id"));
+        }));
+        return lastTimestamp[0] == null ? null : new HitKey(lastTimestamp[0], lastId[0]);
+    }
+
+    public interface ExportRowCallback {
+        void accept(long id, int appId, int uriId, byte[] ip, LocalDateTime timestamp, String clientId);
+    }
+}
@@ -0,0 +1,126 @@
+package ru.yandex.practicum.export;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.HitDto;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.dictionary.HitDictionary;
+import ru.yandex.practicum.hit.IpAddress;
+import ru.yandex.practicum.rollup.TimeRange;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static ru.yandex.practicum.Util.FORMATTER;
+
+/**
+ * Выгружает сырые хиты в поток в формате NDJSON или CSV в порядке (time_stamp, id).
+ * Хиты читаются страницами по {@code page-size} с продолжением после последнего выданного хита,
+ * и каждая страница сразу отправляется клиенту. Прерванную выгрузку можно продолжить,
+ * передав время и идентификатор последнего полученного хита.
+ */
+@Slf4j
+@Component
+@StandaloneNode
+public class HitExporter {
+    private static final String CSV_HEADER = "id,app,uri,ip,timestamp,client_id\n";
+
+    private final HitExportRepository hitExportRepository;
+    private final HitDictionary hitDictionary;
+    private final ObjectWriter writer;
+    private final int pageSize;
+
+    public HitExporter(HitExportRepository hitExportRepository,
+                       HitDictionary hitDictionary,
+                       ObjectMapper objectMapper,
+                       @Value("${stats-server.export.page-size:50000}") int pageSize) {
+        this.hitExportRepository = hitExportRepository;
+        this.hitDictionary = hitDictionary;
+        this.writer = objectMapper.writerFor(HitDto.class)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Пишет хиты за полуоткрытый интервал.
+     *
+     * @param range  интервал
+     * @param appId  идентификатор приложения или null для всех приложений
+     * @param uriIds идентификаторы адресов или null для всех адресов
+     * @param after  позиция, после которой продолжается выгрузка, или null для начала интервала
+     * @param format формат выгрузки
+     * @param out    поток ответа
+     */
+    public void write(TimeRange range, Integer appId, List<Integer> uriIds, HitKey after, ExportFormat format,
+                      OutputStream out) throws IOException {
+        long started = System.currentTimeMillis();
+        long rows = 0;
+        Writer text = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (format == ExportFormat.CSV && after == null) {
+            text.write(CSV_HEADER);
+        }
+        long[] pageRows = new long[1];
+        HitExportRepository.ExportRowCallback callback = (id, rowAppId, uriId, ip, timestamp, clientId) -> {
+            try {
+                if (format == ExportFormat.CSV) {
+                    text.write(Long.toString(id));
+                    text.write(',');
+                    writeCsvField(text, hitDictionary.appName(rowAppId));
+                    text.write(',');
+                    writeCsvField(text, hitDictionary.uri(uriId));
+                    text.write(',');
+                    text.write(IpAddress.format(ip));
+                    text.write(',');
+                    text.write(FORMATTER.format(timestamp));
+                    text.write(',');
+                    if (clientId != null) {
+                        writeCsvField(text, clientId);
+                    }
+                } else {
+                    writer.writeValue(text, new HitDto(id, hitDictionary.appName(rowAppId), hitDictionary.uri(uriId),
+                            IpAddress.format(ip), timestamp, clientId));
+                }
+                text.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            pageRows[0]++;
+        };
+        HitKey position = after;
+        if (range.isEmpty()) {
+            text.flush();
+            return;
+        }
+        do {
+            pageRows[0] = 0;
+            HitKey last = hitExportRepository.forEachAfter(range, appId, uriIds, position, pageSize, callback);
+            text.flush();
+            rows += pageRows[0];
+            position = last;
+        } while (pageRows[0] == pageSize);
+        log.info("Exported {} hits in {} ms", rows, System.currentTimeMillis() - started);
+    }
+
+    private static void writeCsvField(Writer text, String value) throws IOException {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                && value.indexOf('\r') < 0) {
+            text.write(value);
+            return;
+        }
+        text.write('"');
+        text.write(value.replace("\"", "\"\""));
+        text.write('"');
+    }
+}
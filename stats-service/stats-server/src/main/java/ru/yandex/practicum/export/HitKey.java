@@ -0,0 +1,14 @@
+package ru.yandex.practicum.export;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Позиция хита в порядке выгрузки (time_stamp, id), после которой продолжается чтение.
+ */
+@Value
+public class HitKey {
+    LocalDateTime timestamp;
+    long id;
+}
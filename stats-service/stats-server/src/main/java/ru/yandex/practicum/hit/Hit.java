@@ -19,12 +19,20 @@ public class Hit {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @EqualsAndHashCode.Include
     Long id;
-    @Column(name = "app", nullable = false)
+    @Column(name = "app_id", nullable = false)
+    Integer appId;
+    @Column(name = "uri_id", nullable = false)
+    Integer uriId;
+    @Transient
     String app;
-    @Column(name = "uri", nullable = false)
+    @Transient
     String uri;
+    @Transient
+    Integer templateId;
     @Column(name = "ip", nullable = false)
-    String ip;
+    byte[] ip;
     @Column(name = "time_stamp", nullable = false)
     LocalDateTime timestamp;
+    @Column(name = "client_id")
+    String clientId;
 }
\ No newline at end of file
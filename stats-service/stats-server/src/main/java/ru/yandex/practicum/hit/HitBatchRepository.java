@@ -0,0 +1,23 @@
+package ru.yandex.practicum.hit;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface HitBatchRepository {
+    /**
+     * Сохраняет список хитов пакетными вставками JDBC в рамках текущей транзакции.
+     * Хитам должны быть проставлены идентификаторы приложения и адреса.
+     * Повтор уже сохранённого клиентского идентификатора нарушает уникальность и откатывает транзакцию.
+     *
+     * @param hits список хитов
+     */
+    void saveAllInBatch(List<Hit> hits);
+
+    /**
+     * Находит уже сохранённые клиентские идентификаторы хитов независимо от времени хитов.
+     *
+     * @param clientIds клиентские идентификаторы
+     * @return сохранённые идентификаторы из списка
+     */
+    List<String> findStoredClientIds(Collection<String> clientIds);
+}
@@ -0,0 +1,70 @@
+package ru.yandex.practicum.hit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class HitBatchRepositoryImpl implements HitBatchRepository {
+    private static final String INSERT_HIT = "INSERT INTO hits (app_id, uri_id, ip, time_stamp, client_id) VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_CLIENT_ID = "INSERT INTO hit_client_ids (client_id, time_stamp) VALUES (?, ?)";
+    private static final String FIND_CLIENT_IDS = "SELECT client_id FROM hit_client_ids WHERE client_id IN (:clientIds)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    public HitBatchRepositoryImpl(JdbcTemplate jdbcTemplate,
+                                  @Value("${stats-server.hits.jdbc-batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Сохраняет список хитов пакетными вставками JDBC в рамках текущей транзакции.
+     * Вставки отправляются пачками по {@code stats-server.hits.jdbc-batch-size} строк,
+     * идентификаторы хитов не возвращаются. Клиентские идентификаторы хитов записываются
+     * в `hit_client_ids`, где повтор идентификатора нарушает первичный ключ.
+     *
+     * @param hits список хитов
+     */
+    @Override
+    public void saveAllInBatch(List<Hit> hits) {
+        jdbcTemplate.batchUpdate(INSERT_HIT, hits, batchSize, (ps, hit) -> {
+            ps.setInt(1, hit.getAppId());
+            ps.setInt(2, hit.getUriId());
+            ps.setBytes(3, hit.getIp());
+            ps.setTimestamp(4, Timestamp.valueOf(hit.getTimestamp()));
+            if (hit.getClientId() == null) {
+                ps.setNull(5, Types.VARCHAR);
+            } else {
+                ps.setString(5, hit.getClientId());
+            }
+        });
+        List<Hit> withClientIds = hits.stream().filter(hit -> hit.getClientId() != null).collect(Collectors.toList());
+        if (!withClientIds.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_CLIENT_ID, withClientIds, batchSize, (ps, hit) -> {
+                ps.setString(1, hit.getClientId());
+                ps.setTimestamp(2, Timestamp.valueOf(hit.getTimestamp()));
+            });
+        }
+    }
+
+    /**
+     * Находит уже сохранённые клиентские идентификаторы хитов по первичному ключу `hit_client_ids`
+     * независимо от времени хитов.
+     *
+     * @param clientIds клиентские идентификаторы
+     * @return сохранённые идентификаторы из списка
+     */
+    @Override
+    public List<String> findStoredClientIds(Collection<String> clientIds) {
+        MapSqlParameterSource params = new MapSqlParameterSource("clientIds", clientIds);
+        return new NamedParameterJdbcTemplate(jdbcTemplate).queryForList(FIND_CLIENT_IDS, params, String.class);
+    }
+}
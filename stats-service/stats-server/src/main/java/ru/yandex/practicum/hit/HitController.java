@@ -3,9 +3,18 @@ package ru.yandex.practicum.hit;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.HitDto;
+import ru.yandex.practicum.SeriesDto;
 import ru.yandex.practicum.StatsDto;
+import ru.yandex.practicum.StatsQueryDto;
+import ru.yandex.practicum.cluster.UniqueIpsDto;
+import ru.yandex.practicum.exceptions.StatisticsValidationException;
+import ru.yandex.practicum.export.ExportFormat;
 
 import javax.validation.Valid;
 import java.time.LocalDateTime;
@@ -15,6 +24,7 @@ import static ru.yandex.practicum.Util.FORMATTER;
 
 @RestController
 @Slf4j
+@Validated
 @RequiredArgsConstructor
 public class HitController {
 
@@ -32,14 +42,46 @@ public class HitController {
         hitService.addHit(hitDto);
     }
 
+    /**
+     * Добавляет пачку хитов одним запросом и одной транзакцией.
+     *
+     * @param hitDtos список объектов с данными о хитах
+     */
+    @PostMapping("/hits/batch")
+    @ResponseStatus(value = HttpStatus.CREATED)
+    public void addHits(@RequestBody List<@Valid HitDto> hitDtos) {
+        log.info("Batch of {} hits created", hitDtos.size());
+        hitService.addHits(hitDtos);
+    }
+
+    /**
+     * Находит статистику по хитам так же, как GET /stats, но принимает параметры в теле запроса,
+     * поэтому список адресов не ограничен длиной строки запроса.
+     *
+     * @param query параметры запроса статистики
+     * @return список объектов со статистикой по хитам
+     */
+    @PostMapping("/stats/query")
+    @ResponseStatus(value = HttpStatus.OK)
+    public List<StatsDto> queryStats(@Valid @RequestBody StatsQueryDto query) {
+        log.info("Query stats for {} uris", query.getUris() == null ? "all" : query.getUris().size());
+        return hitService.getStats(query.getStart(), query.getEnd(), query.getUris(),
+                Boolean.TRUE.equals(query.getUnique()), Boolean.TRUE.equals(query.getApproximate()));
+    }
+
     /**
      * Находит статистику по хитам за указанный период времени.
      *
      * @param start  начало периода времени
      * @param end    конец периода времени
      * @param uris   список URL-адресов, по которым велась статистика (необязательный параметр)
+     * @param template шаблон адресов, по всем адресам которого суммируется статистика; не сочетается
+     *                 с uris (необязательный параметр)
      * @param unique флаг, указывающий, считать ли уникальные хиты (необязательный параметр,
      *               значение по умолчанию - false)
+     * @param approximate флаг, разрешающий приближённый подсчёт уникальных хитов по скетчам
+     *                    HyperLogLog со стандартной ошибкой около 0.8% (необязательный параметр,
+     *                    значение по умолчанию - false)
      * @return список объектов со статистикой по хитам
      */
     @GetMapping("/stats")
@@ -47,10 +89,153 @@ public class HitController {
     public List<StatsDto> getStats(@RequestParam("start") String start,
                                    @RequestParam("end") String end,
                                    @RequestParam(required = false) List<String> uris,
-                                   @RequestParam(required = false, defaultValue = "false") Boolean unique) {
+                                   @RequestParam(required = false) String template,
+                                   @RequestParam(required = false, defaultValue = "false") Boolean unique,
+                                   @RequestParam(required = false, defaultValue = "false") Boolean approximate) {
         LocalDateTime startTime = LocalDateTime.parse(start, FORMATTER);
         LocalDateTime endTime = LocalDateTime.parse(end, FORMATTER);
+        if (template != null) {
+            if (uris != null && !uris.isEmpty()) {
+                throw new StatisticsValidationException("Parameters uris and template are mutually exclusive");
+            }
+            log.info("Get stats by template {}", template);
+            return hitService.getTemplateStats(startTime, endTime, template, unique);
+        }
         log.info("Get stats");
-        return hitService.getStats(startTime, endTime, uris, unique);
+        return hitService.getStats(startTime, endTime, uris, unique, approximate);
+    }
+
+    /**
+     * Отдаёт маршрутизатору кластера множества уникальных IP-адресов по шаблону адресов,
+     * чтобы он объединил их по всем шардам.
+     *
+     * @param start    начало периода времени
+     * @param end      конец периода времени
+     * @param template шаблон адресов
+     * @return множества IP-адресов по приложениям
+     */
+    @GetMapping("/stats/template/ips")
+    @ResponseStatus(value = HttpStatus.OK)
+    public List<UniqueIpsDto> getTemplateUniqueIps(@RequestParam("start") String start,
+                                                   @RequestParam("end") String end,
+                                                   @RequestParam String template) {
+        LocalDateTime startTime = LocalDateTime.parse(start, FORMATTER);
+        LocalDateTime endTime = LocalDateTime.parse(end, FORMATTER);
+        log.info("Get unique ips by template {}", template);
+        return hitService.getTemplateUniqueIps(startTime, endTime, template);
+    }
+
+    /**
+     * Находит самые посещаемые адреса за указанный период времени.
+     *
+     * @param start  начало периода времени
+     * @param end    конец периода времени
+     * @param k      число адресов в ответе (необязательный параметр, значение по умолчанию - 10)
+     * @param unique флаг, указывающий, считать ли уникальные хиты (необязательный параметр,
+     *               значение по умолчанию - false)
+     * @param approximate флаг, разрешающий приближённый подсчёт уникальных хитов по скетчам
+     *                    (необязательный параметр, значение по умолчанию - false)
+     * @return список объектов со статистикой по хитам, отсортированный по убыванию числа хитов
+     */
+    @GetMapping("/stats/top")
+    @ResponseStatus(value = HttpStatus.OK)
+    public List<StatsDto> getTopStats(@RequestParam("start") String start,
+                                      @RequestParam("end") String end,
+                                      @RequestParam(required = false, defaultValue = "10") Integer k,
+                                      @RequestParam(required = false, defaultValue = "false") Boolean unique,
+                                      @RequestParam(required = false, defaultValue = "false") Boolean approximate) {
+        LocalDateTime startTime = LocalDateTime.parse(start, FORMATTER);
+        LocalDateTime endTime = LocalDateTime.parse(end, FORMATTER);
+        log.info("Get top stats");
+        return hitService.getTopStats(startTime, endTime, k, unique, approximate);
+    }
+
+    /**
+     * Строит временные ряды числа хитов за указанный период времени: по ряду на каждую пару
+     * приложение-адрес с точкой на каждый шаг, включая шаги без хитов.
+     *
+     * @param start       начало периода времени
+     * @param end         конец периода времени
+     * @param uris        список URL-адресов, по которым велась статистика
+     * @param interval    шаг ряда: minute, hour или day (необязательный параметр,
+     *                    значение по умолчанию - hour)
+     * @param unique      флаг, указывающий, считать ли уникальные хиты (необязательный параметр,
+     *                    значение по умолчанию - false)
+     * @param approximate флаг, разрешающий приближённый подсчёт уникальных хитов по скетчам
+     *                    для шага от часа (необязательный параметр, значение по умолчанию - false)
+     * @return список временных рядов
+     */
+    @GetMapping("/stats/series")
+    @ResponseStatus(value = HttpStatus.OK)
+    public List<SeriesDto> getSeries(@RequestParam("start") String start,
+                                     @RequestParam("end") String end,
+                                     @RequestParam("uri") List<String> uris,
+                                     @RequestParam(required = false, defaultValue = "hour") String interval,
+                                     @RequestParam(required = false, defaultValue = "false") Boolean unique,
+                                     @RequestParam(required = false, defaultValue = "false") Boolean approximate) {
+        LocalDateTime startTime = LocalDateTime.parse(start, FORMATTER);
+        LocalDateTime endTime = LocalDateTime.parse(end, FORMATTER);
+        log.info("Get series");
+        return hitService.getSeries(startTime, endTime, uris, interval, unique, approximate);
+    }
+
+    /**
+     * Выгружает сырые хиты за указанный период времени потоком в формате NDJSON или CSV
+     * в порядке времени и идентификатора хита. Прерванную выгрузку можно продолжить,
+     * передав время и идентификатор последнего полученного хита.
+     *
+     * @param start     начало периода времени
+     * @param end       конец периода времени
+     * @param app       приложение (необязательный параметр)
+     * @param uris      список URL-адресов (необязательный параметр)
+     * @param format    формат выгрузки: ndjson или csv (необязательный параметр,
+     *                  значение по умолчанию - ndjson)
+     * @param afterTime время последнего полученного хита (необязательный параметр)
+     * @param afterId   идентификатор последнего полученного хита (необязательный параметр)
+     * @return тело ответа
+     */
+    @GetMapping("/hits/export")
+    public ResponseEntity<StreamingResponseBody> exportHits(@RequestParam("start") String start,
+                                                            @RequestParam("end") String end,
+                                                            @RequestParam(required = false) String app,
+                                                            @RequestParam(required = false) List<String> uris,
+                                                            @RequestParam(required = false, defaultValue = "ndjson")
+                                                            String format,
+                                                            @RequestParam(required = false) String afterTime,
+                                                            @RequestParam(required = false) Long afterId) {
+        LocalDateTime startTime = LocalDateTime.parse(start, FORMATTER);
+        LocalDateTime endTime = LocalDateTime.parse(end, FORMATTER);
+        LocalDateTime after = afterTime == null ? null : LocalDateTime.parse(afterTime, FORMATTER);
+        ExportFormat exportFormat = ExportFormat.of(format);
+        log.info("Export hits as {}", exportFormat);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+                .body(hitService.exportHits(startTime, endTime, app, uris, exportFormat, after, afterId));
+    }
+
+    /**
+     * Отдаёт статистику по хитам за указанный период времени потоком в формате NDJSON -
+     * по объекту на строку, по убыванию числа хитов. Предназначен для выгрузок по всем адресам:
+     * ответ пишется по мере чтения из базы и не собирается в памяти целиком.
+     *
+     * @param start  начало периода времени
+     * @param end    конец периода времени
+     * @param uris   список URL-адресов, по которым велась статистика (необязательный параметр)
+     * @param unique флаг, указывающий, считать ли уникальные хиты (необязательный параметр,
+     *               значение по умолчанию - false)
+     * @return тело ответа
+     */
+    @GetMapping(value = "/stats/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamStats(@RequestParam("start") String start,
+                                                             @RequestParam("end") String end,
+                                                             @RequestParam(required = false) List<String> uris,
+                                                             @RequestParam(required = false, defaultValue = "false")
+                                                             Boolean unique) {
+        LocalDateTime startTime = LocalDateTime.parse(start, FORMATTER);
+        LocalDateTime endTime = LocalDateTime.parse(end, FORMATTER);
+        log.info("Stream stats");
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(hitService.streamStats(startTime, endTime, uris, unique));
     }
 }
\ No newline at end of file
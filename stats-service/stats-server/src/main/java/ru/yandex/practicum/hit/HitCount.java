@@ -0,0 +1,13 @@
+package ru.yandex.practicum.hit;
+
+import lombok.Value;
+
+/**
+ * Число хитов по паре идентификаторов приложения и адреса.
+ */
+@Value
+public class HitCount {
+    Integer appId;
+    Integer uriId;
+    Long hits;
+}
@@ -0,0 +1,111 @@
+package ru.yandex.practicum.hit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.rollup.RangeFilter;
+import ru.yandex.practicum.rollup.TimeRange;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Построчно читает сырые хиты курсором с фиксированным размером выборки,
+ * не материализуя результат целиком.
+ */
+@Repository
+@StandaloneNode
+public class HitCursorRepository {
+    private static final String SELECT_HITS = "SELECT app_id, uri_id, ip, time_stamp FROM hits";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public HitCursorRepository(JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${stats-server.hits.fetch-size:1000}") int fetchSize) {
+        JdbcTemplate cursorTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        cursorTemplate.setFetchSize(fetchSize);
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(cursorTemplate);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Передаёт обработчику все сохранённые хиты.
+     *
+     * @param callback обработчик хита
+     * @return число прочитанных хитов
+     */
+    public long forEach(HitRowCallback callback) {
+        return query(SELECT_HITS, new MapSqlParameterSource(), callback);
+    }
+
+    /**
+     * Передаёт обработчику хиты с временем не раньше указанного.
+     *
+     * @param from     начало интервала
+     * @param callback обработчик хита
+     * @return число прочитанных хитов
+     */
+    public long forEachSince(LocalDateTime from, HitRowCallback callback) {
+        return query(SELECT_HITS + " WHERE time_stamp >= :from",
+                new MapSqlParameterSource("from", Timestamp.valueOf(from)), callback);
+    }
+
+    /**
+     * Передаёт обработчику хиты, сохранённые после хита с указанным идентификатором.
+     *
+     * @param id       идентификатор последнего уже учтённого хита
+     * @param callback обработчик хита
+     * @return число прочитанных хитов
+     */
+    public long forEachAfter(long id, HitRowCallback callback) {
+        return query(SELECT_HITS + " WHERE id > :id", new MapSqlParameterSource("id", id), callback);
+    }
+
+    /**
+     * @return наибольший идентификатор сохранённого хита или 0, если хитов нет
+     */
+    public long findMaxId() {
+        Long id = jdbcTemplate.getJdbcTemplate().queryForObject("SELECT MAX(id) FROM hits", Long.class);
+        return id == null ? 0 : id;
+    }
+
+    /**
+     * Передаёт обработчику хиты за полуоткрытые интервалы времени.
+     *
+     * @param ranges   интервалы
+     * @param uriIds   идентификаторы адресов или null для всех адресов
+     * @param callback обработчик хита
+     * @return число прочитанных хитов
+     */
+    public long forEach(List<TimeRange> ranges, List<Integer> uriIds, HitRowCallback callback) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        StringBuilder sql = new StringBuilder(SELECT_HITS);
+        RangeFilter.appendWhere(sql, params, "r", "time_stamp", ranges, uriIds);
+        return query(sql.toString(), params, callback);
+    }
+
+    private long query(String sql, MapSqlParameterSource params, HitRowCallback callback) {
+        long[] count = new long[1];
+        RowCallbackHandler handler = rs -> {
+            callback.accept(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getBytes("ip"),
+                    rs.getTimestamp("time_stamp").toLocalDateTime());
+            count[0]++;
+        };
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(sql, params, handler));
+        return count[0];
+    }
+
+    public interface HitRowCallback {
+        void accept(int appId, int uriId, byte[] ip, LocalDateTime timestamp);
+    }
+}
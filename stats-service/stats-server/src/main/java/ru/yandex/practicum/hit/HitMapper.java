@@ -17,8 +17,9 @@ public class HitMapper {
                 .id(hit.getId())
                 .app(hit.getApp())
                 .uri(hit.getUri())
-                .ip(hit.getIp())
+                .ip(IpAddress.format(hit.getIp()))
                 .timestamp(hit.getTimestamp())
+                .clientId(hit.getClientId())
                 .build();
         return hitDto;
     }
@@ -34,8 +35,9 @@ public class HitMapper {
                 .id(hitDto.getId())
                 .app(hitDto.getApp())
                 .uri(hitDto.getUri())
-                .ip(hitDto.getIp())
+                .ip(IpAddress.parse(hitDto.getIp()))
                 .timestamp(hitDto.getTimestamp())
+                .clientId(hitDto.getClientId())
                 .build();
         return hit;
     }
@@ -53,4 +55,18 @@ public class HitMapper {
         }
         return result;
     }
+
+    /**
+     * Преобразует список объектов `HitDto` в список объектов `Hit`.
+     *
+     * @param hitDtos список объектов `HitDto`
+     * @return список объектов `Hit`
+     */
+    public static List<Hit> returnHitList(List<HitDto> hitDtos) {
+        List<Hit> result = new ArrayList<>(hitDtos.size());
+        for (HitDto hitDto : hitDtos) {
+            result.add(returnHit(hitDto));
+        }
+        return result;
+    }
 }
\ No newline at end of file
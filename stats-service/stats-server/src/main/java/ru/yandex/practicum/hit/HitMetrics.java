@@ -0,0 +1,77 @@
+package ru.yandex.practicum.hit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Метрики приёма хитов и запросов статистики. Время и число строк ответа GET /stats
+ * разбиты на четыре варианта запроса: по всем адресам или по списку адресов,
+ * с подсчётом всех или только уникальных хитов.
+ */
+@Component
+public class HitMetrics {
+    private final Counter singleHits;
+    private final Counter batchHits;
+    private final Timer[][] queryTimers = new Timer[2][2];
+    private final DistributionSummary[][] queryRows = new DistributionSummary[2][2];
+
+    public HitMetrics(MeterRegistry meterRegistry) {
+        this.singleHits = ingested(meterRegistry, "hit");
+        this.batchHits = ingested(meterRegistry, "batch");
+        for (int uris = 0; uris < 2; uris++) {
+            for (int unique = 0; unique < 2; unique++) {
+                String variant = uris == 0 ? "all" : "uris";
+                String isUnique = Boolean.toString(unique == 1);
+                queryTimers[uris][unique] = Timer.builder("stats.query")
+                        .description("Время ответа GET /stats по вариантам запроса")
+                        .tag("variant", variant)
+                        .tag("unique", isUnique)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry);
+                queryRows[uris][unique] = DistributionSummary.builder("stats.query.rows")
+                        .description("Число строк в ответе GET /stats по вариантам запроса")
+                        .tag("variant", variant)
+                        .tag("unique", isUnique)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry);
+            }
+        }
+    }
+
+    /**
+     * Учитывает принятые хиты.
+     *
+     * @param hits  число хитов
+     * @param batch пришли ли хиты пачкой
+     */
+    public void recordIngested(int hits, boolean batch) {
+        (batch ? batchHits : singleHits).increment(hits);
+    }
+
+    /**
+     * Учитывает выполненный запрос статистики.
+     *
+     * @param allUris   запрошены ли все адреса
+     * @param unique    считались ли уникальные хиты
+     * @param startedAt значение {@link System#nanoTime()} в начале запроса
+     * @param rows      число строк в ответе
+     */
+    public void recordQuery(boolean allUris, boolean unique, long startedAt, int rows) {
+        int uris = allUris ? 0 : 1;
+        int isUnique = unique ? 1 : 0;
+        queryTimers[uris][isUnique].record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        queryRows[uris][isUnique].record(rows);
+    }
+
+    private static Counter ingested(MeterRegistry meterRegistry, String endpoint) {
+        return Counter.builder("stats.hits.ingested")
+                .description("Хиты, принятые на сохранение")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+    }
+}
@@ -4,46 +4,45 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
-import ru.yandex.practicum.StatsDto;
 
 import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
-public interface    HitRepository extends JpaRepository<Hit, Long> {
+public interface    HitRepository extends JpaRepository<Hit, Long>, HitBatchRepository {
 
-    @Query(value = "SELECT new ru.yandex.practicum.StatsDto(h.app, h.uri, COUNT(h.ip)) " +
+    @Query(value = "SELECT new ru.yandex.practicum.hit.HitCount(h.appId, h.uriId, COUNT(h.ip)) " +
             "FROM Hit AS h " +
             "WHERE h.timestamp BETWEEN :start AND :end " +
-            "GROUP BY h.app, h.uri " +
+            "GROUP BY h.appId, h.uriId " +
             "ORDER BY COUNT(h.ip) DESC")
-    List<StatsDto> findAllStats(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+    List<HitCount> findAllStats(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
 
-    @Query(value = "SELECT new ru.yandex.practicum.StatsDto(h.app, h.uri, COUNT(DISTINCT h.ip)) " +
+    @Query(value = "SELECT new ru.yandex.practicum.hit.HitCount(h.appId, h.uriId, COUNT(DISTINCT h.ip)) " +
             "FROM Hit AS h " +
             "WHERE h.timestamp BETWEEN :start AND :end " +
-            "GROUP BY h.app, h.uri " +
+            "GROUP BY h.appId, h.uriId " +
             "ORDER BY COUNT(DISTINCT h.ip) DESC")
-    List<StatsDto> findAllStatsByUniqueIp(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+    List<HitCount> findAllStatsByUniqueIp(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
 
-    @Query(value = "SELECT new ru.yandex.practicum.StatsDto(h.app, h.uri, COUNT (DISTINCT h.ip)) " +
+    @Query(value = "SELECT new ru.yandex.practicum.hit.HitCount(h.appId, h.uriId, COUNT (DISTINCT h.ip)) " +
             "FROM Hit AS h " +
             "WHERE h.timestamp BETWEEN :start AND :end " +
-            "AND h.uri IN :uris " +
-            "GROUP BY h.app, h.uri " +
+            "AND h.uriId IN :uriIds " +
+            "GROUP BY h.appId, h.uriId " +
             "ORDER BY COUNT(DISTINCT h.ip) DESC")
-    List<StatsDto> findStatsByUrisByUniqueIp(@Param("start") LocalDateTime start,
-                                           @Param("end") LocalDateTime end,
-                                           @Param("uris") List<String> uris);
+    List<HitCount> findStatsByUrisByUniqueIp(@Param("start") LocalDateTime start,
+                                             @Param("end") LocalDateTime end,
+                                             @Param("uriIds") List<Integer> uriIds);
 
-    @Query(value = "SELECT new ru.yandex.practicum.StatsDto(h.app, h.uri, COUNT(h.ip)) " +
+    @Query(value = "SELECT new ru.yandex.practicum.hit.HitCount(h.appId, h.uriId, COUNT(h.ip)) " +
             "FROM Hit AS h " +
             "WHERE h.timestamp BETWEEN :start AND :end " +
-            "AND h.uri IN :uris " +
-            "GROUP BY h.app, h.uri " +
+            "AND h.uriId IN :uriIds " +
+            "GROUP BY h.appId, h.uriId " +
             "ORDER BY COUNT(h.ip) DESC")
-    List<StatsDto> findStatsByUris(@Param("start") LocalDateTime start,
+    List<HitCount> findStatsByUris(@Param("start") LocalDateTime start,
                                    @Param("end") LocalDateTime end,
-                                   @Param("uris") List<String> uris);
+                                   @Param("uriIds") List<Integer> uriIds);
 
 }
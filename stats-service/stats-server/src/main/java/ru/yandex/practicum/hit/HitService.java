@@ -1,7 +1,11 @@
 package ru.yandex.practicum.hit;
 
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.HitDto;
+import ru.yandex.practicum.SeriesDto;
 import ru.yandex.practicum.StatsDto;
+import ru.yandex.practicum.cluster.UniqueIpsDto;
+import ru.yandex.practicum.export.ExportFormat;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -14,6 +18,13 @@ public interface HitService {
      */
     void addHit(HitDto hitDto);
 
+    /**
+     * Добавляет пачку хитов.
+     *
+     * @param hitDtos список объектов с данными о хитах
+     */
+    void addHits(List<HitDto> hitDtos);
+
     /**
      * Находит статистику по хитам за указанный период времени.
      *
@@ -21,7 +32,84 @@ public interface HitService {
      * @param end конец периода времени
      * @param uris список URL-адресов, по которым велась статистика
      * @param unique флаг, указывающий, считать ли уникальные хиты
+     * @param approximate флаг, разрешающий приближённый подсчёт уникальных хитов по скетчам
      * @return список объектов со статистикой по хитам
      */
-    List<StatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique);
+    List<StatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                            Boolean approximate);
+
+    /**
+     * Находит статистику по шаблону адресов за указанный период времени.
+     *
+     * @param start начало периода времени
+     * @param end конец периода времени
+     * @param template шаблон адресов, например, /events/{id}
+     * @param unique флаг, указывающий, считать ли уникальные хиты
+     * @return список объектов со статистикой по приложениям с шаблоном вместо адреса
+     */
+    List<StatsDto> getTemplateStats(LocalDateTime start, LocalDateTime end, String template, Boolean unique);
+
+    /**
+     * Находит множества уникальных IP-адресов по шаблону адресов, которые маршрутизатор кластера
+     * объединяет по всем шардам.
+     *
+     * @param start начало периода времени
+     * @param end конец периода времени
+     * @param template шаблон адресов
+     * @return множества IP-адресов по приложениям
+     */
+    List<UniqueIpsDto> getTemplateUniqueIps(LocalDateTime start, LocalDateTime end, String template);
+
+    /**
+     * Готовит потоковую выдачу статистики по хитам за указанный период времени в формате NDJSON.
+     *
+     * @param start начало периода времени
+     * @param end конец периода времени
+     * @param uris список URL-адресов, по которым велась статистика
+     * @param unique флаг, указывающий, считать ли уникальные хиты
+     * @return тело ответа, которое пишет статистику по мере чтения из базы
+     */
+    StreamingResponseBody streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique);
+
+    /**
+     * Находит самые посещаемые адреса за указанный период времени.
+     *
+     * @param start начало периода времени
+     * @param end конец периода времени
+     * @param k число адресов в ответе
+     * @param unique флаг, указывающий, считать ли уникальные хиты
+     * @param approximate флаг, разрешающий приближённый подсчёт уникальных хитов по скетчам
+     * @return список объектов со статистикой по хитам, отсортированный по убыванию числа хитов
+     */
+    List<StatsDto> getTopStats(LocalDateTime start, LocalDateTime end, Integer k, Boolean unique,
+                               Boolean approximate);
+
+    /**
+     * Строит временные ряды числа хитов за указанный период времени.
+     *
+     * @param start начало периода времени
+     * @param end конец периода времени
+     * @param uris список URL-адресов, по которым велась статистика
+     * @param interval шаг ряда: minute, hour или day
+     * @param unique флаг, указывающий, считать ли уникальные хиты
+     * @param approximate флаг, разрешающий приближённый подсчёт уникальных хитов по скетчам
+     * @return список временных рядов по парам приложение-адрес
+     */
+    List<SeriesDto> getSeries(LocalDateTime start, LocalDateTime end, List<String> uris, String interval,
+                              Boolean unique, Boolean approximate);
+
+    /**
+     * Готовит выгрузку сырых хитов за указанный период времени в порядке времени и идентификатора.
+     *
+     * @param start начало периода времени
+     * @param end конец периода времени
+     * @param app приложение, хиты которого выгружаются
+     * @param uris список URL-адресов, хиты которых выгружаются
+     * @param format формат выгрузки: ndjson или csv
+     * @param afterTime время последнего полученного хита, после которого продолжается выгрузка
+     * @param afterId идентификатор последнего полученного хита
+     * @return тело ответа, которое пишет хиты по мере чтения из базы
+     */
+    StreamingResponseBody exportHits(LocalDateTime start, LocalDateTime end, String app, List<String> uris,
+                                     ExportFormat format, LocalDateTime afterTime, Long afterId);
 }
@@ -1,22 +1,117 @@
 package ru.yandex.practicum.hit;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.HitDto;
+import ru.yandex.practicum.SeriesDto;
 import ru.yandex.practicum.StatsDto;
+import ru.yandex.practicum.alltime.AllTimeStatsReader;
+import ru.yandex.practicum.bitmap.BitmapStatsReader;
+import ru.yandex.practicum.cache.StatsCache;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.cluster.UniqueIpsDto;
+import ru.yandex.practicum.dictionary.AppUri;
+import ru.yandex.practicum.dictionary.HitDictionary;
 import ru.yandex.practicum.exceptions.StatisticsValidationException;
+import ru.yandex.practicum.export.ExportFormat;
+import ru.yandex.practicum.export.HitExporter;
+import ru.yandex.practicum.export.HitKey;
+import ru.yandex.practicum.ingest.HitAdmission;
+import ru.yandex.practicum.ingest.HitDeduplicator;
+import ru.yandex.practicum.ingest.HitIngestor;
+import ru.yandex.practicum.ingest.ReplayFilter;
+import ru.yandex.practicum.partition.HitPartitionManager;
+import ru.yandex.practicum.rollup.RollupStatsReader;
+import ru.yandex.practicum.rollup.TimeRange;
+import ru.yandex.practicum.series.SeriesInterval;
+import ru.yandex.practicum.series.SeriesStatsReader;
+import ru.yandex.practicum.sketch.SketchStatsReader;
+import ru.yandex.practicum.stream.StatsStreamer;
+import ru.yandex.practicum.template.TemplateStatsReader;
+import ru.yandex.practicum.top.TopStatsReader;
+import ru.yandex.practicum.window.HotWindow;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @Slf4j
-@RequiredArgsConstructor
-@Transactional(readOnly = true)
+@StandaloneNode
 public class HitServiceImpl implements HitService {
     private final HitRepository hitRepository;
+    private final HitIngestor hitIngestor;
+    private final HitAdmission hitAdmission;
+    private final HitDeduplicator hitDeduplicator;
+    private final ReplayFilter replayFilter;
+    private final RollupStatsReader rollupStatsReader;
+    private final SketchStatsReader sketchStatsReader;
+    private final BitmapStatsReader bitmapStatsReader;
+    private final HitDictionary hitDictionary;
+    private final HotWindow hotWindow;
+    private final StatsStreamer statsStreamer;
+    private final TopStatsReader topStatsReader;
+    private final StatsCache statsCache;
+    private final HitMetrics hitMetrics;
+    private final SeriesStatsReader seriesStatsReader;
+    private final HitExporter hitExporter;
+    private final AllTimeStatsReader allTimeStatsReader;
+    private final TemplateStatsReader templateStatsReader;
+    private final HitPartitionManager hitPartitionManager;
+    private final int batchMaxSize;
+    private final int uriChunkSize;
+
+    public HitServiceImpl(HitRepository hitRepository,
+                          HitIngestor hitIngestor,
+                          HitAdmission hitAdmission,
+                          HitDeduplicator hitDeduplicator,
+                          ReplayFilter replayFilter,
+                          RollupStatsReader rollupStatsReader,
+                          SketchStatsReader sketchStatsReader,
+                          BitmapStatsReader bitmapStatsReader,
+                          HitDictionary hitDictionary,
+                          HotWindow hotWindow,
+                          StatsStreamer statsStreamer,
+                          TopStatsReader topStatsReader,
+                          StatsCache statsCache,
+                          HitMetrics hitMetrics,
+                          SeriesStatsReader seriesStatsReader,
+                          HitExporter hitExporter,
+                          AllTimeStatsReader allTimeStatsReader,
+                          TemplateStatsReader templateStatsReader,
+                          HitPartitionManager hitPartitionManager,
+                          @Value("${stats-server.hits.batch-max-size:5000}") int batchMaxSize,
+                          @Value("${stats-server.stats.uri-chunk-size:1000}") int uriChunkSize) {
+        this.hitRepository = hitRepository;
+        this.hitIngestor = hitIngestor;
+        this.hitAdmission = hitAdmission;
+        this.hitDeduplicator = hitDeduplicator;
+        this.replayFilter = replayFilter;
+        this.rollupStatsReader = rollupStatsReader;
+        this.sketchStatsReader = sketchStatsReader;
+        this.bitmapStatsReader = bitmapStatsReader;
+        this.hitDictionary = hitDictionary;
+        this.hotWindow = hotWindow;
+        this.statsStreamer = statsStreamer;
+        this.topStatsReader = topStatsReader;
+        this.statsCache = statsCache;
+        this.hitMetrics = hitMetrics;
+        this.seriesStatsReader = seriesStatsReader;
+        this.hitExporter = hitExporter;
+        this.allTimeStatsReader = allTimeStatsReader;
+        this.templateStatsReader = templateStatsReader;
+        this.hitPartitionManager = hitPartitionManager;
+        this.batchMaxSize = batchMaxSize;
+        this.uriChunkSize = uriChunkSize;
+    }
 
     /**
      * Добавляет новый хит.
@@ -24,43 +119,299 @@ public class HitServiceImpl implements HitService {
      * @param hitDto объект с данными о хите
      */
     @Override
-    @Transactional
     public void addHit(HitDto hitDto) {
-        hitRepository.save(HitMapper.returnHit(hitDto));
+        hitAdmission.admit(1, hitIngestor.backlog());
+        List<Hit> hits = hitDeduplicator.deduplicate(replayFilter.dropRecent(List.of(HitMapper.returnHit(hitDto))));
+        if (!hits.isEmpty()) {
+            hitIngestor.ingest(hits);
+            hitMetrics.recordIngested(hits.size(), false);
+        }
+    }
+
+    /**
+     * Добавляет пачку хитов: в синхронном режиме одной транзакцией через пакетные вставки JDBC,
+     * в буферизованном - через буфер отложенной записи.
+     *
+     * @param hitDtos список объектов с данными о хитах
+     */
+    @Override
+    public void addHits(List<HitDto> hitDtos) {
+        if (hitDtos.size() > batchMaxSize) {
+            throw new StatisticsValidationException("Batch size must not exceed " + batchMaxSize);
+        }
+        if (hitDtos.isEmpty()) {
+            return;
+        }
+        hitAdmission.admit(hitDtos.size(), hitIngestor.backlog());
+        List<Hit> hits = hitDeduplicator.deduplicate(replayFilter.dropRecent(HitMapper.returnHitList(hitDtos)));
+        if (!hits.isEmpty()) {
+            hitIngestor.ingest(hits);
+            hitMetrics.recordIngested(hits.size(), true);
+        }
+        log.info("Accepted batch of {} hits, {} repeats dropped", hitDtos.size(), hitDtos.size() - hits.size());
     }
 
     /**
      * Находит статистику по хитам за указанный период времени.
+     * Повторные запросы отдаются из кеша, пока по запрошенным адресам не пришли новые хиты.
+     * Период, покрывающий всю историю запрошенных адресов, считается по счётчикам за всё время.
+     * Период внутри горячего окна считается по памяти; неуникальная статистика за период,
+     * начинающийся раньше окна, складывается из агрегатов до начала окна и данных окна.
+     * Точное число уникальных IP-адресов вне окна считается по дневным битовым картам.
+     * Уникальные IP-адреса вне счётчиков за всё время считаются только за срок хранения сырых хитов:
+     * начало периода обрезается по нему.
      *
      * @param start  начало периода времени
      * @param end    конец периода времени
      * @param uris   список URL-адресов, по которым велась статистика
      * @param unique флаг, указывающий, считать ли уникальные хиты
+     * @param approximate флаг, разрешающий приближённый подсчёт уникальных хитов по скетчам;
+     *                    пока скетчи не загружены после старта, считается точно
      * @return список объектов со статистикой по хитам
      */
     @Override
-    public List<StatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique) {
-        if (start != null && end != null) {
-            if (start.isAfter(end)) {
-                throw new StatisticsValidationException("Start must be after End");
-            }
+    public List<StatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                                   Boolean approximate) {
+        validatePeriod(start, end);
+        long startedAt = System.nanoTime();
+        List<StatsDto> stats = statsCache.get(start, end, uris, unique, approximate,
+                () -> findStats(start, end, uris, unique, approximate));
+        hitMetrics.recordQuery(uris == null || uris.isEmpty(), unique, startedAt, stats.size());
+        return stats;
+    }
+
+    /**
+     * Находит статистику по шаблону адресов: неуникальные хиты - по таблицам предагрегации шаблонов,
+     * уникальные IP-адреса - по битовым картам всех адресов шаблона.
+     *
+     * @param start    начало периода времени
+     * @param end      конец периода времени
+     * @param template шаблон адресов
+     * @param unique   флаг, указывающий, считать ли уникальные хиты
+     * @return список объектов со статистикой по приложениям с шаблоном вместо адреса
+     */
+    @Override
+    public List<StatsDto> getTemplateStats(LocalDateTime start, LocalDateTime end, String template, Boolean unique) {
+        validatePeriod(start, end);
+        long startedAt = System.nanoTime();
+        List<StatsDto> stats = templateStatsReader.findStats(start, end, template, unique);
+        hitMetrics.recordQuery(false, unique, startedAt, stats.size());
+        return stats;
+    }
+
+    /**
+     * Находит множества уникальных IP-адресов по шаблону адресов для маршрутизатора кластера.
+     *
+     * @param start    начало периода времени
+     * @param end      конец периода времени
+     * @param template шаблон адресов
+     * @return множества IP-адресов по приложениям
+     */
+    @Override
+    public List<UniqueIpsDto> getTemplateUniqueIps(LocalDateTime start, LocalDateTime end, String template) {
+        validatePeriod(start, end);
+        return templateStatsReader.findUniqueIps(start, end, template);
+    }
+
+    /**
+     * Разбивает длинный список адресов на части по {@code uri-chunk-size}, чтобы условия IN в запросах
+     * оставались короткими, и объединяет ответы: пары приложение-адрес разных частей не пересекаются.
+     */
+    private List<StatsDto> findStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                     boolean approximate) {
+        List<Integer> uriIds = findUriIds(uris);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return Collections.emptyList();
         }
-        if (uris == null || uris.isEmpty()) {
+        if (uriIds == null || uriIds.size() <= uriChunkSize) {
+            return findStatsByIds(start, end, uriIds, unique, approximate);
+        }
+        List<StatsDto> stats = new ArrayList<>();
+        for (int i = 0; i < uriIds.size(); i += uriChunkSize) {
+            List<Integer> chunk = uriIds.subList(i, Math.min(i + uriChunkSize, uriIds.size()));
+            stats.addAll(findStatsByIds(start, end, chunk, unique, approximate));
+        }
+        stats.sort(Comparator.comparing(StatsDto::getHits).reversed());
+        return stats;
+    }
+
+    private List<StatsDto> findStatsByIds(LocalDateTime periodStart, LocalDateTime end, List<Integer> uriIds,
+                                          boolean unique, boolean approximate) {
+        LocalDateTime to = end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+        Map<AppUri, Long> allTime = allTimeStatsReader.count(periodStart.truncatedTo(ChronoUnit.SECONDS), to,
+                uriIds, unique);
+        if (allTime != null) {
+            log.info("Get stats from all-time counters");
+            return hitDictionary.toStats(allTime);
+        }
+        LocalDateTime start = unique ? hitPartitionManager.clampToRetention(periodStart) : periodStart;
+        if (start.isAfter(end)) {
+            return Collections.emptyList();
+        }
+        LocalDateTime from = start.truncatedTo(ChronoUnit.SECONDS);
+        LocalDateTime windowStart = hotWindow.getStart();
+        if (windowStart != null && !from.isBefore(windowStart)) {
+            log.info("Get stats from hot window");
+            return hitDictionary.toStats(hotWindow.count(from, to, uriIds, unique));
+        }
+        if (!unique && windowStart != null && to.isAfter(windowStart)) {
+            log.info("Get stats from rollups and hot window");
+            Map<AppUri, Long> counts = rollupStatsReader.count(from, windowStart, uriIds);
+            hotWindow.count(windowStart, to, uriIds, false).forEach((key, hits) -> counts.merge(key, hits, Long::sum));
+            return hitDictionary.toStats(counts);
+        }
+        if (unique && approximate && sketchStatsReader.isReady()) {
+            log.info("Get approximate stats by unique ip");
+            return sketchStatsReader.findUniqueStats(start, end, uriIds);
+        }
+        if (unique && bitmapStatsReader.isReady()) {
+            log.info("Get exact stats by unique ip from bitmaps");
+            return bitmapStatsReader.findUniqueStats(start, end, uriIds);
+        }
+        if (uriIds == null) {
             if (unique) {
                 log.info("Get all stats by unique ip");
-                return hitRepository.findAllStatsByUniqueIp(start, end);
+                return toStats(hitRepository.findAllStatsByUniqueIp(start, end));
             } else {
                 log.info("Get all stats");
-                return hitRepository.findAllStats(start, end);
+                return rollupStatsReader.findStats(start, end, null);
             }
         } else {
             if (unique) {
                 log.info("Get all stats by uri and unique ip");
-                return hitRepository.findStatsByUrisByUniqueIp(start, end, uris);
+                return toStats(hitRepository.findStatsByUrisByUniqueIp(start, end, uriIds));
             } else {
                 log.info("Get all stats by uri");
-                return hitRepository.findStatsByUris(start, end, uris);
+                return rollupStatsReader.findStats(start, end, uriIds);
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Готовит потоковую выдачу статистики в формате NDJSON: строки читаются из базы курсором
+     * и сразу пишутся в ответ, поэтому память не зависит от числа адресов.
+     *
+     * @param start  начало периода времени
+     * @param end    конец периода времени
+     * @param uris   список URL-адресов, по которым велась статистика
+     * @param unique флаг, указывающий, считать ли уникальные хиты
+     * @return тело ответа
+     */
+    @Override
+    public StreamingResponseBody streamStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                             Boolean unique) {
+        validatePeriod(start, end);
+        List<Integer> uriIds = findUriIds(uris);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return out -> {
+            };
+        }
+        LocalDateTime from = start.truncatedTo(ChronoUnit.SECONDS);
+        LocalDateTime to = end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+        return out -> statsStreamer.write(from, to, uriIds, unique, out);
+    }
+
+    /**
+     * Находит самые посещаемые адреса за указанный период времени по сводкам Space-Saving.
+     *
+     * @param start  начало периода времени
+     * @param end    конец периода времени
+     * @param k      число адресов в ответе
+     * @param unique флаг, указывающий, считать ли уникальные хиты
+     * @param approximate флаг, разрешающий приближённый подсчёт уникальных хитов по скетчам
+     * @return список объектов со статистикой по хитам, отсортированный по убыванию числа хитов
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<StatsDto> getTopStats(LocalDateTime start, LocalDateTime end, Integer k, Boolean unique,
+                                      Boolean approximate) {
+        validatePeriod(start, end);
+        if (k < 1) {
+            throw new StatisticsValidationException("k must be positive");
+        }
+        log.info("Get top {} stats", k);
+        return topStatsReader.findTop(start, end, k, unique, approximate);
+    }
+
+    /**
+     * Строит временные ряды числа хитов по агрегатам не крупнее шага ряда.
+     *
+     * @param start       начало периода времени
+     * @param end         конец периода времени
+     * @param uris        список URL-адресов, по которым велась статистика
+     * @param interval    шаг ряда: minute, hour или day
+     * @param unique      флаг, указывающий, считать ли уникальные хиты
+     * @param approximate флаг, разрешающий приближённый подсчёт уникальных хитов по скетчам
+     * @return список временных рядов по парам приложение-адрес
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<SeriesDto> getSeries(LocalDateTime start, LocalDateTime end, List<String> uris, String interval,
+                                     Boolean unique, Boolean approximate) {
+        validatePeriod(start, end);
+        SeriesInterval seriesInterval = SeriesInterval.of(interval);
+        List<Integer> uriIds = findUriIds(uris);
+        if (uriIds == null || uriIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        LocalDateTime from = start.truncatedTo(ChronoUnit.SECONDS);
+        LocalDateTime to = end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+        log.info("Get {} series", seriesInterval.getName());
+        return seriesStatsReader.findSeries(from, to, uriIds, seriesInterval, unique, approximate);
+    }
+
+    /**
+     * Готовит выгрузку сырых хитов: хиты читаются из базы страницами с продолжением
+     * по (time_stamp, id) и сразу пишутся в ответ.
+     *
+     * @param start     начало периода времени
+     * @param end       конец периода времени
+     * @param app       приложение, хиты которого выгружаются, или null для всех приложений
+     * @param uris      список URL-адресов, хиты которых выгружаются
+     * @param format    формат выгрузки
+     * @param afterTime время последнего полученного хита или null для выгрузки с начала периода
+     * @param afterId   идентификатор последнего полученного хита
+     * @return тело ответа
+     */
+    @Override
+    public StreamingResponseBody exportHits(LocalDateTime start, LocalDateTime end, String app, List<String> uris,
+                                            ExportFormat format, LocalDateTime afterTime, Long afterId) {
+        validatePeriod(start, end);
+        if ((afterTime == null) != (afterId == null)) {
+            throw new StatisticsValidationException("afterTime and afterId must be set together");
+        }
+        List<Integer> uriIds = findUriIds(uris);
+        Integer appId = app == null ? null : hitDictionary.findAppId(app);
+        TimeRange range = new TimeRange(start.truncatedTo(ChronoUnit.SECONDS),
+                end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1));
+        HitKey after = afterTime == null ? null : new HitKey(afterTime, afterId);
+        if (uriIds != null && uriIds.isEmpty() || app != null && appId == null) {
+            TimeRange empty = new TimeRange(range.getFrom(), range.getFrom());
+            return out -> hitExporter.write(empty, null, null, after, format, out);
+        }
+        return out -> hitExporter.write(range, appId, uriIds, after, format, out);
+    }
+
+    private static void validatePeriod(LocalDateTime start, LocalDateTime end) {
+        if (start != null && end != null) {
+            if (start.isAfter(end)) {
+                throw new StatisticsValidationException("Start must be after End");
+            }
+        }
+    }
+
+    private List<Integer> findUriIds(List<String> uris) {
+        if (uris == null || uris.isEmpty()) {
+            return null;
+        }
+        return hitDictionary.findUriIds(uris);
+    }
+
+    private List<StatsDto> toStats(List<HitCount> hitCounts) {
+        Map<AppUri, Long> counts = new HashMap<>();
+        for (HitCount hitCount : hitCounts) {
+            counts.put(new AppUri(hitCount.getAppId(), hitCount.getUriId()), hitCount.getHits());
+        }
+        return hitDictionary.toStats(counts);
+    }
+}
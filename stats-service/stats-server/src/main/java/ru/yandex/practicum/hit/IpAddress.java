@@ -0,0 +1,100 @@
+package ru.yandex.practicum.hit;
+
+import ru.yandex.practicum.exceptions.StatisticsValidationException;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Преобразует IP-адреса между текстовым видом и двоичным, в котором они хранятся:
+ * 4 байта для IPv4 и 16 байт для IPv6. IPv6-адреса вида {@code ::ffff:a.b.c.d}
+ * приводятся к IPv4, чтобы один клиент не считался двумя уникальными адресами.
+ */
+public final class IpAddress {
+    private static final int IPV4_PARTS = 4;
+
+    private IpAddress() {
+    }
+
+    /**
+     * Разбирает текстовый IP-адрес. Принимаются только литералы адресов,
+     * имена хостов не разрешаются. Идентификатор зоны IPv6 ({@code %eth0}) отбрасывается.
+     *
+     * @param ip текстовый адрес
+     * @return адрес в двоичном виде
+     * @throws StatisticsValidationException если строка не является IP-адресом
+     */
+    public static byte[] parse(String ip) {
+        if (ip == null || ip.isEmpty()) {
+            throw invalid(ip);
+        }
+        if (ip.indexOf(':') < 0) {
+            return parseIpv4(ip);
+        }
+        String literal = ip;
+        int zone = literal.indexOf('%');
+        if (zone >= 0) {
+            literal = literal.substring(0, zone);
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if (c != ':' && c != '.' && Character.digit(c, 16) < 0) {
+                throw invalid(ip);
+            }
+        }
+        try {
+            // строка из шестнадцатеричных цифр и двоеточий разбирается как литерал IPv6 без обращения к DNS
+            return InetAddress.getByName(literal).getAddress();
+        } catch (UnknownHostException e) {
+            throw invalid(ip);
+        }
+    }
+
+    /**
+     * Возвращает текстовый вид адреса.
+     *
+     * @param address адрес в двоичном виде
+     * @return текстовый адрес
+     */
+    public static String format(byte[] address) {
+        try {
+            return InetAddress.getByAddress(address).getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Invalid address length " + address.length, e);
+        }
+    }
+
+    private static byte[] parseIpv4(String ip) {
+        byte[] address = new byte[IPV4_PARTS];
+        int part = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = 0; i <= ip.length(); i++) {
+            char c = i < ip.length() ? ip.charAt(i) : '.';
+            if (c == '.') {
+                if (digits == 0 || part == IPV4_PARTS) {
+                    throw invalid(ip);
+                }
+                address[part++] = (byte) value;
+                value = 0;
+                digits = 0;
+            } else if (c >= '0' && c <= '9' && digits < 3) {
+                value = value * 10 + (c - '0');
+                digits++;
+                if (value > 255) {
+                    throw invalid(ip);
+                }
+            } else {
+                throw invalid(ip);
+            }
+        }
+        if (part != IPV4_PARTS) {
+            throw invalid(ip);
+        }
+        return address;
+    }
+
+    private static StatisticsValidationException invalid(String ip) {
+        return new StatisticsValidationException("Invalid ip address: " + ip);
+    }
+}
@@ -0,0 +1,45 @@
+package ru.yandex.practicum.ingest;
+
+/**
+ * Фильтр Блума над 64-битными хешами. Позиции битов получаются двойным хешированием
+ * из двух половин хеша, поэтому ключ хешируется один раз.
+ */
+class BloomFilter {
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * Создаёт фильтр под ожидаемое число ключей и долю ложных срабатываний.
+     *
+     * @param expectedKeys ожидаемое число ключей
+     * @param fpp          допустимая доля ложных срабатываний
+     */
+    BloomFilter(long expectedKeys, double fpp) {
+        long size = (long) Math.ceil(-expectedKeys * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.bits = new long[(int) Math.max(1, (size + 63) / 64)];
+        this.bitCount = bits.length * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedKeys * Math.log(2)));
+    }
+
+    boolean mightContain(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * (long) h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & 1L << bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void put(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * (long) h2, bitCount);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+}
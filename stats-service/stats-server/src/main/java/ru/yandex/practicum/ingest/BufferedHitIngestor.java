@@ -0,0 +1,227 @@
+package ru.yandex.practicum.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.hit.Hit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Буфер отложенной записи хитов.
+ * Хиты складываются в ограниченную очередь в памяти, клиент получает ответ сразу,
+ * а фоновый поток сбрасывает их в таблицу `hits` пачками: по достижении
+ * {@code flush-size} хитов или по истечении {@code flush-interval-ms} с момента
+ * появления первого хита в пачке. При переполнении очереди хиты пишутся синхронно.
+ * Собираемая пачка защищена своим монитором: фоновый поток держит его, пока собирает и пишет пачку,
+ * а остановка забирает несохранённую пачку под ним же, поэтому каждый хит пишется один раз.
+ * Если пачка не записалась {@code max-attempts} раз подряд, она пишется по одному хиту: хиты,
+ * которые база отвергает не из-за сбоя соединения, уходят в {@link DeadLetters} и не задерживают остальные.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats-server.ingestion.mode", havingValue = "buffered")
+@StandaloneNode
+public class BufferedHitIngestor implements HitIngestor {
+    private final HitWriter hitWriter;
+    private final DeadLetters deadLetters;
+    private final BlockingQueue<Hit> queue;
+    private final int flushSize;
+    private final long flushIntervalMs;
+    private final int maxAttempts;
+    private final Timer flushTimer;
+    private final Counter overflowCounter;
+    private final Thread flusher;
+    private final List<Hit> pending;
+    private volatile boolean running = true;
+
+    public BufferedHitIngestor(HitWriter hitWriter,
+                               DeadLetters deadLetters,
+                               MeterRegistry meterRegistry,
+                               @Value("${stats-server.buffer.capacity:100000}") int capacity,
+                               @Value("${stats-server.buffer.flush-size:500}") int flushSize,
+                               @Value("${stats-server.buffer.flush-interval-ms:200}") long flushIntervalMs,
+                               @Value("${stats-server.buffer.max-attempts:3}") int maxAttempts) {
+        this.hitWriter = hitWriter;
+        this.deadLetters = deadLetters;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.flushSize = flushSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.flushTimer = Timer.builder("stats.buffer.flush")
+                .description("Время сброса пачки хитов из буфера в базу")
+                .register(meterRegistry);
+        this.overflowCounter = Counter.builder("stats.buffer.overflow")
+                .description("Хиты, записанные синхронно из-за переполнения буфера")
+                .register(meterRegistry);
+        this.pending = new ArrayList<>(flushSize);
+        meterRegistry.gauge("stats.buffer.depth", queue, BlockingQueue::size);
+        this.flusher = new Thread(this::flushLoop, "hit-buffer-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher.start();
+        log.info("Hit buffer started: flush size {}, flush interval {} ms", flushSize, flushIntervalMs);
+    }
+
+    /**
+     * Кладёт хиты в буфер; не поместившиеся хиты сохраняются синхронно.
+     *
+     * @param hits список хитов
+     */
+    @Override
+    public void ingest(List<Hit> hits) {
+        List<Hit> overflow = new ArrayList<>();
+        for (Hit hit : hits) {
+            if (!running || !queue.offer(hit)) {
+                overflow.add(hit);
+            }
+        }
+        if (!overflow.isEmpty()) {
+            overflowCounter.increment(overflow.size());
+            hitWriter.write(overflow);
+        }
+    }
+
+    @Override
+    public long backlog() {
+        return queue.size();
+    }
+
+    /**
+     * Останавливает фоновый поток и сбрасывает в базу всё, что осталось в буфере.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(30));
+        List<Hit> rest;
+        synchronized (pending) {
+            rest = new ArrayList<>(pending);
+            pending.clear();
+            queue.drainTo(rest);
+        }
+        for (int from = 0; from < rest.size(); from += flushSize) {
+            drain(new ArrayList<>(rest.subList(from, Math.min(from + flushSize, rest.size()))));
+        }
+        log.info("Hit buffer drained: {} hits flushed on shutdown", rest.size());
+    }
+
+    private void flushLoop() {
+        List<Hit> batch = pending;
+        int failures = 0;
+        while (running) {
+            try {
+                boolean empty;
+                synchronized (batch) {
+                    empty = batch.isEmpty();
+                }
+                if (empty) {
+                    Hit first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    synchronized (batch) {
+                        batch.add(first);
+                    }
+                }
+                synchronized (batch) {
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                    while (batch.size() < flushSize) {
+                        queue.drainTo(batch, flushSize - batch.size());
+                        long remaining = deadline - System.nanoTime();
+                        if (batch.size() >= flushSize || remaining <= 0) {
+                            break;
+                        }
+                        Hit next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next != null) {
+                            batch.add(next);
+                        }
+                    }
+                    if (failures >= maxAttempts) {
+                        flushOneByOne(batch);
+                    } else {
+                        flush(batch);
+                        batch.clear();
+                    }
+                    failures = 0;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                failures++;
+                log.error("Failed to flush buffered hits, attempt {}", failures, e);
+                sleepQuietly();
+            }
+        }
+    }
+
+    /**
+     * Пишет пачку при остановке: несколько попыток целиком, затем по одному хиту.
+     * Хиты, которые не удалось записать и после этого, теряются, о чём пишется в лог.
+     */
+    private void drain(List<Hit> batch) {
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            try {
+                flush(batch);
+                return;
+            } catch (RuntimeException e) {
+                log.error("Failed to flush {} buffered hits on shutdown, attempt {}", batch.size(), attempt, e);
+            }
+        }
+        try {
+            flushOneByOne(batch);
+        } catch (RuntimeException e) {
+            log.error("Lost {} buffered hits on shutdown", batch.size(), e);
+        }
+    }
+
+    /**
+     * Пишет хиты по одному, убирая из пачки записанные и отвергнутые базой.
+     * При временном сбое прерывается, оставляя в пачке незаписанные хиты.
+     */
+    private void flushOneByOne(List<Hit> batch) {
+        log.warn("Flushing {} buffered hits one by one", batch.size());
+        Iterator<Hit> iterator = batch.iterator();
+        while (iterator.hasNext()) {
+            Hit hit = iterator.next();
+            try {
+                flush(Collections.singletonList(hit));
+            } catch (RuntimeException e) {
+                if (!DeadLetters.isPermanent(e)) {
+                    throw e;
+                }
+                deadLetters.record(hit, "buffer", e);
+            }
+            iterator.remove();
+        }
+    }
+
+    private void flush(List<Hit> batch) {
+        flushTimer.record(() -> hitWriter.write(batch));
+    }
+
+    private void sleepQuietly() {
+        try {
+            Thread.sleep(flushIntervalMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
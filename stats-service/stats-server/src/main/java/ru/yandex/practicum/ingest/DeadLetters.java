@@ -0,0 +1,70 @@
+package ru.yandex.practicum.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.hit.Hit;
+import ru.yandex.practicum.hit.IpAddress;
+
+import java.io.IOException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+
+/**
+ * Хиты, которые база отвергает при каждой попытке записи, например, из-за нарушения ограничения.
+ * Такие хиты не повторяются бесконечно, а пишутся в отдельный журнал {@code stats.dead-letter}
+ * (его можно направить в свой файл настройкой логирования) и считаются метрикой stats.ingest.dead_letter.
+ */
+@Component
+@StandaloneNode
+public class DeadLetters {
+    private static final Logger DEAD_LETTER_LOG = LoggerFactory.getLogger("stats.dead-letter");
+
+    private final Counter deadLetterCounter;
+
+    public DeadLetters(MeterRegistry meterRegistry) {
+        this.deadLetterCounter = Counter.builder("stats.ingest.dead_letter")
+                .description("Хиты, отвергнутые базой и отложенные в журнал недоставленных")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Проверяет, может ли запись пройти при повторе: сбои соединения и ввода-вывода временные,
+     * остальные ошибки, например, нарушение ограничений, повторятся для того же хита снова.
+     *
+     * @param e ошибка записи
+     * @return true, если повтор записи бесполезен
+     */
+    public static boolean isPermanent(RuntimeException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DataAccessResourceFailureException
+                    || cause instanceof TransientDataAccessException
+                    || cause instanceof RecoverableDataAccessException
+                    || cause instanceof SQLTransientException
+                    || cause instanceof SQLRecoverableException
+                    || cause instanceof IOException) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Откладывает хит, который не удалось записать.
+     *
+     * @param hit    хит
+     * @param source откуда пришёл хит, например, journal или buffer
+     * @param e      ошибка записи
+     */
+    public void record(Hit hit, String source, RuntimeException e) {
+        deadLetterCounter.increment();
+        DEAD_LETTER_LOG.error("{} app={} uri={} ip={} timestamp={} clientId={}: {}", source, hit.getApp(),
+                hit.getUri(), IpAddress.format(hit.getIp()), hit.getTimestamp(), hit.getClientId(), e.toString());
+    }
+}
@@ -0,0 +1,44 @@
+package ru.yandex.practicum.ingest;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.hit.Hit;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats-server.ingestion.mode", havingValue = "direct", matchIfMissing = true)
+@StandaloneNode
+public class DirectHitIngestor implements HitIngestor {
+    private final HitWriter hitWriter;
+    private final AtomicLong inFlight = new AtomicLong();
+
+    /**
+     * Синхронно сохраняет хиты до ответа клиенту.
+     *
+     * @param hits список хитов
+     */
+    @Override
+    public void ingest(List<Hit> hits) {
+        inFlight.addAndGet(hits.size());
+        try {
+            hitWriter.write(hits);
+        } finally {
+            inFlight.addAndGet(-hits.size());
+        }
+    }
+
+    /**
+     * Возвращает число хитов в запросах, которые сейчас пишутся в базу.
+     *
+     * @return число хитов
+     */
+    @Override
+    public long backlog() {
+        return inFlight.get();
+    }
+}
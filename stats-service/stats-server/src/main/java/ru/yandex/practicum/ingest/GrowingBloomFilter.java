@@ -0,0 +1,49 @@
+package ru.yandex.practicum.ingest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Фильтр Блума, растущий ступенями по мере добавления ключей. Первая ступень рассчитана
+ * на небольшое число ключей, каждая следующая - вчетверо больше предыдущей и с вдвое меньшей
+ * долей ложных срабатываний, поэтому общая доля не превышает заданной, а память
+ * растёт вместе с реальным числом ключей.
+ */
+class GrowingBloomFilter {
+    private static final int GROWTH = 4;
+
+    private final List<BloomFilter> stages = new ArrayList<>();
+    private long stageKeys;
+    private long stageCapacity;
+    private double stageFpp;
+
+    /**
+     * @param initialKeys число ключей, на которое рассчитана первая ступень
+     * @param fpp         допустимая доля ложных срабатываний всего фильтра
+     */
+    GrowingBloomFilter(long initialKeys, double fpp) {
+        this.stageCapacity = Math.max(1, initialKeys);
+        this.stageFpp = fpp / 2;
+        stages.add(new BloomFilter(stageCapacity, stageFpp));
+    }
+
+    boolean mightContain(long hash) {
+        for (BloomFilter stage : stages) {
+            if (stage.mightContain(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void put(long hash) {
+        if (stageKeys >= stageCapacity) {
+            stageCapacity *= GROWTH;
+            stageFpp /= 2;
+            stages.add(new BloomFilter(stageCapacity, stageFpp));
+            stageKeys = 0;
+        }
+        stages.get(stages.size() - 1).put(hash);
+        stageKeys++;
+    }
+}
@@ -0,0 +1,114 @@
+package ru.yandex.practicum.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.exceptions.IngestionOverloadedException;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Адаптивный допуск хитов на приём.
+ * Пока число принятых, но ещё не сохранённых хитов не меньше {@code max-backlog}, новые хиты
+ * отклоняются с ответом 429. Время записи в базу считается на каждые {@code stats-server.hits.jdbc-batch-size}
+ * хитов, чтобы одиночный хит и пачка из тысяч хитов давали сравнимые значения, и сглаживается
+ * экспоненциальным средним. Когда среднее превышает {@code latency-threshold-ms}, доля отклоняемых
+ * с ответом 503 запросов растёт линейно и достигает {@code max-shed-ratio} при двукратном превышении порога.
+ * Без записей среднее затухает с постоянной времени {@code idle-decay-ms}, так что после перегрузки
+ * и паузы в трафике приём не остаётся закрытым по устаревшему значению.
+ */
+@Slf4j
+@Component
+@StandaloneNode
+public class HitAdmission {
+    private final boolean enabled;
+    private final long maxBacklog;
+    private final double latencyThresholdMs;
+    private final double maxShedRatio;
+    private final double alpha;
+    private final int chunkHits;
+    private final double idleDecayNanos;
+    private final long retryAfterSeconds;
+    private final Counter backlogShedCounter;
+    private final Counter latencyShedCounter;
+    private volatile double writeLatencyMs;
+    private volatile long lastWriteNanos = System.nanoTime();
+
+    public HitAdmission(MeterRegistry meterRegistry,
+                        @Value("${stats-server.admission.enabled:true}") boolean enabled,
+                        @Value("${stats-server.admission.max-backlog:50000}") long maxBacklog,
+                        @Value("${stats-server.admission.latency-threshold-ms:2000}") double latencyThresholdMs,
+                        @Value("${stats-server.admission.max-shed-ratio:0.9}") double maxShedRatio,
+                        @Value("${stats-server.admission.latency-alpha:0.2}") double alpha,
+                        @Value("${stats-server.admission.idle-decay-ms:10000}") long idleDecayMs,
+                        @Value("${stats-server.admission.retry-after-seconds:1}") long retryAfterSeconds,
+                        @Value("${stats-server.hits.jdbc-batch-size:500}") int chunkHits) {
+        this.enabled = enabled;
+        this.maxBacklog = maxBacklog;
+        this.latencyThresholdMs = latencyThresholdMs;
+        this.maxShedRatio = maxShedRatio;
+        this.alpha = alpha;
+        this.idleDecayNanos = idleDecayMs * 1_000_000.0;
+        this.chunkHits = Math.max(1, chunkHits);
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.backlogShedCounter = Counter.builder("stats.ingest.shed")
+                .description("Хиты, отклонённые при перегрузке приёма")
+                .tag("reason", "backlog")
+                .register(meterRegistry);
+        this.latencyShedCounter = Counter.builder("stats.ingest.shed")
+                .description("Хиты, отклонённые при перегрузке приёма")
+                .tag("reason", "latency")
+                .register(meterRegistry);
+        meterRegistry.gauge("stats.ingest.write.latency.ewma", this, admission -> admission.currentLatency(System.nanoTime()));
+    }
+
+    /**
+     * Проверяет, можно ли принять хиты.
+     *
+     * @param hits    число хитов в запросе
+     * @param backlog число принятых, но ещё не сохранённых хитов
+     * @throws IngestionOverloadedException если хиты отклонены
+     */
+    public void admit(int hits, long backlog) {
+        if (!enabled) {
+            return;
+        }
+        if (backlog >= maxBacklog) {
+            backlogShedCounter.increment(hits);
+            throw new IngestionOverloadedException("Too many hits are waiting to be saved",
+                    HttpStatus.TOO_MANY_REQUESTS, retryAfterSeconds);
+        }
+        double latency = currentLatency(System.nanoTime());
+        if (latency > latencyThresholdMs) {
+            double ratio = Math.min(maxShedRatio, (latency - latencyThresholdMs) / latencyThresholdMs);
+            if (ThreadLocalRandom.current().nextDouble() < ratio) {
+                latencyShedCounter.increment(hits);
+                throw new IngestionOverloadedException("Hit storage is overloaded",
+                        HttpStatus.SERVICE_UNAVAILABLE, retryAfterSeconds);
+            }
+        }
+    }
+
+    /**
+     * Учитывает время записи пачки хитов в базу.
+     *
+     * @param hits   число записанных хитов
+     * @param millis время записи
+     */
+    public synchronized void recordWrite(int hits, double millis) {
+        long now = System.nanoTime();
+        double perChunk = millis / Math.max(1, (hits + chunkHits - 1) / chunkHits);
+        double current = currentLatency(now);
+        writeLatencyMs = current == 0 ? perChunk : current + alpha * (perChunk - current);
+        lastWriteNanos = now;
+    }
+
+    private double currentLatency(long now) {
+        long idle = now - lastWriteNanos;
+        return idle <= 0 ? writeLatencyMs : writeLatencyMs * Math.exp(-idle / idleDecayNanos);
+    }
+}
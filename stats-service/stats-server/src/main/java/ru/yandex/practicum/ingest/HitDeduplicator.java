@@ -0,0 +1,104 @@
+package ru.yandex.practicum.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.hit.Hit;
+import ru.yandex.practicum.sketch.Hashing;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Отбрасывает повторы хитов с одинаковыми приложением, адресом и IP-адресом, время которых
+ * отличается меньше чем на {@code window-ms}: повторные отправки клиента и обновления страницы.
+ * Время делится на слои по половине {@code window-ms}, для каждого слоя ведётся фильтр Блума;
+ * хит считается повтором, если его ключ есть в слое его времени или в предыдущем. Поэтому хиты
+ * с разницей меньше половины окна отбрасываются всегда, с разницей от половины окна до окна -
+ * в зависимости от границы слоёв, а с разницей не меньше окна не отбрасываются никогда.
+ * Хранится не больше {@code slices} последних слоёв, хиты старше них пропускаются без проверки.
+ * Фильтр слоя сначала рассчитан на пачку, открывшую слой, и растёт вместе с числом хитов в слое;
+ * ложные срабатывания отбрасывают не больше доли {@code fpp} различных хитов.
+ */
+@Component
+@StandaloneNode
+public class HitDeduplicator {
+    private final boolean enabled;
+    private static final int MIN_SLICE_HITS = 1024;
+
+    private final long sliceMs;
+    private final int maxSlices;
+    private final double fpp;
+    private final TreeMap<Long, GrowingBloomFilter> slices = new TreeMap<>();
+    private final Counter suppressedCounter;
+
+    public HitDeduplicator(MeterRegistry meterRegistry,
+                           @Value("${stats-server.dedup.enabled:false}") boolean enabled,
+                           @Value("${stats-server.dedup.window-ms:2000}") long windowMs,
+                           @Value("${stats-server.dedup.slices:8}") int maxSlices,
+                           @Value("${stats-server.dedup.fpp:0.001}") double fpp) {
+        this.enabled = enabled;
+        this.sliceMs = Math.max(1, windowMs / 2);
+        this.maxSlices = maxSlices;
+        this.fpp = fpp;
+        this.suppressedCounter = Counter.builder("stats.ingest.deduplicated")
+                .description("Повторы хитов, отброшенные при приёме")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Убирает из списка повторы хитов.
+     *
+     * @param hits список хитов
+     * @return хиты без повторов; исходный список, если повторов нет
+     */
+    public List<Hit> deduplicate(List<Hit> hits) {
+        if (!enabled) {
+            return hits;
+        }
+        List<Hit> result = new ArrayList<>(hits.size());
+        synchronized (slices) {
+            for (Hit hit : hits) {
+                if (!isRepeat(hit, hits.size())) {
+                    result.add(hit);
+                }
+            }
+        }
+        int suppressed = hits.size() - result.size();
+        if (suppressed == 0) {
+            return hits;
+        }
+        suppressedCounter.increment(suppressed);
+        return result;
+    }
+
+    private boolean isRepeat(Hit hit, int batchSize) {
+        long slice = Math.floorDiv(hit.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli(), sliceMs);
+        GrowingBloomFilter current = slices.get(slice);
+        if (current == null) {
+            if (slices.size() >= maxSlices && slice < slices.firstKey()) {
+                return false;
+            }
+            current = new GrowingBloomFilter(Math.max(MIN_SLICE_HITS, batchSize), fpp);
+            slices.put(slice, current);
+            while (slices.size() > maxSlices) {
+                slices.pollFirstEntry();
+            }
+        }
+        long key = key(hit);
+        Map.Entry<Long, GrowingBloomFilter> previous = slices.lowerEntry(slice);
+        boolean repeat = current.mightContain(key)
+                || previous != null && previous.getKey() == slice - 1 && previous.getValue().mightContain(key);
+        current.put(key);
+        return repeat;
+    }
+
+    private static long key(Hit hit) {
+        return Hashing.mix64(Hashing.hash64(hit.getApp() + '\n' + hit.getUri()) * 31 + Hashing.hash64(hit.getIp()));
+    }
+}
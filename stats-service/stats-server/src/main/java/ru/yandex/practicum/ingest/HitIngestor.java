@@ -0,0 +1,21 @@
+package ru.yandex.practicum.ingest;
+
+import ru.yandex.practicum.hit.Hit;
+
+import java.util.List;
+
+public interface HitIngestor {
+    /**
+     * Принимает хиты на сохранение.
+     *
+     * @param hits список хитов
+     */
+    void ingest(List<Hit> hits);
+
+    /**
+     * Возвращает число принятых, но ещё не сохранённых в базу хитов.
+     *
+     * @return число хитов
+     */
+    long backlog();
+}
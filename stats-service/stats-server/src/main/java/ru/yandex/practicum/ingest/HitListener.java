@@ -0,0 +1,23 @@
+package ru.yandex.practicum.ingest;
+
+import org.springframework.core.Ordered;
+import ru.yandex.practicum.hit.Hit;
+
+import java.util.List;
+
+/**
+ * Слушатель сохранённых хитов. Слушатели вызываются по порядку {@code @Order}:
+ * сначала агрегаты в памяти, затем кеш ответов, иначе кеш может сдвинуть отметку
+ * раньше, чем агрегаты учтут пачку, и запомнить под новой отметкой старый ответ.
+ */
+public interface HitListener {
+    int AGGREGATE_ORDER = 0;
+    int CACHE_ORDER = Ordered.LOWEST_PRECEDENCE;
+
+    /**
+     * Вызывается после того, как пачка хитов зафиксирована в базе.
+     *
+     * @param hits список сохранённых хитов
+     */
+    void onHits(List<Hit> hits);
+}
@@ -0,0 +1,118 @@
+package ru.yandex.practicum.ingest;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.alltime.AllTimeRepository;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.dictionary.HitDictionary;
+import ru.yandex.practicum.hit.Hit;
+import ru.yandex.practicum.hit.HitRepository;
+import ru.yandex.practicum.rollup.RollupRepository;
+import ru.yandex.practicum.template.TemplateRollupRepository;
+
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@StandaloneNode
+public class HitWriter {
+    private final HitDictionary hitDictionary;
+    private final HitRepository hitRepository;
+    private final RollupRepository rollupRepository;
+    private final AllTimeRepository allTimeRepository;
+    private final TemplateRollupRepository templateRollupRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final List<HitListener> hitListeners;
+    private final HitAdmission hitAdmission;
+    private final ReplayFilter replayFilter;
+    private final ReadWriteLock pauseLock = new ReentrantReadWriteLock();
+
+    /**
+     * Сохраняет хиты в таблицу `hits` пакетными вставками и обновляет таблицы
+     * предагрегации и счётчики за всё время одной транзакцией, после фиксации оповещает слушателей.
+     * Хиты с уже сохранённым клиентским идентификатором пропускаются.
+     *
+     * @param hits список хитов
+     */
+    public void write(List<Hit> hits) {
+        write(hits, () -> {
+        });
+    }
+
+    /**
+     * Сохраняет хиты так же, как {@link #write(List)}, и выполняет дополнительное действие
+     * в той же транзакции, например, сдвигает отметку прочитанного из журнала.
+     *
+     * @param hits          список хитов
+     * @param inTransaction действие в транзакции записи хитов
+     */
+    public void write(List<Hit> hits, Runnable inTransaction) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        hitDictionary.encode(hits);
+        List<Hit> fresh = replayFilter.dropRecent(hits);
+        pauseLock.readLock().lock();
+        try {
+            long started = System.nanoTime();
+            List<Hit> saved;
+            try {
+                saved = save(fresh, inTransaction);
+            } catch (DuplicateKeyException e) {
+                log.debug("Concurrent write of the same hit ids, retrying", e);
+                saved = save(fresh, inTransaction);
+            }
+            hitAdmission.recordWrite(fresh.size(), (System.nanoTime() - started) / 1_000_000.0);
+            if (saved.isEmpty()) {
+                return;
+            }
+            for (HitListener listener : hitListeners) {
+                try {
+                    listener.onHits(saved);
+                } catch (RuntimeException e) {
+                    log.error("Hit listener {} failed", listener.getClass().getSimpleName(), e);
+                }
+            }
+        } finally {
+            pauseLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Выполняет действие, когда ни одна запись не идёт: начатые записи дожидаются оповещения
+     * слушателей, новые ждут окончания действия. Так снимок агрегатов получает отметку,
+     * все хиты до которой уже учтены в памяти.
+     *
+     * @param action действие
+     * @return результат действия
+     */
+    public <T> T paused(Supplier<T> action) {
+        pauseLock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            pauseLock.writeLock().unlock();
+        }
+    }
+
+    private List<Hit> save(List<Hit> hits, Runnable inTransaction) {
+        return transactionTemplate.execute(status -> {
+            List<Hit> fresh = replayFilter.dropStored(hits);
+            if (!fresh.isEmpty()) {
+                hitRepository.saveAllInBatch(fresh);
+                rollupRepository.addAll(fresh);
+                allTimeRepository.addAll(fresh);
+                templateRollupRepository.addAll(fresh);
+            }
+            inTransaction.run();
+            return fresh;
+        });
+    }
+}
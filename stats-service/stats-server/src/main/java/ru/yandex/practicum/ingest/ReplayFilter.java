@@ -0,0 +1,125 @@
+package ru.yandex.practicum.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.hit.Hit;
+import ru.yandex.practicum.hit.HitRepository;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Отбрасывает повторные отправки хитов с уже сохранённым клиентским идентификатором.
+ * Недавние идентификаторы проверяются по памяти (последние {@code recent-capacity} сохранённых),
+ * остальные - по таблице `hit_client_ids`, где идентификатор уникален независимо от времени хита:
+ * клиент может пересобрать хит при повторе с новым временем.
+ * Хиты без идентификатора пропускаются без проверки.
+ */
+@Component
+@Order(HitListener.AGGREGATE_ORDER)
+@StandaloneNode
+public class ReplayFilter implements HitListener {
+    private final HitRepository hitRepository;
+    private final Map<String, Boolean> recentIds;
+    private final Counter replayedCounter;
+
+    public ReplayFilter(HitRepository hitRepository,
+                        MeterRegistry meterRegistry,
+                        @Value("${stats-server.hit-ids.recent-capacity:100000}") int recentCapacity) {
+        this.hitRepository = hitRepository;
+        this.recentIds = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > recentCapacity;
+            }
+        };
+        this.replayedCounter = Counter.builder("stats.ingest.replayed")
+                .description("Повторные отправки хитов с уже сохранённым идентификатором")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Убирает хиты с недавно сохранёнными идентификаторами и повторы идентификаторов внутри списка.
+     *
+     * @param hits список хитов
+     * @return хиты без повторов; исходный список, если повторов нет
+     */
+    public List<Hit> dropRecent(List<Hit> hits) {
+        List<Hit> result = new ArrayList<>(hits.size());
+        Set<String> seen = new HashSet<>();
+        synchronized (recentIds) {
+            for (Hit hit : hits) {
+                String clientId = hit.getClientId();
+                if (clientId == null || !recentIds.containsKey(clientId) && seen.add(clientId)) {
+                    result.add(hit);
+                }
+            }
+        }
+        return count(hits, result);
+    }
+
+    /**
+     * Убирает хиты, идентификаторы которых уже есть в базе. Вызывается в транзакции записи.
+     *
+     * @param hits список хитов без повторов внутри списка
+     * @return хиты, которых ещё нет в базе
+     */
+    public List<Hit> dropStored(List<Hit> hits) {
+        Set<String> clientIds = new HashSet<>();
+        for (Hit hit : hits) {
+            if (hit.getClientId() != null) {
+                clientIds.add(hit.getClientId());
+            }
+        }
+        if (clientIds.isEmpty()) {
+            return hits;
+        }
+        Set<String> stored = new HashSet<>(hitRepository.findStoredClientIds(clientIds));
+        if (stored.isEmpty()) {
+            return hits;
+        }
+        List<Hit> result = new ArrayList<>(hits.size());
+        for (Hit hit : hits) {
+            if (hit.getClientId() == null || !stored.contains(hit.getClientId())) {
+                result.add(hit);
+            }
+        }
+        synchronized (recentIds) {
+            stored.forEach(clientId -> recentIds.put(clientId, Boolean.TRUE));
+        }
+        return count(hits, result);
+    }
+
+    /**
+     * Запоминает идентификаторы сохранённых хитов.
+     *
+     * @param hits список сохранённых хитов
+     */
+    @Override
+    public void onHits(List<Hit> hits) {
+        synchronized (recentIds) {
+            for (Hit hit : hits) {
+                if (hit.getClientId() != null) {
+                    recentIds.put(hit.getClientId(), Boolean.TRUE);
+                }
+            }
+        }
+    }
+
+    private List<Hit> count(List<Hit> hits, List<Hit> result) {
+        int replayed = hits.size() - result.size();
+        if (replayed == 0) {
+            return hits;
+        }
+        replayedCounter.increment(replayed);
+        return result;
+    }
+}
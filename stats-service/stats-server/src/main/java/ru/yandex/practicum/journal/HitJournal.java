@@ -0,0 +1,205 @@
+package ru.yandex.practicum.journal;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.hit.Hit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Журнал хитов из сегментов фиксированного размера, отображённых в память.
+ * Записи только дописываются в активный сегмент; когда запись не помещается,
+ * активный сегмент сбрасывается на диск и открывается следующий. Сегменты нумеруются
+ * по возрастанию, после перезапуска запись всегда идёт в новый сегмент, а старые
+ * дочитываются до первой нулевой или повреждённой записи.
+ */
+@Slf4j
+class HitJournal {
+    private static final String SUFFIX = ".journal";
+
+    private final Path dir;
+    private final int segmentBytes;
+    private long activeSegment;
+    private MappedByteBuffer activeBuffer;
+    private volatile JournalPosition written;
+    private long readSegment = -1;
+    private MappedByteBuffer readBuffer;
+
+    private HitJournal(Path dir, int segmentBytes) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Открывает журнал и создаёт новый активный сегмент.
+     *
+     * @param dir          каталог сегментов
+     * @param segmentBytes размер сегмента
+     * @param minSegment   номер, после которого должен идти новый сегмент
+     * @return журнал
+     */
+    static HitJournal open(Path dir, int segmentBytes, long minSegment) throws IOException {
+        Files.createDirectories(dir);
+        HitJournal journal = new HitJournal(dir, segmentBytes);
+        TreeSet<Long> segments = journal.segments();
+        long last = segments.isEmpty() ? 0 : segments.last();
+        journal.activate(Math.max(last, minSegment) + 1);
+        log.info("Hit journal opened in {}: {} old segments, active segment {}", dir, segments.size(),
+                journal.activeSegment);
+        return journal;
+    }
+
+    /**
+     * Возвращает начало самого старого сегмента.
+     *
+     * @return позиция
+     */
+    synchronized JournalPosition first() {
+        return new JournalPosition(segments().first(), 0);
+    }
+
+    /**
+     * Дописывает записи в журнал.
+     *
+     * @param records закодированные записи
+     * @param force   сбросить ли сегмент на диск перед возвратом
+     */
+    synchronized void append(List<byte[]> records, boolean force) throws IOException {
+        if (activeBuffer == null) {
+            throw new IllegalStateException("Hit journal is closed");
+        }
+        for (byte[] record : records) {
+            if (record.length > segmentBytes) {
+                throw new IllegalArgumentException("Journal record of " + record.length + " bytes exceeds segment");
+            }
+            if (record.length > activeBuffer.remaining()) {
+                activeBuffer.force();
+                activate(activeSegment + 1);
+            }
+            activeBuffer.put(record);
+        }
+        if (force) {
+            activeBuffer.force();
+        }
+        written = new JournalPosition(activeSegment, activeBuffer.position());
+    }
+
+    synchronized void force() {
+        if (activeBuffer != null) {
+            activeBuffer.force();
+        }
+    }
+
+    /**
+     * Читает хиты начиная с позиции, переходя по сегментам, пока не наберётся {@code maxHits}
+     * или не кончатся записанные данные. Вызывается только из одного потока.
+     *
+     * @param from    позиция начала чтения
+     * @param maxHits наибольшее число хитов
+     * @param out     список, в который добавляются прочитанные хиты
+     * @return позиция после последнего прочитанного хита
+     */
+    JournalPosition read(JournalPosition from, int maxHits, List<Hit> out) throws IOException {
+        long segment = from.getSegment();
+        int offset = (int) from.getOffset();
+        while (out.size() < maxHits) {
+            JournalPosition end = written;
+            ByteBuffer buffer = segmentForRead(segment, end);
+            if (buffer != null) {
+                buffer.limit(segment == end.getSegment() ? (int) end.getOffset() : buffer.capacity());
+                buffer.position(Math.min(offset, buffer.limit()));
+                Hit hit;
+                while (out.size() < maxHits && (hit = JournalCodec.decode(buffer)) != null) {
+                    out.add(hit);
+                }
+                offset = buffer.position();
+            }
+            if (out.size() >= maxHits || segment >= end.getSegment()) {
+                break;
+            }
+            Long next = segments().higher(segment);
+            if (next == null) {
+                break;
+            }
+            segment = next;
+            offset = 0;
+        }
+        return new JournalPosition(segment, offset);
+    }
+
+    /**
+     * Удаляет сегменты с номерами меньше указанного: их хиты уже загружены в базу.
+     *
+     * @param segment номер первого нужного сегмента
+     */
+    void deleteBefore(long segment) throws IOException {
+        for (Long old : segments().headSet(segment)) {
+            if (old == readSegment) {
+                readSegment = -1;
+                readBuffer = null;
+            }
+            Files.deleteIfExists(path(old));
+        }
+    }
+
+    synchronized void close() {
+        if (activeBuffer != null) {
+            activeBuffer.force();
+            activeBuffer = null;
+        }
+    }
+
+    private ByteBuffer segmentForRead(long segment, JournalPosition end) throws IOException {
+        if (segment == end.getSegment()) {
+            synchronized (this) {
+                return activeSegment == segment && activeBuffer != null ? activeBuffer.duplicate() : null;
+            }
+        }
+        if (segment != readSegment) {
+            readBuffer = null;
+            readSegment = -1;
+            if (!Files.exists(path(segment))) {
+                return null;
+            }
+            try (FileChannel channel = FileChannel.open(path(segment), StandardOpenOption.READ)) {
+                readBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            readSegment = segment;
+        }
+        return readBuffer.duplicate();
+    }
+
+    private void activate(long segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(path(segment), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            activeBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        activeSegment = segment;
+        written = new JournalPosition(segment, 0);
+    }
+
+    private TreeSet<Long> segments() {
+        TreeSet<Long> segments = new TreeSet<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .forEach(name -> segments.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length()))));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return segments;
+    }
+
+    private Path path(long segment) {
+        return dir.resolve(String.format("%019d%s", segment, SUFFIX));
+    }
+}
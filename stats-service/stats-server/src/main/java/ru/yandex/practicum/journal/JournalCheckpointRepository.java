@@ -0,0 +1,44 @@
+package ru.yandex.practicum.journal;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.cluster.StandaloneNode;
+
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+@StandaloneNode
+public class JournalCheckpointRepository {
+    private static final int CHECKPOINT_ID = 1;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Находит позицию журнала, до которой хиты загружены в базу.
+     *
+     * @return позиция или null, если журнал ещё не загружался
+     */
+    public JournalPosition find() {
+        List<JournalPosition> positions = jdbcTemplate.query(
+                "SELECT segment, position FROM hit_journal_checkpoint WHERE id = ?",
+                (rs, rowNum) -> new JournalPosition(rs.getLong("segment"), rs.getLong("position")),
+                CHECKPOINT_ID);
+        return positions.isEmpty() ? null : positions.get(0);
+    }
+
+    /**
+     * Сохраняет позицию журнала. Должен вызываться в транзакции вставки хитов.
+     *
+     * @param position позиция после последнего загруженного хита
+     */
+    public void save(JournalPosition position) {
+        int updated = jdbcTemplate.update("UPDATE hit_journal_checkpoint SET segment = ?, position = ? WHERE id = ?",
+                position.getSegment(), position.getOffset(), CHECKPOINT_ID);
+        if (updated == 0) {
+            jdbcTemplate.update("INSERT INTO hit_journal_checkpoint (id, segment, position) VALUES (?, ?, ?)",
+                    CHECKPOINT_ID, position.getSegment(), position.getOffset());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package ru.yandex.practicum.journal;
+
+import ru.yandex.practicum.exceptions.StatisticsValidationException;
+import ru.yandex.practicum.hit.Hit;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.zip.CRC32;
+
+/**
+ * Двоичный формат записи журнала: длина данных (int), CRC32 данных (int) и сами данные -
+ * приложение и адрес в UTF-8 с длиной (unsigned short), IP-адрес с длиной (byte),
+ * время в секундах эпохи (long) и наносекундах (int), затем необязательный клиентский идентификатор
+ * хита в UTF-8 с длиной (unsigned short); записи без него читаются как хиты без идентификатора.
+ * Нулевая длина означает конец сегмента. Строки длиннее {@code MAX_STRING_BYTES} байт в формат
+ * не помещаются, и такие хиты отклоняются до записи в журнал.
+ */
+final class JournalCodec {
+    static final int HEADER_BYTES = 2 * Integer.BYTES;
+    static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private JournalCodec() {
+    }
+
+    static byte[] encode(Hit hit) {
+        byte[] app = toBytes("app", hit.getApp());
+        byte[] uri = toBytes("uri", hit.getUri());
+        byte[] ip = hit.getIp();
+        byte[] clientId = hit.getClientId() == null ? null : toBytes("clientId", hit.getClientId());
+        ByteBuffer payload = ByteBuffer.allocate(Short.BYTES + app.length + Short.BYTES + uri.length
+                + Byte.BYTES + ip.length + Long.BYTES + Integer.BYTES
+                + (clientId == null ? 0 : Short.BYTES + clientId.length));
+        payload.putShort((short) app.length).put(app);
+        payload.putShort((short) uri.length).put(uri);
+        payload.put((byte) ip.length).put(ip);
+        payload.putLong(hit.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+        payload.putInt(hit.getTimestamp().getNano());
+        if (clientId != null) {
+            payload.putShort((short) clientId.length).put(clientId);
+        }
+        byte[] data = payload.array();
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + data.length);
+        record.putInt(data.length).putInt(crc(data, 0, data.length)).put(data);
+        return record.array();
+    }
+
+    /**
+     * Читает запись с текущей позиции буфера.
+     *
+     * @param buffer буфер сегмента, ограниченный концом записанных данных
+     * @return хит или null, если дальше нет целой записи; позиция буфера тогда не меняется
+     */
+    static Hit decode(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < HEADER_BYTES) {
+            return null;
+        }
+        int length = buffer.getInt(start);
+        int crc = buffer.getInt(start + Integer.BYTES);
+        if (length <= 0 || length > buffer.remaining() - HEADER_BYTES) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(start + HEADER_BYTES);
+        source.get(data);
+        if (crc(data, 0, length) != crc) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.wrap(data);
+        String app = readString(payload);
+        String uri = readString(payload);
+        byte[] ip = new byte[payload.get()];
+        payload.get(ip);
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(payload.getLong(), payload.getInt(), ZoneOffset.UTC);
+        String clientId = payload.hasRemaining() ? readString(payload) : null;
+        buffer.position(start + HEADER_BYTES + length);
+        return Hit.builder()
+                .app(app)
+                .uri(uri)
+                .ip(ip)
+                .timestamp(timestamp)
+                .clientId(clientId)
+                .build();
+    }
+
+    private static byte[] toBytes(String field, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new StatisticsValidationException(String.format("Hit %s of %d bytes is longer than %d bytes",
+                    field, bytes.length, MAX_STRING_BYTES));
+        }
+        return bytes;
+    }
+
+    private static String readString(ByteBuffer payload) {
+        byte[] bytes = new byte[Short.toUnsignedInt(payload.getShort())];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int crc(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+}
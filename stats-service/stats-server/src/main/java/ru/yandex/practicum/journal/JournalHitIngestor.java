@@ -0,0 +1,273 @@
+package ru.yandex.practicum.journal;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.hit.Hit;
+import ru.yandex.practicum.ingest.DeadLetters;
+import ru.yandex.practicum.ingest.HitIngestor;
+import ru.yandex.practicum.ingest.HitWriter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Приём хитов через журнал на диске.
+ * Хиты дописываются в отображённый в память журнал до ответа клиенту, а фоновый поток
+ * загружает их в таблицу `hits` пачками до {@code flush-size} хитов. Позиция журнала,
+ * до которой хиты загружены, сохраняется в `hit_journal_checkpoint` в той же транзакции,
+ * что и сами хиты, поэтому после сбоя незагруженная часть журнала догружается при старте
+ * ровно один раз. Сегменты удаляются, как только отметка загруженного переходит за них.
+ * Сброс журнала на диск: {@code always} - перед каждым ответом,
+ * {@code interval} - раз в {@code fsync-interval-ms}, {@code never} - на усмотрение ОС.
+ * При падении процесса без падения ОС записанные хиты не теряются ни в одном режиме.
+ * Если пачка не записалась {@code max-attempts} раз подряд, она догружается по одному хиту:
+ * хиты, которые база отвергает не из-за сбоя соединения, уходят в {@link DeadLetters}
+ * и пропускаются, чтобы одна плохая запись не останавливала загрузку журнала.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats-server.ingestion.mode", havingValue = "journal")
+@StandaloneNode
+public class JournalHitIngestor implements HitIngestor {
+    private final HitWriter hitWriter;
+    private final JournalCheckpointRepository checkpointRepository;
+    private final DeadLetters deadLetters;
+    private final Path dir;
+    private final int segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMs;
+    private final int flushSize;
+    private final long pollIntervalMs;
+    private final int maxAttempts;
+    private final Timer flushTimer;
+    private final Object signal = new Object();
+    private final AtomicLong backlog = new AtomicLong();
+    private final Thread consumer;
+    private HitJournal journal;
+    private ScheduledExecutorService syncer;
+    private JournalPosition position;
+    private volatile boolean running = true;
+
+    public JournalHitIngestor(HitWriter hitWriter,
+                              JournalCheckpointRepository checkpointRepository,
+                              DeadLetters deadLetters,
+                              MeterRegistry meterRegistry,
+                              @Value("${stats-server.journal.dir:journal}") String dir,
+                              @Value("${stats-server.journal.segment-bytes:67108864}") int segmentBytes,
+                              @Value("${stats-server.journal.fsync:interval}") FsyncPolicy fsyncPolicy,
+                              @Value("${stats-server.journal.fsync-interval-ms:200}") long fsyncIntervalMs,
+                              @Value("${stats-server.journal.flush-size:500}") int flushSize,
+                              @Value("${stats-server.journal.poll-interval-ms:200}") long pollIntervalMs,
+                              @Value("${stats-server.journal.max-attempts:3}") int maxAttempts) {
+        this.hitWriter = hitWriter;
+        this.checkpointRepository = checkpointRepository;
+        this.deadLetters = deadLetters;
+        this.dir = Paths.get(dir);
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        this.flushSize = flushSize;
+        this.pollIntervalMs = pollIntervalMs;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.flushTimer = Timer.builder("stats.journal.flush")
+                .description("Время загрузки пачки хитов из журнала в базу")
+                .register(meterRegistry);
+        this.consumer = new Thread(this::consumeLoop, "hit-journal-consumer");
+        this.consumer.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        JournalPosition checkpoint = checkpointRepository.find();
+        journal = HitJournal.open(dir, segmentBytes, checkpoint == null ? 0 : checkpoint.getSegment());
+        position = checkpoint != null ? checkpoint : journal.first();
+        journal.deleteBefore(position.getSegment());
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "hit-journal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncer.scheduleWithFixedDelay(journal::force, fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Запускает загрузку журнала в базу, начиная с незагруженных сегментов прошлых запусков.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        consumer.start();
+        log.info("Hit journal consumer started from {}", position);
+    }
+
+    /**
+     * Дописывает хиты в журнал.
+     *
+     * @param hits список хитов
+     */
+    @Override
+    public void ingest(List<Hit> hits) {
+        List<byte[]> records = new ArrayList<>(hits.size());
+        for (Hit hit : hits) {
+            records.add(JournalCodec.encode(hit));
+        }
+        try {
+            journal.append(records, fsyncPolicy == FsyncPolicy.ALWAYS);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        backlog.addAndGet(hits.size());
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    /**
+     * Возвращает число хитов, записанных в журнал с момента запуска, но ещё не загруженных в базу.
+     *
+     * @return число хитов
+     */
+    @Override
+    public long backlog() {
+        return backlog.get();
+    }
+
+    /**
+     * Догружает в базу всё, что уже есть в журнале, и закрывает журнал.
+     * Не успевшие загрузиться хиты останутся в журнале до следующего запуска.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+        if (consumer.isAlive()) {
+            consumer.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        if (syncer != null) {
+            syncer.shutdownNow();
+        }
+        journal.close();
+        log.info("Hit journal closed at {}", position);
+    }
+
+    private void consumeLoop() {
+        List<Hit> batch = new ArrayList<>(flushSize);
+        int failures = 0;
+        while (true) {
+            try {
+                if (failures >= maxAttempts) {
+                    loadOneByOne(failures);
+                    failures = 0;
+                    continue;
+                }
+                JournalPosition next = journal.read(position, flushSize, batch);
+                if (batch.isEmpty()) {
+                    if (next.getSegment() > position.getSegment()) {
+                        checkpointRepository.save(next);
+                        journal.deleteBefore(next.getSegment());
+                    }
+                    position = next;
+                    if (!running) {
+                        break;
+                    }
+                    awaitHits();
+                    continue;
+                }
+                flushTimer.record(() -> hitWriter.write(batch, () -> checkpointRepository.save(next)));
+                int loaded = batch.size();
+                backlog.updateAndGet(pending -> Math.max(0, pending - loaded));
+                if (next.getSegment() > position.getSegment()) {
+                    journal.deleteBefore(next.getSegment());
+                }
+                position = next;
+                failures = 0;
+            } catch (IOException | RuntimeException e) {
+                failures++;
+                log.error("Failed to load {} journaled hits, attempt {}", batch.size(), failures, e);
+                if (!running) {
+                    break;
+                }
+                sleepQuietly();
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Загружает следующие {@code flush-size} хитов по одному, сдвигая отметку после каждого.
+     * Хит, отвергнутый базой не из-за сбоя соединения, откладывается и пропускается;
+     * при временном сбое загрузка прерывается и продолжится с того же хита.
+     */
+    private void loadOneByOne(int failures) throws IOException {
+        log.warn("Journaled batch at {} failed {} times, loading it hit by hit", position, failures);
+        List<Hit> single = new ArrayList<>(1);
+        for (int i = 0; i < flushSize; i++) {
+            single.clear();
+            JournalPosition next = journal.read(position, 1, single);
+            if (single.isEmpty()) {
+                return;
+            }
+            Hit hit = single.get(0);
+            try {
+                hitWriter.write(Collections.singletonList(hit), () -> checkpointRepository.save(next));
+            } catch (RuntimeException e) {
+                if (!DeadLetters.isPermanent(e)) {
+                    throw e;
+                }
+                deadLetters.record(hit, "journal", e);
+                checkpointRepository.save(next);
+            }
+            backlog.updateAndGet(pending -> Math.max(0, pending - 1));
+            if (next.getSegment() > position.getSegment()) {
+                journal.deleteBefore(next.getSegment());
+            }
+            position = next;
+        }
+    }
+
+    private void awaitHits() {
+        synchronized (signal) {
+            try {
+                signal.wait(pollIntervalMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+    }
+
+    private void sleepQuietly() {
+        try {
+            Thread.sleep(pollIntervalMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    public enum FsyncPolicy {
+        ALWAYS, INTERVAL, NEVER
+    }
+}
@@ -0,0 +1,12 @@
+package ru.yandex.practicum.journal;
+
+import lombok.Value;
+
+/**
+ * Позиция в журнале хитов: номер сегмента и смещение внутри него.
+ */
+@Value
+public class JournalPosition {
+    long segment;
+    long offset;
+}
@@ -0,0 +1,178 @@
+package ru.yandex.practicum.partition;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.cluster.StandaloneNode;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Обслуживает суточные секции таблицы `hits` в PostgreSQL: заранее создаёт секции
+ * на ближайшие дни, а секции старше срока хранения удаляет вместе со старыми строками
+ * секции по умолчанию `hits_default`. Поминутная предагрегация старше срока хранения тоже удаляется,
+ * так что за его пределами остаются только часовые агрегаты и счётчики за всё время,
+ * которые уже содержат все хиты этих суток. Вместе с хитами удаляются их клиентские идентификаторы.
+ * Уникальные IP-адреса без сырых хитов не посчитать,
+ * поэтому период запросов уникальных хитов обрезается по сроку хранения, а ответ получает {@link RetentionNotice}.
+ */
+@Slf4j
+@Component
+@StandaloneNode
+public class HitPartitionManager {
+    private static final String PARTITION_PREFIX = "hits_p";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int precreateDays;
+    private final int retentionDays;
+
+    public HitPartitionManager(JdbcTemplate jdbcTemplate,
+                               @Value("${stats-server.partitions.enabled:true}") boolean enabled,
+                               @Value("${stats-server.partitions.precreate-days:7}") int precreateDays,
+                               @Value("${stats-server.partitions.retention-days:0}") int retentionDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.precreateDays = precreateDays;
+        this.retentionDays = retentionDays;
+    }
+
+    /**
+     * Возвращает момент, начиная с которого гарантированно хранятся сырые хиты
+     * и поминутные агрегаты.
+     *
+     * @return граница срока хранения или null, если хиты хранятся бессрочно
+     */
+    public LocalDateTime getRawHorizon() {
+        if (retentionDays <= 0) {
+            return null;
+        }
+        return LocalDate.now().minusDays(retentionDays).atStartOfDay();
+    }
+
+    /**
+     * Обрезает начало периода запроса уникальных хитов по сроку хранения сырых хитов
+     * и, если период обрезан, отмечает текущий запрос, чтобы ответ получил заголовок {@link RetentionNotice#HEADER}.
+     *
+     * @param from начало периода
+     * @return начало периода не раньше границы срока хранения
+     */
+    public LocalDateTime clampToRetention(LocalDateTime from) {
+        LocalDateTime horizon = getRawHorizon();
+        if (horizon == null || !from.isBefore(horizon)) {
+            return from;
+        }
+        RetentionNotice.record(horizon);
+        return horizon;
+    }
+
+    /**
+     * Создаёт секции на ближайшие дни и удаляет секции старше срока хранения.
+     * Выполняется при старте сервера и по расписанию раз в сутки.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${stats-server.partitions.cron:0 5 0 * * *}")
+    public void maintain() {
+        if (!enabled || !isPartitioned()) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i <= precreateDays; i++) {
+            createPartition(today.plusDays(i));
+        }
+        LocalDateTime horizon = getRawHorizon();
+        if (horizon != null) {
+            for (LocalDate day : findPartitionDays()) {
+                if (!day.plusDays(1).atStartOfDay().isAfter(horizon)) {
+                    dropPartition(day);
+                }
+            }
+            purgeBefore(horizon);
+        }
+    }
+
+    private boolean isPartitioned() {
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        if (!"PostgreSQL".equals(database)) {
+            return false;
+        }
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM pg_partitioned_table " +
+                "WHERE partrelid = to_regclass('hits')", Integer.class);
+        if (count == null || count == 0) {
+            log.warn("Table hits is not partitioned, partition maintenance is skipped");
+            return false;
+        }
+        return true;
+    }
+
+    private void createPartition(LocalDate day) {
+        try {
+            jdbcTemplate.execute(createPartitionSql(day));
+        } catch (DataAccessException e) {
+            log.error("Failed to create partition for {}: rows for this day may already be in hits_default",
+                    day, e);
+        }
+    }
+
+    private List<LocalDate> findPartitionDays() {
+        List<String> names = jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i " +
+                "JOIN pg_class c ON c.oid = i.inhrelid " +
+                "WHERE i.inhparent = to_regclass('hits')", String.class);
+        List<LocalDate> days = new ArrayList<>();
+        for (String name : names) {
+            if (!name.startsWith(PARTITION_PREFIX)) {
+                continue;
+            }
+            try {
+                days.add(LocalDate.parse(name.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX));
+            } catch (DateTimeParseException e) {
+                log.warn("Skip partition {} with unexpected name", name);
+            }
+        }
+        return days;
+    }
+
+    private void dropPartition(LocalDate day) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + partitionName(day));
+        log.info("Dropped raw hits partition for {}", day);
+    }
+
+    /**
+     * Удаляет хиты старше срока хранения, попавшие в секцию по умолчанию, например, с временем
+     * из дней без своей секции, их клиентские идентификаторы и поминутные агрегаты старше срока хранения.
+     */
+    private void purgeBefore(LocalDateTime horizon) {
+        Timestamp to = Timestamp.valueOf(horizon);
+        int purged = jdbcTemplate.update("DELETE FROM hits_default WHERE time_stamp < ?", to);
+        int downsampled = jdbcTemplate.update("DELETE FROM hits_per_minute WHERE bucket < ?", to);
+        jdbcTemplate.update("DELETE FROM template_hits_per_minute WHERE bucket < ?", to);
+        jdbcTemplate.update("DELETE FROM hit_client_ids WHERE time_stamp < ?", to);
+        if (purged > 0 || downsampled > 0) {
+            log.info("Purged {} hits from hits_default before {}, {} minute aggregates downsampled to hours",
+                    purged, horizon, downsampled);
+        }
+    }
+
+    static String createPartitionSql(LocalDate day) {
+        return String.format("CREATE TABLE IF NOT EXISTS %s PARTITION OF hits FOR VALUES FROM ('%s') TO ('%s')",
+                partitionName(day), day, day.plusDays(1));
+    }
+
+    private static String partitionName(LocalDate day) {
+        return PARTITION_PREFIX + day.format(PARTITION_SUFFIX);
+    }
+}
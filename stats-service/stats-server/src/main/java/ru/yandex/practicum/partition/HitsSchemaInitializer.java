@@ -0,0 +1,159 @@
+package ru.yandex.practicum.partition;
+
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.sql.init.SqlDataSourceScriptDatabaseInitializer;
+import org.springframework.boot.autoconfigure.sql.init.SqlInitializationProperties;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.exceptions.StatisticsValidationException;
+import ru.yandex.practicum.hit.IpAddress;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Выполняет schema-*.sql и переносит хиты из таблицы `hits` первой версии сервиса, где приложение,
+ * адрес и IP хранились строками. Старая таблица переименовывается в `hits_legacy`, скрипты создают
+ * новую `hits` и словари, затем хиты копируются страницами по {@code COPY_PAGE} с теми же идентификаторами:
+ * приложения и адреса заменяются идентификаторами словарей, IP-адреса - двоичным видом.
+ * Первая версия сохраняла IP любой строкой до 25 символов; хиты, IP которых не разбирается,
+ * не переносятся и пишутся в журнал {@code stats.dead-letter}.
+ * После копирования `hits_legacy` удаляется, а таблицы предагрегации заполняются заново по перенесённым хитам.
+ * Пока перенос не закончен, сервер не запускается и хиты не принимает, поэтому прерванный перенос
+ * при следующем старте продолжается после последнего скопированного идентификатора.
+ */
+@Slf4j
+@Component
+@StandaloneNode
+public class HitsSchemaInitializer extends SqlDataSourceScriptDatabaseInitializer {
+    private static final String LEGACY_TABLE = "hits_legacy";
+    private static final int COPY_PAGE = 10_000;
+    private static final Logger DEAD_LETTER_LOG = LoggerFactory.getLogger("stats.dead-letter");
+    private static final String SELECT_LEGACY = "SELECT h.id, h.app, h.uri, h.ip, h.time_stamp, " +
+            "a.id AS app_id, u.id AS uri_id " +
+            "FROM hits_legacy h JOIN apps a ON a.name = h.app JOIN uris u ON u.name = h.uri " +
+            "WHERE h.id > ? ORDER BY h.id LIMIT " + COPY_PAGE;
+    private static final String INSERT_HIT = "INSERT INTO hits (id, app_id, uri_id, ip, time_stamp) " +
+            "VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public HitsSchemaInitializer(DataSource dataSource, SqlInitializationProperties properties) {
+        super(dataSource, properties);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public boolean initializeDatabase() {
+        if (hasColumn("hits", "app")) {
+            log.info("Found hits table with text app, uri and ip, renaming it to {} to migrate", LEGACY_TABLE);
+            jdbcTemplate.execute("ALTER TABLE hits RENAME TO " + LEGACY_TABLE);
+            jdbcTemplate.execute("ALTER TABLE " + LEGACY_TABLE + " RENAME CONSTRAINT pk_hit TO pk_hit_legacy");
+        }
+        boolean initialized = super.initializeDatabase();
+        if (!hasColumn(LEGACY_TABLE, "app")) {
+            return initialized;
+        }
+        if (!hasColumn("hits", "app_id")) {
+            throw new IllegalStateException("Table " + LEGACY_TABLE + " with hits to migrate is found, " +
+                    "but the new hits table is not created: enable spring.sql.init.mode or create the schema " +
+                    "from schema-*.sql and restart");
+        }
+        migrate();
+        super.initializeDatabase();
+        return true;
+    }
+
+    private void migrate() {
+        long started = System.currentTimeMillis();
+        jdbcTemplate.update("INSERT INTO apps (name) SELECT DISTINCT app FROM hits_legacy " +
+                "WHERE app NOT IN (SELECT name FROM apps)");
+        jdbcTemplate.update("INSERT INTO uris (name) SELECT DISTINCT uri FROM hits_legacy " +
+                "WHERE uri NOT IN (SELECT name FROM uris)");
+        createPartitions();
+        Long copied = jdbcTemplate.queryForObject("SELECT MAX(id) FROM hits", Long.class);
+        long lastId = copied == null ? 0 : copied;
+        long count = 0;
+        long skipped = 0;
+        while (true) {
+            List<Object[]> page = new ArrayList<>(COPY_PAGE);
+            long[] last = {lastId};
+            jdbcTemplate.query(SELECT_LEGACY, rs -> {
+                last[0] = rs.getLong("id");
+                String ip = rs.getString("ip");
+                try {
+                    page.add(new Object[]{last[0], rs.getInt("app_id"), rs.getInt("uri_id"),
+                            IpAddress.parse(ip.trim()), rs.getTimestamp("time_stamp")});
+                } catch (StatisticsValidationException e) {
+                    DEAD_LETTER_LOG.error("migration id={} app={} uri={} ip={} timestamp={}: {}", last[0],
+                            rs.getString("app"), rs.getString("uri"), ip, rs.getTimestamp("time_stamp"),
+                            e.getMessage());
+                    page.add(null);
+                }
+            }, lastId);
+            if (page.isEmpty()) {
+                break;
+            }
+            int read = page.size();
+            page.removeIf(Objects::isNull);
+            skipped += read - page.size();
+            if (!page.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_HIT, page);
+            }
+            lastId = last[0];
+            count += page.size();
+            log.info("Migrated {} hits up to id {}, {} with invalid ip skipped", count, lastId, skipped);
+        }
+        jdbcTemplate.execute("ALTER TABLE hits ALTER COLUMN id RESTART WITH " + (lastId + 1));
+        // агрегаты, заполненные скриптами до переноса, не содержат перенесённых хитов
+        jdbcTemplate.update("DELETE FROM hits_per_minute");
+        jdbcTemplate.update("DELETE FROM hits_per_hour");
+        jdbcTemplate.update("DELETE FROM hits_all_time");
+        jdbcTemplate.execute("DROP TABLE " + LEGACY_TABLE);
+        log.info("Migrated {} hits from {} in {} ms, {} hits with invalid ip written to stats.dead-letter",
+                count, LEGACY_TABLE, System.currentTimeMillis() - started, skipped);
+    }
+
+    /**
+     * Создаёт суточные секции на дни с сегодняшнего, за которые есть хиты: иначе хиты этих дней попадут
+     * в секцию по умолчанию, и {@link HitPartitionManager} не сможет создать их секции.
+     * Хиты прошлых дней остаются в секции по умолчанию.
+     */
+    private void createPartitions() {
+        if (!isPartitioned()) {
+            return;
+        }
+        Timestamp today = Timestamp.valueOf(LocalDate.now().atStartOfDay());
+        List<LocalDate> days = jdbcTemplate.queryForList("SELECT DISTINCT CAST(time_stamp AS DATE) " +
+                "FROM hits_legacy WHERE time_stamp >= ?", LocalDate.class, today);
+        for (LocalDate day : days) {
+            jdbcTemplate.execute(HitPartitionManager.createPartitionSql(day));
+        }
+    }
+
+    private boolean isPartitioned() {
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        if (!"PostgreSQL".equals(database)) {
+            return false;
+        }
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM pg_partitioned_table " +
+                "WHERE partrelid = to_regclass('hits')", Integer.class);
+        return count != null && count > 0;
+    }
+
+    private boolean hasColumn(String table, String column) {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM information_schema.columns " +
+                "WHERE table_schema = CURRENT_SCHEMA AND table_name = ? AND column_name = ?", Integer.class,
+                table, column);
+        return count != null && count > 0;
+    }
+}
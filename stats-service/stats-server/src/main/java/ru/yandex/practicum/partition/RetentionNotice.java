@@ -0,0 +1,66 @@
+package ru.yandex.practicum.partition;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Отметка ответа о том, что уникальные IP-адреса посчитаны не с начала запрошенного периода,
+ * а с границы срока хранения сырых хитов, так как более ранние хиты уже удалены.
+ * Отметка хранится в атрибуте текущего запроса и отдаётся клиенту заголовком {@link #HEADER}
+ * со временем границы; вне запроса она не ставится.
+ */
+public final class RetentionNotice {
+    public static final String HEADER = "X-Stats-Unique-From";
+    private static final String ATTRIBUTE = RetentionNotice.class.getName();
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private RetentionNotice() {
+    }
+
+    /**
+     * Отмечает текущий запрос. Из нескольких отметок остаётся самая поздняя граница.
+     *
+     * @param uniqueFrom время, с которого посчитаны уникальные IP-адреса
+     */
+    public static void record(LocalDateTime uniqueFrom) {
+        record(RequestContextHolder.getRequestAttributes(), uniqueFrom);
+    }
+
+    /**
+     * Отмечает указанный запрос, например, из потока, который получил ответ шарда.
+     *
+     * @param request    атрибуты запроса или null вне запроса
+     * @param uniqueFrom время, с которого посчитаны уникальные IP-адреса
+     */
+    public static void record(RequestAttributes request, LocalDateTime uniqueFrom) {
+        if (request == null || uniqueFrom == null) {
+            return;
+        }
+        synchronized (request) {
+            LocalDateTime recorded = (LocalDateTime) request.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+            if (recorded == null || recorded.isBefore(uniqueFrom)) {
+                request.setAttribute(ATTRIBUTE, uniqueFrom, RequestAttributes.SCOPE_REQUEST);
+            }
+        }
+    }
+
+    /**
+     * @return граница, с которой в текущем запросе посчитаны уникальные IP-адреса, или null без отметки
+     */
+    public static LocalDateTime get() {
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        return request == null ? null
+                : (LocalDateTime) request.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    public static String format(LocalDateTime uniqueFrom) {
+        return uniqueFrom.format(FORMATTER);
+    }
+
+    public static LocalDateTime parse(String header) {
+        return LocalDateTime.parse(header, FORMATTER);
+    }
+}
@@ -0,0 +1,35 @@
+package ru.yandex.practicum.partition;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import java.time.LocalDateTime;
+
+/**
+ * Добавляет к ответу заголовок {@link RetentionNotice#HEADER}, если при подсчёте статистики
+ * начало периода уникальных IP-адресов было обрезано по сроку хранения сырых хитов.
+ */
+@RestControllerAdvice
+public class RetentionNoticeAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        LocalDateTime uniqueFrom = RetentionNotice.get();
+        if (uniqueFrom != null) {
+            response.getHeaders().set(RetentionNotice.HEADER, RetentionNotice.format(uniqueFrom));
+        }
+        return body;
+    }
+}
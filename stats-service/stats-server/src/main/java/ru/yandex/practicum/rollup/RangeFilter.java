@@ -0,0 +1,45 @@
+package ru.yandex.practicum.rollup;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Условие запроса по полуоткрытым интервалам времени и, при необходимости, по адресам.
+ */
+public final class RangeFilter {
+    private RangeFilter() {
+    }
+
+    /**
+     * Дописывает к запросу условие WHERE и добавляет его параметры.
+     *
+     * @param sql    текст запроса
+     * @param params параметры запроса
+     * @param prefix префикс имён параметров границ, чтобы условия можно было объединять в одном запросе
+     * @param column столбец времени
+     * @param ranges интервалы
+     * @param uriIds идентификаторы адресов или null для всех адресов
+     */
+    public static void appendWhere(StringBuilder sql, MapSqlParameterSource params, String prefix, String column,
+                                   List<TimeRange> ranges, List<Integer> uriIds) {
+        sql.append(" WHERE (");
+        for (int i = 0; i < ranges.size(); i++) {
+            if (i > 0) {
+                sql.append(" OR ");
+            }
+            String from = prefix + "From" + i;
+            String to = prefix + "To" + i;
+            sql.append('(').append(column).append(" >= :").append(from)
+                    .append(" AND ").append(column).append(" < :").append(to).append(')');
+            params.addValue(from, Timestamp.valueOf(ranges.get(i).getFrom()));
+            params.addValue(to, Timestamp.valueOf(ranges.get(i).getTo()));
+        }
+        sql.append(')');
+        if (uriIds != null) {
+            sql.append(" AND uri_id IN (:uriIds)");
+            params.addValue("uriIds", uriIds);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package ru.yandex.practicum.rollup;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Гранулярность таблиц предагрегированных хитов.
+ */
+public enum Rollup {
+    MINUTE("hits_per_minute", ChronoUnit.MINUTES),
+    HOUR("hits_per_hour", ChronoUnit.HOURS);
+
+    private final String table;
+    private final ChronoUnit unit;
+
+    Rollup(String table, ChronoUnit unit) {
+        this.table = table;
+        this.unit = unit;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * Возвращает начало интервала, в который попадает момент времени.
+     *
+     * @param time момент времени
+     * @return начало интервала
+     */
+    public LocalDateTime floor(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+
+    /**
+     * Возвращает начало первого интервала, который начинается не раньше момента времени.
+     *
+     * @param time момент времени
+     * @return начало интервала
+     */
+    public LocalDateTime ceil(LocalDateTime time) {
+        LocalDateTime floor = floor(time);
+        return floor.equals(time) ? floor : floor.plus(1, unit);
+    }
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.rollup;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Разбиение периода на интервалы, которые считаются по часовым агрегатам,
+ * по минутным агрегатам и по сырой таблице `hits`.
+ */
+@Value
+public class RollupPlan {
+    List<TimeRange> hours;
+    List<TimeRange> minutes;
+    List<TimeRange> raw;
+}
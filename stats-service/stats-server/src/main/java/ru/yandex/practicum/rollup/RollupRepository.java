@@ -0,0 +1,153 @@
+package ru.yandex.practicum.rollup;
+
+import lombok.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.dictionary.AppUri;
+import ru.yandex.practicum.hit.Hit;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Repository
+@StandaloneNode
+public class RollupRepository {
+    private static final String POSTGRES_UPSERT = "INSERT INTO %1$s (app_id, uri_id, bucket, hits) " +
+            "VALUES (:appId, :uriId, :bucket, :hits) " +
+            "ON CONFLICT (uri_id, bucket, app_id) DO UPDATE SET hits = %1$s.hits + EXCLUDED.hits";
+    private static final String H2_UPSERT = "MERGE INTO %1$s AS t " +
+            "USING (VALUES (CAST(:appId AS INTEGER), CAST(:uriId AS INTEGER), " +
+            "CAST(:bucket AS TIMESTAMP), CAST(:hits AS BIGINT))) AS s (app_id, uri_id, bucket, hits) " +
+            "ON t.uri_id = s.uri_id AND t.bucket = s.bucket AND t.app_id = s.app_id " +
+            "WHEN MATCHED THEN UPDATE SET hits = t.hits + s.hits " +
+            "WHEN NOT MATCHED THEN INSERT (app_id, uri_id, bucket, hits) " +
+            "VALUES (s.app_id, s.uri_id, s.bucket, s.hits)";
+    private static final Comparator<RollupKey> LOCK_ORDER = Comparator.comparingInt(RollupKey::getUriId)
+            .thenComparing(RollupKey::getBucket)
+            .thenComparingInt(RollupKey::getAppId);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final String upsert;
+
+    public RollupRepository(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        String database = jdbcTemplate.getJdbcTemplate().execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        this.upsert = "H2".equals(database) ? H2_UPSERT : POSTGRES_UPSERT;
+    }
+
+    /**
+     * Увеличивает счётчики всех таблиц предагрегации на хиты из пачки.
+     * Должен вызываться в той же транзакции, что и вставка самих хитов.
+     *
+     * @param hits список хитов
+     */
+    public void addAll(List<Hit> hits) {
+        for (Rollup rollup : Rollup.values()) {
+            Map<RollupKey, Long> counts = new TreeMap<>(LOCK_ORDER);
+            for (Hit hit : hits) {
+                RollupKey key = new RollupKey(hit.getAppId(), hit.getUriId(), rollup.floor(hit.getTimestamp()));
+                counts.merge(key, 1L, Long::sum);
+            }
+            List<SqlParameterSource> params = new ArrayList<>(counts.size());
+            counts.forEach((key, count) -> params.add(new MapSqlParameterSource()
+                    .addValue("appId", key.getAppId())
+                    .addValue("uriId", key.getUriId())
+                    .addValue("bucket", Timestamp.valueOf(key.getBucket()))
+                    .addValue("hits", count)));
+            jdbcTemplate.batchUpdate(String.format(upsert, rollup.getTable()),
+                    params.toArray(new SqlParameterSource[0]));
+        }
+    }
+
+    /**
+     * Суммирует предагрегированные хиты по интервалам заданной гранулярности.
+     *
+     * @param rollup гранулярность
+     * @param ranges интервалы, границы которых выровнены по гранулярности
+     * @param uriIds идентификаторы адресов или null для всех адресов
+     * @param counts счётчики по парам приложение-адрес, к которым прибавляется результат
+     */
+    public void sum(Rollup rollup, List<TimeRange> ranges, List<Integer> uriIds, Map<AppUri, Long> counts) {
+        query("SELECT app_id, uri_id, SUM(hits) AS hits FROM " + rollup.getTable(), "bucket", ranges, uriIds, counts);
+    }
+
+    /**
+     * Считает хиты по сырой таблице `hits` для коротких невыровненных интервалов.
+     *
+     * @param ranges интервалы
+     * @param uriIds идентификаторы адресов или null для всех адресов
+     * @param counts счётчики по парам приложение-адрес, к которым прибавляется результат
+     */
+    public void count(List<TimeRange> ranges, List<Integer> uriIds, Map<AppUri, Long> counts) {
+        query("SELECT app_id, uri_id, COUNT(*) AS hits FROM hits", "time_stamp", ranges, uriIds, counts);
+    }
+
+    /**
+     * Находит k пар приложение-адрес с наибольшим числом хитов по плану подсчёта.
+     * Части плана суммируются и сортируются в базе, поэтому в память читаются только k строк.
+     *
+     * @param plan   план подсчёта
+     * @param k      число пар в ответе
+     * @param counts счётчики по парам приложение-адрес, в которые пишется результат
+     */
+    public void top(RollupPlan plan, int k, Map<AppUri, Long> counts) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        List<String> parts = new ArrayList<>();
+        if (!plan.getHours().isEmpty()) {
+            parts.add(part("SELECT app_id, uri_id, hits FROM " + Rollup.HOUR.getTable(), "h", "bucket",
+                    plan.getHours(), params));
+        }
+        if (!plan.getMinutes().isEmpty()) {
+            parts.add(part("SELECT app_id, uri_id, hits FROM " + Rollup.MINUTE.getTable(), "m", "bucket",
+                    plan.getMinutes(), params));
+        }
+        if (!plan.getRaw().isEmpty()) {
+            parts.add(part("SELECT app_id, uri_id, CAST(1 AS BIGINT) AS hits FROM hits", "r", "time_stamp",
+                    plan.getRaw(), params));
+        }
+        if (parts.isEmpty()) {
+            return;
+        }
+        params.addValue("k", k);
+        String sql = "SELECT app_id, uri_id, SUM(hits) AS hits FROM (" + String.join(" UNION ALL ", parts)
+                + ") t GROUP BY app_id, uri_id ORDER BY SUM(hits) DESC LIMIT :k";
+        jdbcTemplate.query(sql, params, rs -> {
+            counts.put(new AppUri(rs.getInt("app_id"), rs.getInt("uri_id")), rs.getLong("hits"));
+        });
+    }
+
+    private static String part(String select, String prefix, String column, List<TimeRange> ranges,
+                               MapSqlParameterSource params) {
+        StringBuilder sql = new StringBuilder(select);
+        RangeFilter.appendWhere(sql, params, prefix, column, ranges, null);
+        return sql.toString();
+    }
+
+    private void query(String select, String column, List<TimeRange> ranges, List<Integer> uriIds,
+                       Map<AppUri, Long> counts) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        StringBuilder sql = new StringBuilder(select);
+        RangeFilter.appendWhere(sql, params, "r", column, ranges, uriIds);
+        sql.append(" GROUP BY app_id, uri_id");
+        jdbcTemplate.query(sql.toString(), params, rs -> {
+            counts.merge(new AppUri(rs.getInt("app_id"), rs.getInt("uri_id")), rs.getLong("hits"), Long::sum);
+        });
+    }
+
+    @Value
+    private static class RollupKey {
+        int appId;
+        int uriId;
+        LocalDateTime bucket;
+    }
+}
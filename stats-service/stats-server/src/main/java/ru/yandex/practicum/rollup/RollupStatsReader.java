@@ -0,0 +1,149 @@
+package ru.yandex.practicum.rollup;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.StatsDto;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.dictionary.AppUri;
+import ru.yandex.practicum.dictionary.HitDictionary;
+import ru.yandex.practicum.partition.HitPartitionManager;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Считает неуникальную статистику по таблицам предагрегации.
+ * Период разбивается на целые часы, целые минуты по краям и остаток меньше минуты,
+ * который досчитывается по сырой таблице `hits`, поэтому стоимость запроса
+ * не зависит от длины периода. Часть периода старше срока хранения сырых хитов
+ * считается с точностью до часа по часовым агрегатам.
+ */
+@Component
+@RequiredArgsConstructor
+@StandaloneNode
+public class RollupStatsReader {
+    private final RollupRepository rollupRepository;
+    private final HitPartitionManager hitPartitionManager;
+    private final HitDictionary hitDictionary;
+
+    /**
+     * Находит статистику по хитам за указанный период времени, включая его границы.
+     *
+     * @param start  начало периода времени
+     * @param end    конец периода времени
+     * @param uriIds идентификаторы адресов или null для всех адресов
+     * @return список объектов со статистикой по хитам, отсортированный по убыванию числа хитов
+     */
+    public List<StatsDto> findStats(LocalDateTime start, LocalDateTime end, List<Integer> uriIds) {
+        return hitDictionary.toStats(count(start.truncatedTo(ChronoUnit.SECONDS),
+                end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1), uriIds));
+    }
+
+    /**
+     * Считает хиты за полуоткрытый интервал времени по парам приложение-адрес.
+     *
+     * @param from   начало интервала
+     * @param to     конец интервала
+     * @param uriIds идентификаторы адресов или null для всех адресов
+     * @return счётчики по парам приложение-адрес
+     */
+    public Map<AppUri, Long> count(LocalDateTime from, LocalDateTime to, List<Integer> uriIds) {
+        RollupPlan plan = plan(from, to);
+        Map<AppUri, Long> counts = new HashMap<>();
+        if (!plan.getHours().isEmpty()) {
+            rollupRepository.sum(Rollup.HOUR, plan.getHours(), uriIds, counts);
+        }
+        if (!plan.getMinutes().isEmpty()) {
+            rollupRepository.sum(Rollup.MINUTE, plan.getMinutes(), uriIds, counts);
+        }
+        if (!plan.getRaw().isEmpty()) {
+            rollupRepository.count(plan.getRaw(), uriIds, counts);
+        }
+        return counts;
+    }
+
+    /**
+     * Находит k пар приложение-адрес с наибольшим числом хитов за полуоткрытый интервал времени.
+     * Отбор выполняется в базе, поэтому полная статистика за интервал в память не читается.
+     *
+     * @param from начало интервала
+     * @param to   конец интервала
+     * @param k    число пар в ответе
+     * @return счётчики k пар приложение-адрес
+     */
+    public Map<AppUri, Long> top(LocalDateTime from, LocalDateTime to, int k) {
+        Map<AppUri, Long> counts = new HashMap<>();
+        rollupRepository.top(plan(from, to), k, counts);
+        return counts;
+    }
+
+    /**
+     * Разбивает полуоткрытый интервал времени на части, которые считаются по часовым агрегатам,
+     * минутным агрегатам и сырой таблице `hits`.
+     *
+     * @param from начало интервала
+     * @param to   конец интервала
+     * @return план подсчёта
+     */
+    public RollupPlan plan(LocalDateTime from, LocalDateTime to) {
+        return plan(from, to, Rollup.HOUR);
+    }
+
+    /**
+     * Разбивает полуоткрытый интервал времени на части так же, как {@link #plan(LocalDateTime, LocalDateTime)},
+     * но не использует агрегаты крупнее указанной гранулярности. Часть интервала старше срока
+     * хранения сырых хитов всё равно считается по часовым агрегатам.
+     *
+     * @param from     начало интервала
+     * @param to       конец интервала
+     * @param coarsest наибольшая гранулярность агрегатов
+     * @return план подсчёта
+     */
+    public RollupPlan plan(LocalDateTime from, LocalDateTime to, Rollup coarsest) {
+        TimeRange range = new TimeRange(from, to);
+        List<TimeRange> hours = new ArrayList<>();
+        List<TimeRange> minutes = new ArrayList<>();
+        List<TimeRange> raw = new ArrayList<>();
+        LocalDateTime horizon = hitPartitionManager.getRawHorizon();
+        if (horizon != null && range.getFrom().isBefore(horizon)) {
+            LocalDateTime downsampledTo = range.getTo().isBefore(horizon) ? range.getTo() : horizon;
+            hours.add(new TimeRange(Rollup.HOUR.floor(range.getFrom()), Rollup.HOUR.ceil(downsampledTo)));
+            range = new TimeRange(Rollup.HOUR.ceil(downsampledTo), range.getTo());
+        }
+        LocalDateTime hoursFrom = Rollup.HOUR.ceil(range.getFrom());
+        LocalDateTime hoursTo = Rollup.HOUR.floor(range.getTo());
+        if (coarsest == Rollup.HOUR && hoursFrom.isBefore(hoursTo)) {
+            hours.add(new TimeRange(hoursFrom, hoursTo));
+            splitByMinutes(new TimeRange(range.getFrom(), hoursFrom), minutes, raw);
+            splitByMinutes(new TimeRange(hoursTo, range.getTo()), minutes, raw);
+        } else if (!range.isEmpty()) {
+            splitByMinutes(range, minutes, raw);
+        }
+        return new RollupPlan(hours, minutes, raw);
+    }
+
+    private static void splitByMinutes(TimeRange range, List<TimeRange> minutes, List<TimeRange> raw) {
+        if (range.isEmpty()) {
+            return;
+        }
+        LocalDateTime minutesFrom = Rollup.MINUTE.ceil(range.getFrom());
+        LocalDateTime minutesTo = Rollup.MINUTE.floor(range.getTo());
+        if (minutesFrom.isBefore(minutesTo)) {
+            minutes.add(new TimeRange(minutesFrom, minutesTo));
+            addIfNotEmpty(raw, new TimeRange(range.getFrom(), minutesFrom));
+            addIfNotEmpty(raw, new TimeRange(minutesTo, range.getTo()));
+        } else {
+            raw.add(range);
+        }
+    }
+
+    private static void addIfNotEmpty(List<TimeRange> ranges, TimeRange range) {
+        if (!range.isEmpty()) {
+            ranges.add(range);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package ru.yandex.practicum.rollup;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Полуоткрытый интервал времени [from, to).
+ */
+@Value
+public class TimeRange {
+    LocalDateTime from;
+    LocalDateTime to;
+
+    public boolean isEmpty() {
+        return !from.isBefore(to);
+    }
+}
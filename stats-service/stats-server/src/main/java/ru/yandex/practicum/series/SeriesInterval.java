@@ -0,0 +1,66 @@
+package ru.yandex.practicum.series;
+
+import ru.yandex.practicum.exceptions.StatisticsValidationException;
+import ru.yandex.practicum.rollup.Rollup;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Шаг временного ряда и самые крупные агрегаты, из которых его можно собрать.
+ */
+public enum SeriesInterval {
+    MINUTE("minute", ChronoUnit.MINUTES, Rollup.MINUTE),
+    HOUR("hour", ChronoUnit.HOURS, Rollup.HOUR),
+    DAY("day", ChronoUnit.DAYS, Rollup.HOUR);
+
+    private final String name;
+    private final ChronoUnit unit;
+    private final Rollup rollup;
+
+    SeriesInterval(String name, ChronoUnit unit, Rollup rollup) {
+        this.name = name;
+        this.unit = unit;
+        this.rollup = rollup;
+    }
+
+    /**
+     * Находит шаг по имени из запроса.
+     *
+     * @param name имя шага: minute, hour или day
+     * @return шаг временного ряда
+     */
+    public static SeriesInterval of(String name) {
+        for (SeriesInterval interval : values()) {
+            if (interval.name.equalsIgnoreCase(name)) {
+                return interval;
+            }
+        }
+        throw new StatisticsValidationException("Unknown interval: " + name);
+    }
+
+    /**
+     * Возвращает единицу для функции DATE_TRUNC.
+     *
+     * @return единица усечения времени
+     */
+    public String getName() {
+        return name;
+    }
+
+    public Rollup getRollup() {
+        return rollup;
+    }
+
+    public LocalDateTime floor(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+
+    public LocalDateTime next(LocalDateTime bucket) {
+        return bucket.plus(1, unit);
+    }
+
+    public long count(LocalDateTime from, LocalDateTime to) {
+        return unit.between(floor(from), to.minusNanos(1)) + 1;
+    }
+}
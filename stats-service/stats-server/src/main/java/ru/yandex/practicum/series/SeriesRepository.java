@@ -0,0 +1,65 @@
+package ru.yandex.practicum.series;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.dictionary.AppUri;
+import ru.yandex.practicum.rollup.RangeFilter;
+import ru.yandex.practicum.rollup.Rollup;
+import ru.yandex.practicum.rollup.TimeRange;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Repository
+@RequiredArgsConstructor
+@StandaloneNode
+public class SeriesRepository {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Суммирует предагрегированные хиты по шагам временного ряда.
+     *
+     * @param rollup   гранулярность агрегатов
+     * @param ranges   интервалы, границы которых выровнены по гранулярности
+     * @param uriIds   идентификаторы адресов
+     * @param interval шаг временного ряда
+     * @param series   ряды по парам приложение-адрес, к которым прибавляется результат
+     */
+    public void sum(Rollup rollup, List<TimeRange> ranges, List<Integer> uriIds, SeriesInterval interval,
+                    Map<AppUri, TreeMap<LocalDateTime, Long>> series) {
+        query("SUM(hits)", rollup.getTable(), "bucket", ranges, uriIds, interval, series);
+    }
+
+    /**
+     * Считает хиты по сырой таблице `hits` по шагам временного ряда.
+     *
+     * @param ranges   интервалы
+     * @param uriIds   идентификаторы адресов
+     * @param interval шаг временного ряда
+     * @param unique   флаг, указывающий, считать ли уникальные IP-адреса
+     * @param series   ряды по парам приложение-адрес, к которым прибавляется результат
+     */
+    public void count(List<TimeRange> ranges, List<Integer> uriIds, SeriesInterval interval, boolean unique,
+                      Map<AppUri, TreeMap<LocalDateTime, Long>> series) {
+        query(unique ? "COUNT(DISTINCT ip)" : "COUNT(*)", "hits", "time_stamp", ranges, uriIds, interval, series);
+    }
+
+    private void query(String aggregate, String table, String column, List<TimeRange> ranges, List<Integer> uriIds,
+                       SeriesInterval interval, Map<AppUri, TreeMap<LocalDateTime, Long>> series) {
+        String bucket = "DATE_TRUNC('" + interval.getName() + "', " + column + ")";
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        StringBuilder sql = new StringBuilder("SELECT app_id, uri_id, ").append(bucket).append(" AS series_bucket, ")
+                .append(aggregate).append(" AS hits FROM ").append(table);
+        RangeFilter.appendWhere(sql, params, "r", column, ranges, uriIds);
+        sql.append(" GROUP BY app_id, uri_id, ").append(bucket);
+        jdbcTemplate.query(sql.toString(), params, rs -> {
+            series.computeIfAbsent(new AppUri(rs.getInt("app_id"), rs.getInt("uri_id")), key -> new TreeMap<>())
+                    .merge(rs.getTimestamp("series_bucket").toLocalDateTime(), rs.getLong("hits"), Long::sum);
+        });
+    }
+}
@@ -0,0 +1,115 @@
+package ru.yandex.practicum.series;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.SeriesDto;
+import ru.yandex.practicum.SeriesPointDto;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.dictionary.AppUri;
+import ru.yandex.practicum.dictionary.HitDictionary;
+import ru.yandex.practicum.exceptions.StatisticsValidationException;
+import ru.yandex.practicum.rollup.Rollup;
+import ru.yandex.practicum.rollup.RollupPlan;
+import ru.yandex.practicum.rollup.RollupStatsReader;
+import ru.yandex.practicum.rollup.TimeRange;
+import ru.yandex.practicum.sketch.SketchStatsReader;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Строит временные ряды числа хитов с шагом в минуту, час или сутки.
+ * Неуникальные хиты суммируются по агрегатам не крупнее шага ряда, а неполные минуты
+ * по краям периода - по сырой таблице `hits`. Уникальные IP-адреса считаются по сырой таблице
+ * с группировкой по шагу, а при приближённом подсчёте с шагом от часа - по скетчам HyperLogLog.
+ * За пределами срока хранения сырых хитов минутный ряд получает точки только в начале часов.
+ */
+@Component
+@StandaloneNode
+public class SeriesStatsReader {
+    private final RollupStatsReader rollupStatsReader;
+    private final SketchStatsReader sketchStatsReader;
+    private final SeriesRepository seriesRepository;
+    private final HitDictionary hitDictionary;
+    private final int maxPoints;
+
+    public SeriesStatsReader(RollupStatsReader rollupStatsReader,
+                             SketchStatsReader sketchStatsReader,
+                             SeriesRepository seriesRepository,
+                             HitDictionary hitDictionary,
+                             @Value("${stats-server.series.max-points:10000}") int maxPoints) {
+        this.rollupStatsReader = rollupStatsReader;
+        this.sketchStatsReader = sketchStatsReader;
+        this.seriesRepository = seriesRepository;
+        this.hitDictionary = hitDictionary;
+        this.maxPoints = maxPoints;
+    }
+
+    /**
+     * Строит временные ряды за полуоткрытый интервал времени.
+     *
+     * @param from        начало интервала
+     * @param to          конец интервала
+     * @param uriIds      идентификаторы адресов
+     * @param interval    шаг ряда
+     * @param unique      флаг, указывающий, считать ли уникальные хиты
+     * @param approximate флаг, разрешающий приближённый подсчёт уникальных хитов по скетчам
+     * @return ряды по парам приложение-адрес с точками на каждый шаг, по убыванию суммы хитов
+     */
+    public List<SeriesDto> findSeries(LocalDateTime from, LocalDateTime to, List<Integer> uriIds,
+                                      SeriesInterval interval, boolean unique, boolean approximate) {
+        if (interval.count(from, to) > maxPoints) {
+            throw new StatisticsValidationException("Series must not exceed " + maxPoints + " points");
+        }
+        Map<AppUri, TreeMap<LocalDateTime, Long>> series = new HashMap<>();
+        List<TimeRange> range = List.of(new TimeRange(from, to));
+        if (!unique) {
+            RollupPlan plan = rollupStatsReader.plan(from, to, interval.getRollup());
+            if (!plan.getHours().isEmpty()) {
+                seriesRepository.sum(Rollup.HOUR, plan.getHours(), uriIds, interval, series);
+            }
+            if (!plan.getMinutes().isEmpty()) {
+                seriesRepository.sum(Rollup.MINUTE, plan.getMinutes(), uriIds, interval, series);
+            }
+            if (!plan.getRaw().isEmpty()) {
+                seriesRepository.count(plan.getRaw(), uriIds, interval, false, series);
+            }
+        } else if (approximate && interval != SeriesInterval.MINUTE && sketchStatsReader.isReady()) {
+            for (LocalDateTime bucket = interval.floor(from); bucket.isBefore(to); bucket = interval.next(bucket)) {
+                LocalDateTime bucketFrom = bucket.isBefore(from) ? from : bucket;
+                LocalDateTime bucketTo = interval.next(bucket).isAfter(to) ? to : interval.next(bucket);
+                LocalDateTime point = bucket;
+                sketchStatsReader.countUnique(bucketFrom, bucketTo, uriIds).forEach((key, hits) ->
+                        series.computeIfAbsent(key, k -> new TreeMap<>()).put(point, hits));
+            }
+        } else {
+            seriesRepository.count(range, uriIds, interval, true, series);
+        }
+        return toSeries(series, from, to, interval);
+    }
+
+    private List<SeriesDto> toSeries(Map<AppUri, TreeMap<LocalDateTime, Long>> series, LocalDateTime from,
+                                     LocalDateTime to, SeriesInterval interval) {
+        List<Map.Entry<AppUri, Long>> totals = new ArrayList<>(series.size());
+        series.forEach((key, points) -> totals.add(Map.entry(key,
+                points.values().stream().mapToLong(Long::longValue).sum())));
+        totals.sort(Map.Entry.<AppUri, Long>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(Map.Entry.comparingByKey()));
+        List<SeriesDto> result = new ArrayList<>(totals.size());
+        for (Map.Entry<AppUri, Long> total : totals) {
+            TreeMap<LocalDateTime, Long> points = series.get(total.getKey());
+            List<SeriesPointDto> filled = new ArrayList<>();
+            for (LocalDateTime bucket = interval.floor(from); bucket.isBefore(to); bucket = interval.next(bucket)) {
+                filled.add(new SeriesPointDto(bucket, points.getOrDefault(bucket, 0L)));
+            }
+            result.add(new SeriesDto(hitDictionary.appName(total.getKey().getAppId()),
+                    hitDictionary.uri(total.getKey().getUriId()), filled));
+        }
+        return result;
+    }
+}
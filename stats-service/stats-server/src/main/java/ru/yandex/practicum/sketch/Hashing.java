@@ -0,0 +1,56 @@
+package ru.yandex.practicum.sketch;
+
+public final class Hashing {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Hashing() {
+    }
+
+    /**
+     * Возвращает 64-битный хеш строки: FNV-1a с финальным перемешиванием MurmurHash3,
+     * чтобы все биты результата были равномерно распределены.
+     *
+     * @param value строка
+     * @return хеш
+     */
+    public static long hash64(String value) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return mix64(hash);
+    }
+
+    /**
+     * Возвращает 64-битный хеш массива байт тем же способом, что и для строк.
+     *
+     * @param value массив байт
+     * @return хеш
+     */
+    public static long hash64(byte[] value) {
+        long hash = FNV_OFFSET;
+        for (byte b : value) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return mix64(hash);
+    }
+
+    /**
+     * Финальное перемешивание 64-битного значения из MurmurHash3.
+     *
+     * @param value значение
+     * @return перемешанное значение
+     */
+    public static long mix64(long value) {
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93fe53a3b1aL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
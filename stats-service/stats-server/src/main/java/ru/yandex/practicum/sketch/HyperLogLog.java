@@ -0,0 +1,212 @@
+package ru.yandex.practicum.sketch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Скетч HyperLogLog для приближённого подсчёта числа уникальных значений.
+ * Точность p = 14 (16384 регистра): стандартная ошибка оценки 1.04 / sqrt(16384) ≈ 0.81%,
+ * то есть с вероятностью около 99% ошибка не превышает 2.5%.
+ * Пока значений мало, скетч хранится разреженно, как в HyperLogLog++: отсортированным
+ * массивом пар (индекс, ранг) с 25-битным индексом. Такой скетч занимает 4 байта на значение
+ * вместо 16 КБ и на сотнях значений считает практически точно. Скетчи объединяются
+ * без потери точности: объединение двух скетчей равно скетчу объединения множеств.
+ */
+public class HyperLogLog {
+    public static final int PRECISION = 14;
+    private static final int SPARSE_PRECISION = 25;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final int SPARSE_REGISTERS = 1 << SPARSE_PRECISION;
+    private static final int SPARSE_LIMIT = REGISTERS / 8;
+    private static final int RANK_BITS = 6;
+    private static final int RANK_MASK = (1 << RANK_BITS) - 1;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private int[] sparse = new int[4];
+    private int sparseSize;
+    private byte[] dense;
+
+    /**
+     * Добавляет значение по его 64-битному хешу.
+     *
+     * @param hash хеш значения
+     */
+    public synchronized void add(long hash) {
+        if (dense != null) {
+            updateDense(index(hash, PRECISION), rank(hash, PRECISION));
+        } else {
+            updateSparse(index(hash, SPARSE_PRECISION), rank(hash, SPARSE_PRECISION));
+        }
+    }
+
+    /**
+     * Добавляет в скетч все значения другого скетча.
+     *
+     * @param other другой скетч
+     */
+    public synchronized void merge(HyperLogLog other) {
+        synchronized (other) {
+            if (other.dense != null) {
+                if (dense == null) {
+                    toDense();
+                }
+                for (int i = 0; i < REGISTERS; i++) {
+                    updateDense(i, other.dense[i]);
+                }
+            } else {
+                for (int i = 0; i < other.sparseSize; i++) {
+                    int entry = other.sparse[i];
+                    if (dense != null) {
+                        updateDense(denseIndex(entry), denseRank(entry));
+                    } else {
+                        updateSparse(entry >>> RANK_BITS, entry & RANK_MASK);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Оценивает число уникальных значений.
+     *
+     * @return оценка мощности
+     */
+    public synchronized long estimate() {
+        if (dense == null) {
+            return Math.round(SPARSE_REGISTERS * Math.log((double) SPARSE_REGISTERS / (SPARSE_REGISTERS - sparseSize)));
+        }
+        double sum = 0;
+        int zeros = 0;
+        for (byte rank : dense) {
+            sum += 1.0 / (1L << rank);
+            if (rank == 0) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Записывает скетч в компактном виде: разреженный - парами (индекс, ранг), плотный - регистрами.
+     *
+     * @param out поток записи
+     */
+    public synchronized void write(DataOutput out) throws IOException {
+        out.writeBoolean(dense != null);
+        if (dense != null) {
+            out.write(dense);
+            return;
+        }
+        out.writeInt(sparseSize);
+        for (int i = 0; i < sparseSize; i++) {
+            out.writeInt(sparse[i]);
+        }
+    }
+
+    /**
+     * Читает скетч, записанный {@link #write(DataOutput)}.
+     *
+     * @param in поток чтения
+     * @return скетч
+     */
+    public static HyperLogLog read(DataInput in) throws IOException {
+        HyperLogLog sketch = new HyperLogLog();
+        if (in.readBoolean()) {
+            sketch.dense = new byte[REGISTERS];
+            in.readFully(sketch.dense);
+            sketch.sparse = null;
+            return sketch;
+        }
+        int size = in.readInt();
+        if (size < 0 || size > SPARSE_LIMIT) {
+            throw new IOException("Invalid sparse sketch size " + size);
+        }
+        sketch.sparse = new int[Math.max(size, 4)];
+        for (int i = 0; i < size; i++) {
+            sketch.sparse[i] = in.readInt();
+        }
+        sketch.sparseSize = size;
+        return sketch;
+    }
+
+    private static int index(long hash, int precision) {
+        return (int) (hash >>> (Long.SIZE - precision));
+    }
+
+    private static int rank(long hash, int precision) {
+        return Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+    }
+
+    private static int denseIndex(int entry) {
+        return entry >>> (RANK_BITS + SPARSE_PRECISION - PRECISION);
+    }
+
+    private static int denseRank(int entry) {
+        int extraBits = SPARSE_PRECISION - PRECISION;
+        int extra = (entry >>> RANK_BITS) & ((1 << extraBits) - 1);
+        if (extra != 0) {
+            return Integer.numberOfLeadingZeros(extra) - (Integer.SIZE - extraBits) + 1;
+        }
+        return extraBits + (entry & RANK_MASK);
+    }
+
+    private void updateDense(int index, int rank) {
+        if (rank > dense[index]) {
+            dense[index] = (byte) rank;
+        }
+    }
+
+    private void updateSparse(int index, int rank) {
+        int position = findSparse(index);
+        if (position >= 0) {
+            if (rank > (sparse[position] & RANK_MASK)) {
+                sparse[position] = (index << RANK_BITS) | rank;
+            }
+            return;
+        }
+        if (sparseSize == SPARSE_LIMIT) {
+            toDense();
+            updateDense(denseIndex((index << RANK_BITS) | rank), denseRank((index << RANK_BITS) | rank));
+            return;
+        }
+        int insertAt = -position - 1;
+        if (sparseSize == sparse.length) {
+            sparse = Arrays.copyOf(sparse, Math.min(sparse.length * 2, SPARSE_LIMIT));
+        }
+        System.arraycopy(sparse, insertAt, sparse, insertAt + 1, sparseSize - insertAt);
+        sparse[insertAt] = (index << RANK_BITS) | rank;
+        sparseSize++;
+    }
+
+    private int findSparse(int index) {
+        int low = 0;
+        int high = sparseSize - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleIndex = sparse[middle] >>> RANK_BITS;
+            if (middleIndex < index) {
+                low = middle + 1;
+            } else if (middleIndex > index) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void toDense() {
+        dense = new byte[REGISTERS];
+        for (int i = 0; i < sparseSize; i++) {
+            updateDense(denseIndex(sparse[i]), denseRank(sparse[i]));
+        }
+        sparse = null;
+        sparseSize = 0;
+    }
+}
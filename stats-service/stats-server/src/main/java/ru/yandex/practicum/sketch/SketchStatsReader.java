@@ -0,0 +1,87 @@
+package ru.yandex.practicum.sketch;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.StatsDto;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.dictionary.AppUri;
+import ru.yandex.practicum.dictionary.HitDictionary;
+import ru.yandex.practicum.hit.HitCursorRepository;
+import ru.yandex.practicum.rollup.Rollup;
+import ru.yandex.practicum.rollup.TimeRange;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Приближённо считает уникальные IP-адреса по скетчам HyperLogLog.
+ * Целые часы периода берутся из часовых скетчей, а неполные часы по краям
+ * досчитываются по сырой таблице `hits` в те же скетчи, поэтому погрешность
+ * ответа ограничена только погрешностью HyperLogLog.
+ */
+@Component
+@RequiredArgsConstructor
+@StandaloneNode
+public class SketchStatsReader {
+    private final SketchStore sketchStore;
+    private final HitCursorRepository hitCursorRepository;
+    private final HitDictionary hitDictionary;
+
+    public boolean isReady() {
+        return sketchStore.isLoaded();
+    }
+
+    /**
+     * Находит приближённую статистику по уникальным IP-адресам за указанный период, включая его границы.
+     *
+     * @param start  начало периода времени
+     * @param end    конец периода времени
+     * @param uriIds идентификаторы адресов или null для всех адресов
+     * @return список объектов со статистикой по хитам, отсортированный по убыванию числа хитов
+     */
+    public List<StatsDto> findUniqueStats(LocalDateTime start, LocalDateTime end, List<Integer> uriIds) {
+        return hitDictionary.toStats(countUnique(start.truncatedTo(ChronoUnit.SECONDS),
+                end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1), uriIds));
+    }
+
+    /**
+     * Приближённо считает уникальные IP-адреса за полуоткрытый интервал времени.
+     *
+     * @param from   начало интервала
+     * @param to     конец интервала
+     * @param uriIds идентификаторы адресов или null для всех адресов
+     * @return оценки числа уникальных IP-адресов по парам приложение-адрес
+     */
+    public Map<AppUri, Long> countUnique(LocalDateTime from, LocalDateTime to, List<Integer> uriIds) {
+        LocalDateTime hoursFrom = Rollup.HOUR.ceil(from);
+        LocalDateTime hoursTo = Rollup.HOUR.floor(to);
+        Map<AppUri, HyperLogLog> sketches;
+        List<TimeRange> edges = new ArrayList<>();
+        if (hoursFrom.isBefore(hoursTo)) {
+            sketches = sketchStore.merge(hoursFrom, hoursTo, uriIds, edges);
+            addIfNotEmpty(edges, new TimeRange(from, hoursFrom));
+            addIfNotEmpty(edges, new TimeRange(hoursTo, to));
+        } else {
+            sketches = new HashMap<>();
+            addIfNotEmpty(edges, new TimeRange(from, to));
+        }
+        if (!edges.isEmpty()) {
+            hitCursorRepository.forEach(edges, uriIds, (appId, uriId, ip, timestamp) ->
+                    sketches.computeIfAbsent(new AppUri(appId, uriId), key -> new HyperLogLog())
+                            .add(Hashing.hash64(ip)));
+        }
+        Map<AppUri, Long> counts = new HashMap<>();
+        sketches.forEach((key, sketch) -> counts.put(key, sketch.estimate()));
+        return counts;
+    }
+
+    private static void addIfNotEmpty(List<TimeRange> ranges, TimeRange range) {
+        if (!range.isEmpty()) {
+            ranges.add(range);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package ru.yandex.practicum.sketch;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.dictionary.AppUri;
+import ru.yandex.practicum.hit.Hit;
+import ru.yandex.practicum.ingest.HitListener;
+import ru.yandex.practicum.partition.HitPartitionManager;
+import ru.yandex.practicum.rollup.TimeRange;
+import ru.yandex.practicum.snapshot.SnapshotPart;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Хранит в памяти скетчи HyperLogLog по IP-адресам для каждой тройки (приложение, адрес, час)
+ * за последние {@code hourly-days} дней и для каждой тройки (приложение, адрес, день) за более ранние дни.
+ * Скетчи пополняются после сохранения хитов, а при старте сервера восстанавливаются из снимка
+ * и более новых хитов таблицы `hits`. При обслуживании партиций часовые скетчи старше {@code hourly-days}
+ * дней сворачиваются в дневные без потери точности, а скетчи за дни раньше срока хранения сырых хитов
+ * {@code stats-server.partitions.retention-days} удаляются: такие дни запросам уникальных IP не нужны.
+ * Поэтому память и время объединения растут с числом дней хранения, а не со всей историей.
+ */
+@Component
+@Order(HitListener.AGGREGATE_ORDER)
+@StandaloneNode
+public class SketchStore implements HitListener, SnapshotPart {
+    private static final long SECONDS_PER_HOUR = 3600;
+    private static final long HOURS_PER_DAY = 24;
+
+    private final HitPartitionManager hitPartitionManager;
+    private final int hourlyDays;
+    private final ConcurrentMap<Integer, ConcurrentMap<Integer, ConcurrentNavigableMap<Long, HyperLogLog>>> hours =
+            new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, ConcurrentMap<Integer, ConcurrentNavigableMap<Long, HyperLogLog>>> days =
+            new ConcurrentHashMap<>();
+    private final ReadWriteLock evictionLock = new ReentrantReadWriteLock();
+    private volatile long foldDay = Long.MIN_VALUE;
+    private volatile long horizonDay = Long.MIN_VALUE;
+    private volatile boolean loaded;
+
+    public SketchStore(HitPartitionManager hitPartitionManager,
+                       @Value("${stats-server.sketches.hourly-days:7}") int hourlyDays) {
+        this.hitPartitionManager = hitPartitionManager;
+        this.hourlyDays = hourlyDays;
+        evictExpired();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    @Override
+    public String section() {
+        return "sketches";
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Записывает часовые скетчи записями (адрес, приложение, час, скетч), затем дневные записями
+     * (адрес, приложение, день, скетч); каждый список завершается признаком конца.
+     */
+    @Override
+    public void writeSnapshot(DataOutput out) throws IOException {
+        write(hours, out);
+        write(days, out);
+    }
+
+    @Override
+    public void readSnapshot(DataInput in) throws IOException {
+        while (in.readBoolean()) {
+            int uriId = in.readInt();
+            int appId = in.readInt();
+            long hour = in.readLong();
+            HyperLogLog sketch = HyperLogLog.read(in);
+            evictionLock.readLock().lock();
+            try {
+                HyperLogLog target = sketchFor(appId, uriId, hour);
+                if (target != null) {
+                    target.merge(sketch);
+                }
+            } finally {
+                evictionLock.readLock().unlock();
+            }
+        }
+        long snapshotFoldDay = foldDay;
+        while (in.readBoolean()) {
+            int uriId = in.readInt();
+            int appId = in.readInt();
+            long day = in.readLong();
+            HyperLogLog sketch = HyperLogLog.read(in);
+            if (day >= horizonDay) {
+                evictionLock.readLock().lock();
+                try {
+                    sketch(days, appId, uriId, day).merge(sketch);
+                } finally {
+                    evictionLock.readLock().unlock();
+                }
+                snapshotFoldDay = Math.max(snapshotFoldDay, day + 1);
+            }
+        }
+        // Дневной скетч нельзя снова разбить на часы: если снимок свернул больше дней, чем
+        // hourly-days, свёрнутыми остаются и они, а часы до них досворачиваются.
+        fold(horizonDay, snapshotFoldDay);
+    }
+
+    @Override
+    public void replay(int appId, int uriId, byte[] ip, LocalDateTime timestamp) {
+        evictionLock.readLock().lock();
+        try {
+            add(appId, uriId, ip, timestamp);
+        } finally {
+            evictionLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        hours.clear();
+        days.clear();
+    }
+
+    @Override
+    public void markLoaded() {
+        loaded = true;
+    }
+
+    @Override
+    public void onHits(List<Hit> hits) {
+        evictionLock.readLock().lock();
+        try {
+            for (Hit hit : hits) {
+                add(hit.getAppId(), hit.getUriId(), hit.getIp(), hit.getTimestamp());
+            }
+        } finally {
+            evictionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Сворачивает часовые скетчи старше {@code hourly-days} дней в дневные и удаляет скетчи
+     * за дни раньше срока хранения вместе с опустевшими картами адресов и приложений.
+     * Выполняется при старте и по расписанию обслуживания партиций.
+     */
+    @Scheduled(cron = "${stats-server.partitions.cron:0 5 0 * * *}")
+    public void evictExpired() {
+        LocalDateTime horizon = hitPartitionManager.getRawHorizon();
+        fold(horizon == null ? Long.MIN_VALUE : horizon.toLocalDate().toEpochDay(),
+                hourlyDays <= 0 ? Long.MIN_VALUE : LocalDate.now().minusDays(hourlyDays).toEpochDay());
+    }
+
+    private void fold(long newHorizonDay, long newFoldDay) {
+        evictionLock.writeLock().lock();
+        try {
+            horizonDay = newHorizonDay;
+            foldDay = Math.max(foldDay, newFoldDay);
+            long foldHour = foldDay == Long.MIN_VALUE ? Long.MIN_VALUE : foldDay * HOURS_PER_DAY;
+            hours.forEach((uriId, byApp) -> byApp.forEach((appId, byHour) -> {
+                ConcurrentNavigableMap<Long, HyperLogLog> folded = byHour.headMap(foldHour);
+                folded.forEach((hour, sketch) -> {
+                    long day = Math.floorDiv(hour, HOURS_PER_DAY);
+                    if (day >= newHorizonDay) {
+                        sketch(days, appId, uriId, day).merge(sketch);
+                    }
+                });
+                folded.clear();
+            }));
+            days.values().forEach(byApp -> byApp.values().forEach(byDay -> byDay.headMap(newHorizonDay).clear()));
+            removeEmpty(hours);
+            removeEmpty(days);
+        } finally {
+            evictionLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Объединяет скетчи за полуоткрытый интервал часов по каждой паре приложение-адрес.
+     * Часы, свёрнутые в дневные скетчи, берутся целыми днями; неполные дни в свёрнутой части
+     * интервала добавляются в {@code uncovered}, и их нужно досчитать по таблице `hits`.
+     *
+     * @param from      начало интервала, выровненное по часу
+     * @param to        конец интервала, выровненный по часу
+     * @param uriIds    идентификаторы адресов или null для всех адресов
+     * @param uncovered список, в который добавляются интервалы без скетчей
+     * @return новые скетчи по парам приложение-адрес
+     */
+    public Map<AppUri, HyperLogLog> merge(LocalDateTime from, LocalDateTime to, List<Integer> uriIds,
+                                          List<TimeRange> uncovered) {
+        Map<AppUri, HyperLogLog> result = new HashMap<>();
+        long fromHour = toHour(from);
+        long toHour = toHour(to);
+        evictionLock.readLock().lock();
+        try {
+            long foldHour = foldDay == Long.MIN_VALUE ? Long.MIN_VALUE : foldDay * HOURS_PER_DAY;
+            if (fromHour < foldHour) {
+                long foldedTo = Math.min(toHour, foldHour);
+                long fromDay = Math.floorDiv(fromHour + HOURS_PER_DAY - 1, HOURS_PER_DAY);
+                long toDay = Math.floorDiv(foldedTo, HOURS_PER_DAY);
+                if (fromDay < toDay) {
+                    mergeInto(result, days, fromDay, toDay, uriIds);
+                    addIfNotEmpty(uncovered, fromHour, fromDay * HOURS_PER_DAY);
+                    addIfNotEmpty(uncovered, toDay * HOURS_PER_DAY, foldedTo);
+                } else {
+                    addIfNotEmpty(uncovered, fromHour, foldedTo);
+                }
+                fromHour = foldedTo;
+            }
+            if (fromHour < toHour) {
+                mergeInto(result, hours, fromHour, toHour, uriIds);
+            }
+        } finally {
+            evictionLock.readLock().unlock();
+        }
+        return result;
+    }
+
+    private void add(int appId, int uriId, byte[] ip, LocalDateTime timestamp) {
+        HyperLogLog sketch = sketchFor(appId, uriId, toHour(timestamp));
+        if (sketch != null) {
+            sketch.add(Hashing.hash64(ip));
+        }
+    }
+
+    private HyperLogLog sketchFor(int appId, int uriId, long hour) {
+        long day = Math.floorDiv(hour, HOURS_PER_DAY);
+        if (day < horizonDay) {
+            return null;
+        }
+        return day < foldDay ? sketch(days, appId, uriId, day) : sketch(hours, appId, uriId, hour);
+    }
+
+    private static void mergeInto(Map<AppUri, HyperLogLog> result,
+                                  ConcurrentMap<Integer, ConcurrentMap<Integer, ConcurrentNavigableMap<Long, HyperLogLog>>> store,
+                                  long from, long to, List<Integer> uriIds) {
+        Collection<Integer> keys = uriIds == null ? store.keySet() : uriIds;
+        for (Integer uriId : keys) {
+            ConcurrentMap<Integer, ConcurrentNavigableMap<Long, HyperLogLog>> byApp = store.get(uriId);
+            if (byApp == null) {
+                continue;
+            }
+            byApp.forEach((appId, byKey) -> {
+                Collection<HyperLogLog> sketches = byKey.subMap(from, to).values();
+                if (sketches.isEmpty()) {
+                    return;
+                }
+                HyperLogLog merged = result.computeIfAbsent(new AppUri(appId, uriId), key -> new HyperLogLog());
+                for (HyperLogLog sketch : sketches) {
+                    merged.merge(sketch);
+                }
+            });
+        }
+    }
+
+    private static void write(ConcurrentMap<Integer, ConcurrentMap<Integer, ConcurrentNavigableMap<Long, HyperLogLog>>> store,
+                              DataOutput out) throws IOException {
+        for (Map.Entry<Integer, ConcurrentMap<Integer, ConcurrentNavigableMap<Long, HyperLogLog>>> byUri :
+                store.entrySet()) {
+            for (Map.Entry<Integer, ConcurrentNavigableMap<Long, HyperLogLog>> byApp : byUri.getValue().entrySet()) {
+                for (Map.Entry<Long, HyperLogLog> byKey : byApp.getValue().entrySet()) {
+                    out.writeBoolean(true);
+                    out.writeInt(byUri.getKey());
+                    out.writeInt(byApp.getKey());
+                    out.writeLong(byKey.getKey());
+                    byKey.getValue().write(out);
+                }
+            }
+        }
+        out.writeBoolean(false);
+    }
+
+    private static void removeEmpty(
+            ConcurrentMap<Integer, ConcurrentMap<Integer, ConcurrentNavigableMap<Long, HyperLogLog>>> store) {
+        store.values().forEach(byApp -> byApp.values().removeIf(Map::isEmpty));
+        store.values().removeIf(Map::isEmpty);
+    }
+
+    private static HyperLogLog sketch(
+            ConcurrentMap<Integer, ConcurrentMap<Integer, ConcurrentNavigableMap<Long, HyperLogLog>>> store,
+            int appId, int uriId, long key) {
+        return store.computeIfAbsent(uriId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(appId, id -> new ConcurrentSkipListMap<>())
+                .computeIfAbsent(key, id -> new HyperLogLog());
+    }
+
+    private static void addIfNotEmpty(List<TimeRange> ranges, long fromHour, long toHour) {
+        if (fromHour < toHour) {
+            ranges.add(new TimeRange(fromHour(fromHour), fromHour(toHour)));
+        }
+    }
+
+    private static LocalDateTime fromHour(long hour) {
+        return LocalDateTime.ofEpochSecond(hour * SECONDS_PER_HOUR, 0, ZoneOffset.UTC);
+    }
+
+    private static long toHour(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), SECONDS_PER_HOUR);
+    }
+}
@@ -0,0 +1,200 @@
+package ru.yandex.practicum.snapshot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.hit.HitCursorRepository;
+import ru.yandex.practicum.ingest.HitWriter;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Снимки агрегатов в памяти, которые иначе строятся полным чтением таблицы `hits`.
+ * Раз в {@code interval-ms} и при остановке сервера агрегаты записываются в файл
+ * {@code dir/aggregates.snapshot}: сжатый gzip заголовок с версией формата и отметкой -
+ * наибольшим идентификатором хита, учтённого в снимке, - и секции агрегатов. Секция пишется прямо в файл
+ * без буфера в памяти и длины: формат каждого агрегата сам отмечает конец своих записей.
+ * Файл пишется во временный и переименовывается, поэтому при сбое остаётся предыдущий снимок.
+ * При старте агрегаты читаются из снимка и догружаются хитами с идентификатором больше отметки;
+ * без снимка, при другой версии формата или повреждённом файле агрегаты строятся по всей таблице.
+ */
+@Slf4j
+@Component
+@StandaloneNode
+public class SnapshotManager {
+    private static final int MAGIC = 0x53544153;
+    private static final int VERSION = 4;
+    private static final String FILE_NAME = "aggregates.snapshot";
+
+    private final HitCursorRepository hitCursorRepository;
+    private final HitWriter hitWriter;
+    private final List<SnapshotPart> parts;
+    private final boolean enabled;
+    private final Path file;
+    private final Path tempFile;
+    private volatile boolean restored;
+
+    public SnapshotManager(HitCursorRepository hitCursorRepository,
+                           HitWriter hitWriter,
+                           List<SnapshotPart> parts,
+                           @Value("${stats-server.snapshot.enabled:true}") boolean enabled,
+                           @Value("${stats-server.snapshot.dir:snapshot}") String dir) {
+        this.hitCursorRepository = hitCursorRepository;
+        this.hitWriter = hitWriter;
+        this.parts = parts.stream().filter(SnapshotPart::isEnabled).collect(Collectors.toList());
+        this.enabled = enabled;
+        this.file = Paths.get(dir).resolve(FILE_NAME);
+        this.tempFile = Paths.get(dir).resolve(FILE_NAME + ".tmp");
+    }
+
+    /**
+     * Восстанавливает агрегаты в фоне после старта сервера.
+     * Хиты, пришедшие во время загрузки, могут учесться дважды, что для агрегатов безразлично.
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void restore() {
+        if (parts.isEmpty()) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        Long mark = enabled ? read() : null;
+        HitCursorRepository.HitRowCallback replay = (appId, uriId, ip, timestamp) -> {
+            for (SnapshotPart part : parts) {
+                part.replay(appId, uriId, ip, timestamp);
+            }
+        };
+        long count = mark == null ? hitCursorRepository.forEach(replay) : hitCursorRepository.forEachAfter(mark, replay);
+        parts.forEach(SnapshotPart::markLoaded);
+        restored = true;
+        log.info("Restored {} {} in {} ms", sections(), mark == null ? "from " + count + " hits"
+                : "from snapshot at hit " + mark + " and " + count + " newer hits", System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Записывает снимок по расписанию. До окончания восстановления агрегаты неполны, и снимок не пишется.
+     */
+    @Scheduled(fixedDelayString = "${stats-server.snapshot.interval-ms:600000}",
+            initialDelayString = "${stats-server.snapshot.interval-ms:600000}")
+    public void scheduledWrite() {
+        if (enabled && restored) {
+            write();
+        }
+    }
+
+    /**
+     * Записывает последний снимок при остановке, чтобы после деплоя догружать почти нечего.
+     */
+    @PreDestroy
+    public void close() {
+        if (enabled && restored) {
+            write();
+        }
+    }
+
+    private synchronized void write() {
+        long started = System.currentTimeMillis();
+        try {
+            long mark = hitWriter.paused(hitCursorRepository::findMaxId);
+            Files.createDirectories(file.getParent());
+            try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tempFile))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(mark);
+                for (SnapshotPart part : parts) {
+                    out.writeBoolean(true);
+                    out.writeUTF(part.section());
+                    part.writeSnapshot(out);
+                }
+                out.writeBoolean(false);
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Wrote snapshot of {} at hit {} ({} bytes) in {} ms", sections(), mark, Files.size(file),
+                    System.currentTimeMillis() - started);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to write snapshot {}", file, e);
+        }
+    }
+
+    /**
+     * Читает снимок в агрегаты. Секции читаются прямо в агрегаты, поэтому если файл оказался
+     * повреждён посередине, уже прочитанное очищается.
+     *
+     * @return отметка снимка или null, если снимок не подошёл и агрегаты нужно строить по всей таблице
+     */
+    private Long read() {
+        Set<String> read = new HashSet<>();
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(
+                new BufferedInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC) {
+                log.warn("Ignoring snapshot {}: not a snapshot file", file);
+                return null;
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                log.warn("Ignoring snapshot {}: format version {}, expected {}", file, version, VERSION);
+                return null;
+            }
+            long mark = in.readLong();
+            long maxId = hitCursorRepository.findMaxId();
+            if (mark > maxId) {
+                log.warn("Ignoring snapshot {}: it covers hits up to {}, but the hits table ends at {}",
+                        file, mark, maxId);
+                return null;
+            }
+            while (in.readBoolean()) {
+                String name = in.readUTF();
+                SnapshotPart part = parts.stream()
+                        .filter(candidate -> candidate.section().equals(name))
+                        .findFirst()
+                        .orElseThrow(() -> new IOException("Unknown section " + name));
+                part.readSnapshot(in);
+                read.add(name);
+            }
+            if (in.read() != -1) {
+                throw new IOException("Unexpected data after the last section");
+            }
+            for (SnapshotPart part : parts) {
+                if (!read.contains(part.section())) {
+                    log.warn("Ignoring snapshot {}: no section {}", file, part.section());
+                    parts.forEach(SnapshotPart::clear);
+                    return null;
+                }
+            }
+            return mark;
+        } catch (NoSuchFileException e) {
+            log.info("No snapshot {}, building aggregates from the hits table", file);
+            return null;
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable snapshot {}", file, e);
+            parts.forEach(SnapshotPart::clear);
+            return null;
+        }
+    }
+
+    private String sections() {
+        return parts.stream().map(SnapshotPart::section).collect(Collectors.joining(", "));
+    }
+}
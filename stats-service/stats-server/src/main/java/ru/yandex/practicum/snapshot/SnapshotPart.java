@@ -0,0 +1,53 @@
+package ru.yandex.practicum.snapshot;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * Агрегат в памяти, который строится по всей таблице `hits`, сохраняется в снимок
+ * и при старте сервера восстанавливается из него с догрузкой более новых хитов.
+ * Повторное добавление хита не должно менять агрегат, так как хиты на границе снимка
+ * могут попасть и в снимок, и в догрузку.
+ */
+public interface SnapshotPart {
+    /**
+     * @return имя секции снимка
+     */
+    String section();
+
+    boolean isEnabled();
+
+    /**
+     * Записывает агрегат. Вызывается одновременно с пополнением агрегата новыми хитами.
+     * Записи должны завершаться признаком конца, так как длина секции в снимке не хранится.
+     *
+     * @param out поток записи секции
+     */
+    void writeSnapshot(DataOutput out) throws IOException;
+
+    /**
+     * Добавляет к агрегату содержимое секции снимка, не заменяя уже учтённые хиты.
+     * Читает секцию ровно до её признака конца.
+     *
+     * @param in поток чтения секции
+     */
+    void readSnapshot(DataInput in) throws IOException;
+
+    /**
+     * Очищает агрегат, если снимок оказался повреждён после чтения части секций
+     * и агрегат будет построен заново по всей таблице.
+     */
+    void clear();
+
+    /**
+     * Добавляет к агрегату сохранённый хит при догрузке после снимка или полном чтении таблицы.
+     */
+    void replay(int appId, int uriId, byte[] ip, LocalDateTime timestamp);
+
+    /**
+     * Вызывается, когда агрегат восстановлен и готов отвечать на запросы.
+     */
+    void markLoaded();
+}
@@ -0,0 +1,97 @@
+package ru.yandex.practicum.stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.rollup.RangeFilter;
+import ru.yandex.practicum.rollup.Rollup;
+import ru.yandex.practicum.rollup.RollupPlan;
+import ru.yandex.practicum.rollup.TimeRange;
+
+import java.util.List;
+
+/**
+ * Читает статистику курсором с фиксированным размером выборки: группировка и сортировка
+ * выполняются в базе, а строки результата передаются обработчику по одной.
+ */
+@Repository
+@StandaloneNode
+public class StatsCursorRepository {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public StatsCursorRepository(JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${stats-server.hits.fetch-size:1000}") int fetchSize) {
+        JdbcTemplate cursorTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        cursorTemplate.setFetchSize(fetchSize);
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(cursorTemplate);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Передаёт обработчику неуникальную статистику по плану подсчёта по агрегатам,
+     * отсортированную по убыванию числа хитов.
+     *
+     * @param plan     план подсчёта
+     * @param uriIds   идентификаторы адресов или null для всех адресов
+     * @param callback обработчик строки статистики
+     */
+    public void forEachCount(RollupPlan plan, List<Integer> uriIds, StatsRowCallback callback) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        StringBuilder sql = new StringBuilder("SELECT app_id, uri_id, SUM(hits) AS hits FROM (");
+        String union = "";
+        if (!plan.getHours().isEmpty()) {
+            sql.append("SELECT app_id, uri_id, hits FROM ").append(Rollup.HOUR.getTable());
+            RangeFilter.appendWhere(sql, params, "h", "bucket", plan.getHours(), uriIds);
+            union = " UNION ALL ";
+        }
+        if (!plan.getMinutes().isEmpty()) {
+            sql.append(union).append("SELECT app_id, uri_id, hits FROM ").append(Rollup.MINUTE.getTable());
+            RangeFilter.appendWhere(sql, params, "m", "bucket", plan.getMinutes(), uriIds);
+            union = " UNION ALL ";
+        }
+        if (!plan.getRaw().isEmpty()) {
+            sql.append(union).append("SELECT app_id, uri_id, CAST(1 AS BIGINT) AS hits FROM hits");
+            RangeFilter.appendWhere(sql, params, "r", "time_stamp", plan.getRaw(), uriIds);
+            union = " UNION ALL ";
+        }
+        if (union.isEmpty()) {
+            return;
+        }
+        sql.append(") AS r GROUP BY app_id, uri_id ORDER BY hits DESC");
+        query(sql.toString(), params, callback);
+    }
+
+    /**
+     * Передаёт обработчику статистику по уникальным IP-адресам за полуоткрытый интервал,
+     * отсортированную по убыванию числа хитов.
+     *
+     * @param range    интервал
+     * @param uriIds   идентификаторы адресов или null для всех адресов
+     * @param callback обработчик строки статистики
+     */
+    public void forEachUniqueCount(TimeRange range, List<Integer> uriIds, StatsRowCallback callback) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        StringBuilder sql = new StringBuilder("SELECT app_id, uri_id, COUNT(DISTINCT ip) AS hits FROM hits");
+        RangeFilter.appendWhere(sql, params, "r", "time_stamp", List.of(range), uriIds);
+        sql.append(" GROUP BY app_id, uri_id ORDER BY hits DESC");
+        query(sql.toString(), params, callback);
+    }
+
+    private void query(String sql, MapSqlParameterSource params, StatsRowCallback callback) {
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(sql, params, rs -> {
+            callback.accept(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getLong("hits"));
+        }));
+    }
+
+    public interface StatsRowCallback {
+        void accept(int appId, int uriId, long hits);
+    }
+}
@@ -0,0 +1,75 @@
+package ru.yandex.practicum.stream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.StatsDto;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.dictionary.HitDictionary;
+import ru.yandex.practicum.rollup.RollupStatsReader;
+import ru.yandex.practicum.rollup.TimeRange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Пишет статистику в поток в формате NDJSON - по объекту JSON на строку - по мере чтения
+ * из курсора базы. Потребление памяти не зависит от числа адресов в ответе.
+ */
+@Slf4j
+@Component
+@StandaloneNode
+public class StatsStreamer {
+    private static final int NEWLINE = '\n';
+
+    private final StatsCursorRepository statsCursorRepository;
+    private final RollupStatsReader rollupStatsReader;
+    private final HitDictionary hitDictionary;
+    private final ObjectWriter writer;
+
+    public StatsStreamer(StatsCursorRepository statsCursorRepository,
+                         RollupStatsReader rollupStatsReader,
+                         HitDictionary hitDictionary,
+                         ObjectMapper objectMapper) {
+        this.statsCursorRepository = statsCursorRepository;
+        this.rollupStatsReader = rollupStatsReader;
+        this.hitDictionary = hitDictionary;
+        this.writer = objectMapper.writerFor(StatsDto.class)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    /**
+     * Пишет статистику за полуоткрытый интервал, отсортированную по убыванию числа хитов.
+     *
+     * @param from   начало интервала
+     * @param to     конец интервала
+     * @param uriIds идентификаторы адресов или null для всех адресов
+     * @param unique флаг, указывающий, считать ли уникальные хиты
+     * @param out    поток ответа
+     */
+    public void write(LocalDateTime from, LocalDateTime to, List<Integer> uriIds, boolean unique, OutputStream out) {
+        long started = System.currentTimeMillis();
+        long[] rows = new long[1];
+        StatsCursorRepository.StatsRowCallback callback = (appId, uriId, hits) -> {
+            try {
+                writer.writeValue(out,
+                        new StatsDto(hitDictionary.appName(appId), hitDictionary.uri(uriId), hits));
+                out.write(NEWLINE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            rows[0]++;
+        };
+        if (unique) {
+            statsCursorRepository.forEachUniqueCount(new TimeRange(from, to), uriIds, callback);
+        } else {
+            statsCursorRepository.forEachCount(rollupStatsReader.plan(from, to), uriIds, callback);
+        }
+        log.info("Streamed {} stats rows in {} ms", rows[0], System.currentTimeMillis() - started);
+    }
+}
@@ -0,0 +1,205 @@
+package ru.yandex.practicum.template;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.hit.Hit;
+import ru.yandex.practicum.rollup.RangeFilter;
+import ru.yandex.practicum.rollup.Rollup;
+import ru.yandex.practicum.rollup.TimeRange;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Таблицы предагрегации по шаблонам адресов: те же минутные и часовые счётчики,
+ * что и по адресам, но с ключом (шаблон, интервал, приложение).
+ * Таблица `uri_template_ids` хранит, к какому шаблону отнесён адрес: хиты адреса есть в агрегатах шаблона
+ * тогда и только тогда, когда в ней есть строка адреса. Поэтому при смене настройки шаблонов агрегаты
+ * затронутых шаблонов пересобираются по агрегатам адресов, включая хиты до появления шаблона.
+ */
+@Slf4j
+@Repository
+@StandaloneNode
+public class TemplateRollupRepository {
+    private static final String TABLE_PREFIX = "template_";
+    private static final String POSTGRES_UPSERT = "INSERT INTO %1$s (app_id, template_id, bucket, hits) " +
+            "VALUES (:appId, :templateId, :bucket, :hits) " +
+            "ON CONFLICT (template_id, bucket, app_id) DO UPDATE SET hits = %1$s.hits + EXCLUDED.hits";
+    private static final String H2_UPSERT = "MERGE INTO %1$s AS t " +
+            "USING (VALUES (CAST(:appId AS INTEGER), CAST(:templateId AS INTEGER), " +
+            "CAST(:bucket AS TIMESTAMP), CAST(:hits AS BIGINT))) AS s (app_id, template_id, bucket, hits) " +
+            "ON t.template_id = s.template_id AND t.bucket = s.bucket AND t.app_id = s.app_id " +
+            "WHEN MATCHED THEN UPDATE SET hits = t.hits + s.hits " +
+            "WHEN NOT MATCHED THEN INSERT (app_id, template_id, bucket, hits) " +
+            "VALUES (s.app_id, s.template_id, s.bucket, s.hits)";
+    private static final Comparator<TemplateKey> LOCK_ORDER = Comparator.comparingInt(TemplateKey::getTemplateId)
+            .thenComparing(TemplateKey::getBucket)
+            .thenComparingInt(TemplateKey::getAppId);
+
+    private static final String REBUILD = "INSERT INTO %s (app_id, template_id, bucket, hits) " +
+            "SELECT r.app_id, m.template_id, r.bucket, SUM(r.hits) FROM %s r " +
+            "JOIN uri_template_ids m ON m.uri_id = r.uri_id " +
+            "WHERE m.template_id = :templateId GROUP BY r.app_id, m.template_id, r.bucket";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate newTransaction;
+    private final String upsert;
+
+    public TemplateRollupRepository(NamedParameterJdbcTemplate jdbcTemplate,
+                                    PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        String database = jdbcTemplate.getJdbcTemplate().execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        this.upsert = "H2".equals(database) ? H2_UPSERT : POSTGRES_UPSERT;
+    }
+
+    public static String table(Rollup rollup) {
+        return TABLE_PREFIX + rollup.getTable();
+    }
+
+    /**
+     * Загружает сохранённое соответствие адрес-шаблон.
+     *
+     * @return идентификаторы шаблонов по идентификаторам адресов
+     */
+    public Map<Integer, Integer> findUriTemplates() {
+        Map<Integer, Integer> result = new HashMap<>();
+        jdbcTemplate.getJdbcTemplate().query("SELECT uri_id, template_id FROM uri_template_ids", rs -> {
+            result.put(rs.getInt("uri_id"), rs.getInt("template_id"));
+        });
+        return result;
+    }
+
+    /**
+     * Сохраняет шаблон нового адреса в отдельной транзакции до записи его первых хитов.
+     *
+     * @param uriId      идентификатор адреса
+     * @param templateId идентификатор шаблона
+     */
+    public void saveUriTemplate(int uriId, int templateId) {
+        newTransaction.executeWithoutResult(status -> jdbcTemplate.update(
+                "INSERT INTO uri_template_ids (uri_id, template_id) VALUES (:uriId, :templateId)",
+                new MapSqlParameterSource("uriId", uriId).addValue("templateId", templateId)));
+    }
+
+    /**
+     * Заменяет соответствие адрес-шаблон и одной транзакцией пересобирает агрегаты указанных шаблонов
+     * по минутным и часовым агрегатам их адресов.
+     *
+     * @param uriTemplates идентификаторы шаблонов по идентификаторам адресов
+     * @param templateIds  шаблоны, набор адресов которых изменился
+     */
+    public void rebuild(Map<Integer, Integer> uriTemplates, Collection<Integer> templateIds) {
+        List<SqlParameterSource> mapping = new ArrayList<>(uriTemplates.size());
+        uriTemplates.forEach((uriId, templateId) -> mapping.add(new MapSqlParameterSource("uriId", uriId)
+                .addValue("templateId", templateId)));
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.getJdbcTemplate().update("DELETE FROM uri_template_ids");
+            jdbcTemplate.batchUpdate("INSERT INTO uri_template_ids (uri_id, template_id) VALUES (:uriId, :templateId)",
+                    mapping.toArray(new SqlParameterSource[0]));
+            for (Integer templateId : templateIds) {
+                MapSqlParameterSource params = new MapSqlParameterSource("templateId", templateId);
+                for (Rollup rollup : Rollup.values()) {
+                    jdbcTemplate.update("DELETE FROM " + table(rollup) + " WHERE template_id = :templateId", params);
+                    int rows = jdbcTemplate.update(String.format(REBUILD, table(rollup), rollup.getTable()), params);
+                    log.info("Rebuilt {} rows of {} for template {}", rows, table(rollup), templateId);
+                }
+            }
+        });
+    }
+
+    /**
+     * Увеличивает счётчики шаблонов на хиты из пачки, адреса которых подходят к шаблонам.
+     * Должен вызываться в той же транзакции, что и вставка самих хитов.
+     *
+     * @param hits список хитов
+     */
+    public void addAll(List<Hit> hits) {
+        for (Rollup rollup : Rollup.values()) {
+            Map<TemplateKey, Long> counts = new TreeMap<>(LOCK_ORDER);
+            for (Hit hit : hits) {
+                if (hit.getTemplateId() != null) {
+                    counts.merge(new TemplateKey(hit.getAppId(), hit.getTemplateId(), rollup.floor(hit.getTimestamp())),
+                            1L, Long::sum);
+                }
+            }
+            if (counts.isEmpty()) {
+                continue;
+            }
+            List<SqlParameterSource> params = new ArrayList<>(counts.size());
+            counts.forEach((key, count) -> params.add(new MapSqlParameterSource()
+                    .addValue("appId", key.getAppId())
+                    .addValue("templateId", key.getTemplateId())
+                    .addValue("bucket", Timestamp.valueOf(key.getBucket()))
+                    .addValue("hits", count)));
+            jdbcTemplate.batchUpdate(String.format(upsert, table(rollup)), params.toArray(new SqlParameterSource[0]));
+        }
+    }
+
+    /**
+     * Суммирует предагрегированные хиты шаблона по интервалам заданной гранулярности.
+     *
+     * @param rollup     гранулярность
+     * @param ranges     интервалы, границы которых выровнены по гранулярности
+     * @param templateId идентификатор шаблона
+     * @param counts     счётчики по приложениям, к которым прибавляется результат
+     */
+    public void sum(Rollup rollup, List<TimeRange> ranges, int templateId, Map<Integer, Long> counts) {
+        MapSqlParameterSource params = new MapSqlParameterSource("templateId", templateId);
+        StringBuilder sql = new StringBuilder("SELECT app_id, SUM(hits) AS hits FROM ").append(table(rollup));
+        RangeFilter.appendWhere(sql, params, "r", "bucket", ranges, null);
+        sql.append(" AND template_id = :templateId GROUP BY app_id");
+        query(sql.toString(), params, counts);
+    }
+
+    /**
+     * Считает хиты по сырой таблице `hits` для адресов шаблона.
+     *
+     * @param ranges интервалы
+     * @param uriIds идентификаторы адресов шаблона
+     * @param unique флаг, указывающий, считать ли уникальные IP-адреса по всем адресам шаблона
+     * @param counts счётчики по приложениям, к которым прибавляется результат
+     */
+    public void count(List<TimeRange> ranges, List<Integer> uriIds, boolean unique, Map<Integer, Long> counts) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        StringBuilder sql = new StringBuilder("SELECT app_id, ")
+                .append(unique ? "COUNT(DISTINCT ip)" : "COUNT(*)")
+                .append(" AS hits FROM hits");
+        RangeFilter.appendWhere(sql, params, "r", "time_stamp", ranges, uriIds);
+        sql.append(" GROUP BY app_id");
+        query(sql.toString(), params, counts);
+    }
+
+    private void query(String sql, MapSqlParameterSource params, Map<Integer, Long> counts) {
+        jdbcTemplate.query(sql, params, rs -> {
+            counts.merge(rs.getInt("app_id"), rs.getLong("hits"), Long::sum);
+        });
+    }
+
+    @Value
+    private static class TemplateKey {
+        int appId;
+        int templateId;
+        LocalDateTime bucket;
+    }
+}
@@ -0,0 +1,149 @@
+package ru.yandex.practicum.template;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.StatsDto;
+import ru.yandex.practicum.bitmap.BitmapStatsReader;
+import ru.yandex.practicum.bitmap.IpBitmap;
+import ru.yandex.practicum.bitmap.IpSet;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.cluster.UniqueIpsDto;
+import ru.yandex.practicum.dictionary.HitDictionary;
+import ru.yandex.practicum.exceptions.StatisticsValidationException;
+import ru.yandex.practicum.hit.HitCursorRepository;
+import ru.yandex.practicum.partition.HitPartitionManager;
+import ru.yandex.practicum.rollup.Rollup;
+import ru.yandex.practicum.rollup.RollupPlan;
+import ru.yandex.practicum.rollup.RollupStatsReader;
+import ru.yandex.practicum.rollup.TimeRange;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Считает статистику по шаблону адресов целиком, по приложениям.
+ * Неуникальные хиты считаются так же, как по адресам: целые часы и минуты - по таблицам
+ * предагрегации шаблонов, остаток меньше минуты - по сырым хитам адресов шаблона.
+ * Уникальные IP-адреса объединяются по дневным битовым картам всех адресов шаблона
+ * за срок хранения сырых хитов. Для маршрутизатора кластера отдаёт сами множества IP-адресов по приложениям.
+ */
+@Component
+@RequiredArgsConstructor
+@StandaloneNode
+public class TemplateStatsReader {
+    private final UriTemplates uriTemplates;
+    private final HitDictionary hitDictionary;
+    private final TemplateRollupRepository templateRollupRepository;
+    private final RollupStatsReader rollupStatsReader;
+    private final BitmapStatsReader bitmapStatsReader;
+    private final HitPartitionManager hitPartitionManager;
+    private final HitCursorRepository hitCursorRepository;
+
+    /**
+     * Находит статистику по шаблону адресов за указанный период времени, включая его границы.
+     *
+     * @param start    начало периода времени
+     * @param end      конец периода времени
+     * @param template шаблон адресов из настройки stats-server.uri-templates
+     * @param unique   флаг, указывающий, считать ли уникальные хиты
+     * @return статистика по приложениям с шаблоном вместо адреса, отсортированная по убыванию числа хитов
+     */
+    public List<StatsDto> findStats(LocalDateTime start, LocalDateTime end, String template, boolean unique) {
+        Integer templateId = findTemplateId(template);
+        if (templateId == null) {
+            return Collections.emptyList();
+        }
+        LocalDateTime from = (unique ? hitPartitionManager.clampToRetention(start) : start)
+                .truncatedTo(ChronoUnit.SECONDS);
+        LocalDateTime to = end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+        if (!from.isBefore(to)) {
+            return Collections.emptyList();
+        }
+        List<Integer> uriIds = hitDictionary.findTemplateUriIds(templateId);
+        Map<Integer, Long> counts = unique ? countUnique(from, to, uriIds) : count(from, to, templateId, uriIds);
+        List<StatsDto> result = new ArrayList<>(counts.size());
+        counts.forEach((appId, hits) -> result.add(new StatsDto(hitDictionary.appName(appId), template, hits)));
+        result.sort(Comparator.comparing(StatsDto::getHits).reversed());
+        return result;
+    }
+
+    /**
+     * Собирает множества уникальных IP-адресов по шаблону адресов для маршрутизатора кластера:
+     * адреса шаблона разложены по шардам, и посетители разных шардов пересекаются, поэтому маршрутизатор
+     * объединяет сами множества, а не складывает их размеры.
+     *
+     * @param start    начало периода времени
+     * @param end      конец периода времени
+     * @param template шаблон адресов из настройки stats-server.uri-templates
+     * @return множества IP-адресов по приложениям
+     */
+    public List<UniqueIpsDto> findUniqueIps(LocalDateTime start, LocalDateTime end, String template) {
+        Integer templateId = findTemplateId(template);
+        if (templateId == null) {
+            return Collections.emptyList();
+        }
+        LocalDateTime from = hitPartitionManager.clampToRetention(start).truncatedTo(ChronoUnit.SECONDS);
+        LocalDateTime to = end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+        List<Integer> uriIds = hitDictionary.findTemplateUriIds(templateId);
+        if (!from.isBefore(to) || uriIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Integer, IpSet> byApp = new HashMap<>();
+        if (bitmapStatsReader.isReady()) {
+            Map<Integer, IpBitmap> bitmaps = new HashMap<>();
+            bitmapStatsReader.union(from, to, uriIds).forEach((key, bitmap) ->
+                    bitmap.orInto(bitmaps.computeIfAbsent(key.getAppId(), appId -> new IpBitmap())));
+            bitmaps.forEach((appId, bitmap) -> byApp.put(appId, IpSet.of(bitmap, hitDictionary::ipv6Address)));
+        } else {
+            hitCursorRepository.forEach(List.of(new TimeRange(from, to)), uriIds, (appId, uriId, ip, timestamp) ->
+                    byApp.computeIfAbsent(appId, key -> new IpSet()).add(ip));
+        }
+        List<UniqueIpsDto> result = new ArrayList<>(byApp.size());
+        byApp.forEach((appId, ips) -> result.add(new UniqueIpsDto(hitDictionary.appName(appId), ips.encode())));
+        return result;
+    }
+
+    private Integer findTemplateId(String template) {
+        if (!uriTemplates.contains(template)) {
+            throw new StatisticsValidationException("Unknown uri template " + template);
+        }
+        return hitDictionary.findTemplateId(template);
+    }
+
+    private Map<Integer, Long> count(LocalDateTime from, LocalDateTime to, int templateId, List<Integer> uriIds) {
+        RollupPlan plan = rollupStatsReader.plan(from, to);
+        Map<Integer, Long> counts = new HashMap<>();
+        if (!plan.getHours().isEmpty()) {
+            templateRollupRepository.sum(Rollup.HOUR, plan.getHours(), templateId, counts);
+        }
+        if (!plan.getMinutes().isEmpty()) {
+            templateRollupRepository.sum(Rollup.MINUTE, plan.getMinutes(), templateId, counts);
+        }
+        if (!plan.getRaw().isEmpty() && !uriIds.isEmpty()) {
+            templateRollupRepository.count(plan.getRaw(), uriIds, false, counts);
+        }
+        return counts;
+    }
+
+    private Map<Integer, Long> countUnique(LocalDateTime from, LocalDateTime to, List<Integer> uriIds) {
+        Map<Integer, Long> counts = new HashMap<>();
+        if (uriIds.isEmpty()) {
+            return counts;
+        }
+        if (!bitmapStatsReader.isReady()) {
+            templateRollupRepository.count(List.of(new TimeRange(from, to)), uriIds, true, counts);
+            return counts;
+        }
+        Map<Integer, IpBitmap> byApp = new HashMap<>();
+        bitmapStatsReader.union(from, to, uriIds).forEach((key, bitmap) ->
+                bitmap.orInto(byApp.computeIfAbsent(key.getAppId(), appId -> new IpBitmap())));
+        byApp.forEach((appId, bitmap) -> counts.put(appId, bitmap.cardinality()));
+        return counts;
+    }
+}
@@ -0,0 +1,64 @@
+package ru.yandex.practicum.template;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.cluster.StandaloneNode;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Шаблоны адресов из {@code stats-server.uri-templates}, например, {@code /events/{id}}.
+ * Переменная в фигурных скобках совпадает с одним непустым сегментом пути;
+ * адрес относится к первому подходящему шаблону в порядке настройки.
+ */
+@Component
+@StandaloneNode
+public class UriTemplates {
+    private static final Pattern VARIABLE = Pattern.compile("\\{[^/{}]+}");
+
+    private final Map<String, Pattern> patterns = new LinkedHashMap<>();
+
+    public UriTemplates(@Value("${stats-server.uri-templates:}") List<String> templates) {
+        for (String template : templates) {
+            String trimmed = template.trim();
+            if (!trimmed.isEmpty()) {
+                patterns.put(trimmed, compile(trimmed));
+            }
+        }
+    }
+
+    public boolean contains(String template) {
+        return patterns.containsKey(template);
+    }
+
+    /**
+     * Находит шаблон адреса.
+     *
+     * @param uri адрес
+     * @return первый подходящий шаблон или null, если адрес не подходит ни к одному
+     */
+    public String match(String uri) {
+        for (Map.Entry<String, Pattern> entry : patterns.entrySet()) {
+            if (entry.getValue().matcher(uri).matches()) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    private static Pattern compile(String template) {
+        StringBuilder regex = new StringBuilder();
+        Matcher matcher = VARIABLE.matcher(template);
+        int literalStart = 0;
+        while (matcher.find()) {
+            regex.append(Pattern.quote(template.substring(literalStart, matcher.start()))).append("[^/]+");
+            literalStart = matcher.end();
+        }
+        regex.append(Pattern.quote(template.substring(literalStart)));
+        return Pattern.compile(regex.toString());
+    }
+}
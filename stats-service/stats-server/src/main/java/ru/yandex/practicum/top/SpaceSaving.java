@@ -0,0 +1,68 @@
+package ru.yandex.practicum.top;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Сводка Space-Saving для поиска самых частых элементов потока в ограниченной памяти.
+ * Хранится не больше {@code capacity} счётчиков; новый элемент при заполненной сводке
+ * вытесняет элемент с минимальным счётчиком и наследует его значение. Оценка частоты
+ * завышена не больше чем на минимальный счётчик, и любой элемент с частотой выше
+ * N / capacity гарантированно присутствует в сводке.
+ *
+ * @param <T> тип элемента
+ */
+class SpaceSaving<T extends Comparable<T>> {
+    private final int capacity;
+    private final Map<T, Counter<T>> counters = new HashMap<>();
+    private final TreeSet<Counter<T>> byCount = new TreeSet<>(Comparator.<Counter<T>>comparingLong(c -> c.count)
+            .thenComparing(c -> c.item));
+
+    SpaceSaving(int capacity) {
+        this.capacity = capacity;
+    }
+
+    synchronized void add(T item, long count) {
+        Counter<T> counter = counters.get(item);
+        if (counter == null) {
+            if (counters.size() < capacity) {
+                counter = new Counter<>(item, 0);
+            } else {
+                Counter<T> min = byCount.pollFirst();
+                counters.remove(min.item);
+                counter = new Counter<>(item, min.count);
+            }
+            counters.put(item, counter);
+        } else {
+            byCount.remove(counter);
+        }
+        counter.count += count;
+        byCount.add(counter);
+    }
+
+    /**
+     * Прибавляет к оценкам превышение счётчиков сводки над её минимальным счётчиком.
+     * Минимум заполненной сводки - оценка сверху для любого отсутствующего в ней элемента;
+     * при объединении сводок сумма минимумов одинакова для всех элементов и на порядок не влияет.
+     *
+     * @param estimates оценки частоты по элементам
+     */
+    synchronized void addTo(Map<T, Long> estimates) {
+        long min = counters.size() < capacity || byCount.isEmpty() ? 0 : byCount.first().count;
+        for (Counter<T> counter : counters.values()) {
+            estimates.merge(counter.item, counter.count - min, Long::sum);
+        }
+    }
+
+    private static class Counter<T> {
+        private final T item;
+        private long count;
+
+        Counter(T item, long count) {
+            this.item = item;
+            this.count = count;
+        }
+    }
+}
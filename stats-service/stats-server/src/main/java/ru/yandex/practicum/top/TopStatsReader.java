@@ -0,0 +1,137 @@
+package ru.yandex.practicum.top;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.StatsDto;
+import ru.yandex.practicum.bitmap.BitmapStatsReader;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.dictionary.AppUri;
+import ru.yandex.practicum.dictionary.HitDictionary;
+import ru.yandex.practicum.hit.HitCount;
+import ru.yandex.practicum.hit.HitRepository;
+import ru.yandex.practicum.rollup.Rollup;
+import ru.yandex.practicum.rollup.RollupStatsReader;
+import ru.yandex.practicum.sketch.SketchStatsReader;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Находит самые посещаемые адреса за период без сортировки полной статистики.
+ * Кандидаты отбираются по часовым сводкам Space-Saving и точным счётчикам неполных часов
+ * по краям периода, после чего число хитов кандидатов пересчитывается по агрегатам,
+ * а число уникальных IP-адресов - точно по битовым картам или, если разрешён приближённый подсчёт,
+ * по скетчам HyperLogLog. Если сводок за период нет, k адресов отбираются запросом к агрегатам
+ * с сортировкой в базе. Уникальный топ строится среди адресов с наибольшим числом просмотров.
+ */
+@Component
+@RequiredArgsConstructor
+@StandaloneNode
+public class TopStatsReader {
+    private static final int CANDIDATE_FACTOR = 4;
+
+    private final TopStore topStore;
+    private final RollupStatsReader rollupStatsReader;
+    private final SketchStatsReader sketchStatsReader;
+    private final BitmapStatsReader bitmapStatsReader;
+    private final HitRepository hitRepository;
+    private final HitDictionary hitDictionary;
+
+    /**
+     * Находит k пар приложение-адрес с наибольшим числом хитов за период, включая его границы.
+     *
+     * @param start  начало периода времени
+     * @param end    конец периода времени
+     * @param k      число пар в ответе
+     * @param unique флаг, указывающий, считать ли уникальные хиты
+     * @param approximate флаг, разрешающий приближённый подсчёт уникальных хитов по скетчам
+     * @return список объектов со статистикой по хитам, отсортированный по убыванию числа хитов
+     */
+    public List<StatsDto> findTop(LocalDateTime start, LocalDateTime end, int k, boolean unique,
+                                  boolean approximate) {
+        LocalDateTime from = start.truncatedTo(ChronoUnit.SECONDS);
+        LocalDateTime to = end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+        LocalDateTime storeStart = topStore.getStart();
+        int candidates = Math.min(k * CANDIDATE_FACTOR, topStore.getCapacity());
+        if (storeStart == null || from.isBefore(storeStart) || k > topStore.getCapacity()) {
+            if (unique) {
+                List<StatsDto> stats = bitmapStatsReader.isReady()
+                        ? bitmapStatsReader.findUniqueStats(start, end, null)
+                        : toStats(hitRepository.findAllStatsByUniqueIp(start, end));
+                return stats.subList(0, Math.min(k, stats.size()));
+            }
+            return hitDictionary.toStats(rollupStatsReader.top(from, to, k));
+        }
+
+        Map<AppUri, Long> estimates = estimate(from, to);
+        List<Integer> uriIds = uriIds(top(estimates, candidates).keySet());
+        if (uriIds.isEmpty()) {
+            return List.of();
+        }
+        if (unique) {
+            List<StatsDto> stats = approximate && sketchStatsReader.isReady()
+                    ? sketchStatsReader.findUniqueStats(start, end, uriIds)
+                    : bitmapStatsReader.isReady()
+                    ? bitmapStatsReader.findUniqueStats(start, end, uriIds)
+                    : toStats(hitRepository.findStatsByUrisByUniqueIp(start, end, uriIds));
+            return stats.subList(0, Math.min(k, stats.size()));
+        }
+        return hitDictionary.toStats(top(rollupStatsReader.count(from, to, uriIds), k));
+    }
+
+    private Map<AppUri, Long> estimate(LocalDateTime from, LocalDateTime to) {
+        LocalDateTime hoursFrom = Rollup.HOUR.ceil(from);
+        LocalDateTime hoursTo = Rollup.HOUR.floor(to);
+        if (!hoursFrom.isBefore(hoursTo)) {
+            return rollupStatsReader.count(from, to, null);
+        }
+        Map<AppUri, Long> estimates = topStore.estimate(hoursFrom, hoursTo);
+        if (from.isBefore(hoursFrom)) {
+            rollupStatsReader.count(from, hoursFrom, null).forEach((key, hits) -> estimates.merge(key, hits, Long::sum));
+        }
+        if (hoursTo.isBefore(to)) {
+            rollupStatsReader.count(hoursTo, to, null).forEach((key, hits) -> estimates.merge(key, hits, Long::sum));
+        }
+        return estimates;
+    }
+
+    private static Map<AppUri, Long> top(Map<AppUri, Long> counts, int k) {
+        PriorityQueue<Map.Entry<AppUri, Long>> heap = new PriorityQueue<>(k + 1, Map.Entry.comparingByValue());
+        for (Map.Entry<AppUri, Long> entry : counts.entrySet()) {
+            if (heap.size() < k) {
+                heap.add(entry);
+            } else if (entry.getValue() > heap.peek().getValue()) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+        Map<AppUri, Long> result = new HashMap<>();
+        for (Map.Entry<AppUri, Long> entry : heap) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    private static List<Integer> uriIds(Set<AppUri> keys) {
+        Set<Integer> result = new LinkedHashSet<>();
+        for (AppUri key : keys) {
+            result.add(key.getUriId());
+        }
+        return new ArrayList<>(result);
+    }
+
+    private List<StatsDto> toStats(List<HitCount> hitCounts) {
+        Map<AppUri, Long> counts = new HashMap<>();
+        for (HitCount hitCount : hitCounts) {
+            counts.put(new AppUri(hitCount.getAppId(), hitCount.getUriId()), hitCount.getHits());
+        }
+        return hitDictionary.toStats(counts);
+    }
+}
@@ -0,0 +1,133 @@
+package ru.yandex.practicum.top;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.dictionary.AppUri;
+import ru.yandex.practicum.hit.Hit;
+import ru.yandex.practicum.hit.HitCursorRepository;
+import ru.yandex.practicum.ingest.HitListener;
+import ru.yandex.practicum.rollup.Rollup;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Хранит в памяти часовые сводки Space-Saving по парам приложение-адрес
+ * за последние {@code stats-server.top.hours} часов. Сводки пополняются после сохранения
+ * хитов, а при старте сервера восстанавливаются по таблице `hits` в фоне.
+ * Хиты, пришедшие во время загрузки, могут учесться дважды: сводки служат только
+ * для отбора кандидатов, точные значения пересчитываются по агрегатам.
+ */
+@Slf4j
+@Component
+@Order(HitListener.AGGREGATE_ORDER)
+@StandaloneNode
+public class TopStore implements HitListener {
+    private static final long SECONDS_PER_HOUR = 3600;
+
+    private final HitCursorRepository hitCursorRepository;
+    private final int capacity;
+    private final int hours;
+    private final ConcurrentNavigableMap<Long, SpaceSaving<AppUri>> summaries = new ConcurrentSkipListMap<>();
+    private volatile LocalDateTime start;
+
+    public TopStore(HitCursorRepository hitCursorRepository,
+                    @Value("${stats-server.top.capacity:1000}") int capacity,
+                    @Value("${stats-server.top.hours:168}") int hours) {
+        this.hitCursorRepository = hitCursorRepository;
+        this.capacity = capacity;
+        this.hours = hours;
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (hours <= 0) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        LocalDateTime from = storeStart();
+        long count = hitCursorRepository.forEachSince(from, (appId, uriId, ip, timestamp) ->
+                add(new AppUri(appId, uriId), timestamp));
+        start = from;
+        log.info("Loaded top-k summaries since {} from {} hits in {} ms", from, count,
+                System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Возвращает начало периода, за который есть сводки.
+     *
+     * @return начало периода или null, пока сводки не загружены
+     */
+    public LocalDateTime getStart() {
+        return start;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void onHits(List<Hit> hits) {
+        if (hours <= 0) {
+            return;
+        }
+        LocalDateTime from = start != null ? start : storeStart();
+        for (Hit hit : hits) {
+            if (!hit.getTimestamp().isBefore(from)) {
+                add(new AppUri(hit.getAppId(), hit.getUriId()), hit.getTimestamp());
+            }
+        }
+    }
+
+    /**
+     * Объединяет часовые сводки за полуоткрытый интервал часов.
+     *
+     * @param from начало интервала, выровненное по часу
+     * @param to   конец интервала, выровненный по часу
+     * @return оценки частоты пар приложение-адрес с точностью до общего для всех слагаемого
+     */
+    public Map<AppUri, Long> estimate(LocalDateTime from, LocalDateTime to) {
+        Map<AppUri, Long> estimates = new HashMap<>();
+        for (SpaceSaving<AppUri> summary : summaries.subMap(toHour(from), toHour(to)).values()) {
+            summary.addTo(estimates);
+        }
+        return estimates;
+    }
+
+    @Scheduled(cron = "${stats-server.top.evict-cron:0 1 * * * *}")
+    public void evict() {
+        if (start == null) {
+            return;
+        }
+        LocalDateTime storeStart = storeStart();
+        if (storeStart.isAfter(start)) {
+            start = storeStart;
+        }
+        summaries.headMap(toHour(start) - 1).clear();
+    }
+
+    private LocalDateTime storeStart() {
+        return Rollup.HOUR.floor(LocalDateTime.now()).minusHours(hours - 1);
+    }
+
+    private void add(AppUri key, LocalDateTime timestamp) {
+        summaries.computeIfAbsent(toHour(timestamp), hour -> new SpaceSaving<>(capacity)).add(key, 1);
+    }
+
+    private static long toHour(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), SECONDS_PER_HOUR);
+    }
+}
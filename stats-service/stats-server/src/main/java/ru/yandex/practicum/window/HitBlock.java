@@ -0,0 +1,87 @@
+package ru.yandex.practicum.window;
+
+import ru.yandex.practicum.sketch.Hashing;
+
+import java.util.Arrays;
+
+/**
+ * Хиты одного часа в колоночном виде: параллельные массивы идентификаторов приложения
+ * и адреса, хеша IP-адреса и времени в секундах эпохи. Строки только дописываются,
+ * поэтому читатель может сканировать массивы без блокировки до запомненного размера.
+ */
+class HitBlock {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int[] appIds = new int[INITIAL_CAPACITY];
+    private int[] uriIds = new int[INITIAL_CAPACITY];
+    private long[] ips = new long[INITIAL_CAPACITY];
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private int size;
+
+    synchronized void add(int appId, int uriId, long ip, long timestamp) {
+        if (size == appIds.length) {
+            int capacity = size * 2;
+            appIds = Arrays.copyOf(appIds, capacity);
+            uriIds = Arrays.copyOf(uriIds, capacity);
+            ips = Arrays.copyOf(ips, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+        }
+        appIds[size] = appId;
+        uriIds[size] = uriId;
+        ips[size] = ip;
+        timestamps[size] = timestamp;
+        size++;
+    }
+
+    /**
+     * Считает хиты блока за полуоткрытый интервал по парам приложение-адрес.
+     *
+     * @param from       начало интервала в секундах эпохи
+     * @param to         конец интервала в секундах эпохи
+     * @param uriFilter  отсортированные идентификаторы адресов или null для всех адресов
+     * @param counts     счётчики по ключу пары приложение-адрес
+     * @param uniqueIps  уже встреченные пары ключ-IP или null, если считаются все хиты
+     */
+    void count(long from, long to, int[] uriFilter, LongCountMap counts, LongCountMap uniqueIps) {
+        int[] blockAppIds;
+        int[] blockUriIds;
+        long[] blockIps;
+        long[] blockTimestamps;
+        int blockSize;
+        synchronized (this) {
+            blockAppIds = appIds;
+            blockUriIds = uriIds;
+            blockIps = ips;
+            blockTimestamps = timestamps;
+            blockSize = size;
+        }
+        for (int i = 0; i < blockSize; i++) {
+            long timestamp = blockTimestamps[i];
+            if (timestamp < from || timestamp >= to) {
+                continue;
+            }
+            int uriId = blockUriIds[i];
+            if (uriFilter != null && Arrays.binarySearch(uriFilter, uriId) < 0) {
+                continue;
+            }
+            long key = key(blockAppIds[i], uriId);
+            if (uniqueIps == null) {
+                counts.add(key, 1);
+            } else if (uniqueIps.add(blockIps[i] ^ Hashing.mix64(key), 0)) {
+                counts.add(key, 1);
+            }
+        }
+    }
+
+    static long key(int appId, int uriId) {
+        return ((long) uriId << 32) | (appId & 0xffffffffL);
+    }
+
+    static int appId(long key) {
+        return (int) key;
+    }
+
+    static int uriId(long key) {
+        return (int) (key >>> 32);
+    }
+}
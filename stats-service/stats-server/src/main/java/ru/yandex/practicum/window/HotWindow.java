@@ -0,0 +1,148 @@
+package ru.yandex.practicum.window;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.cluster.StandaloneNode;
+import ru.yandex.practicum.dictionary.AppUri;
+import ru.yandex.practicum.hit.Hit;
+import ru.yandex.practicum.hit.HitCursorRepository;
+import ru.yandex.practicum.ingest.HitListener;
+import ru.yandex.practicum.rollup.Rollup;
+import ru.yandex.practicum.sketch.Hashing;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Горячее окно: хиты за последние {@code stats-server.hot-window.hours} часов в памяти
+ * в колоночном виде, по блоку на час. Запросы статистики за период внутри окна
+ * считаются сканированием примитивных массивов без обращения к базе.
+ * Окно заполняется из таблицы `hits` при старте, до приёма запросов, и дальше
+ * пополняется после сохранения хитов. Хиты с временем раньше начала окна
+ * в окно не попадают и считаются только по базе.
+ * Уникальные IP-адреса различаются по 64-битному хешу адреса.
+ */
+@Slf4j
+@Component
+@Order(HitListener.AGGREGATE_ORDER)
+@StandaloneNode
+public class HotWindow implements HitListener {
+    private static final long SECONDS_PER_HOUR = 3600;
+
+    private final HitCursorRepository hitCursorRepository;
+    private final int hours;
+    private final ConcurrentNavigableMap<Long, HitBlock> blocks = new ConcurrentSkipListMap<>();
+    private volatile LocalDateTime start;
+
+    public HotWindow(HitCursorRepository hitCursorRepository,
+                     @Value("${stats-server.hot-window.hours:6}") int hours) {
+        this.hitCursorRepository = hitCursorRepository;
+        this.hours = hours;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (hours <= 0) {
+            log.info("Hot window disabled");
+            return;
+        }
+        long started = System.currentTimeMillis();
+        LocalDateTime from = windowStart();
+        long count = hitCursorRepository.forEachSince(from, (appId, uriId, ip, timestamp) ->
+                add(appId, uriId, ip, toEpochSecond(timestamp)));
+        start = from;
+        log.info("Loaded hot window since {} from {} hits in {} ms", from, count,
+                System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Возвращает начало окна: все хиты с временем не раньше него есть в памяти.
+     *
+     * @return начало окна или null, если окно отключено
+     */
+    public LocalDateTime getStart() {
+        return start;
+    }
+
+    @Override
+    public void onHits(List<Hit> hits) {
+        LocalDateTime windowStart = start;
+        if (windowStart == null) {
+            return;
+        }
+        for (Hit hit : hits) {
+            if (!hit.getTimestamp().isBefore(windowStart)) {
+                add(hit.getAppId(), hit.getUriId(), hit.getIp(), toEpochSecond(hit.getTimestamp()));
+            }
+        }
+    }
+
+    /**
+     * Считает хиты за полуоткрытый интервал внутри окна.
+     *
+     * @param from   начало интервала, не раньше начала окна
+     * @param to     конец интервала
+     * @param uriIds идентификаторы адресов или null для всех адресов
+     * @param unique флаг, указывающий, считать ли только уникальные IP-адреса
+     * @return счётчики по парам приложение-адрес
+     */
+    public Map<AppUri, Long> count(LocalDateTime from, LocalDateTime to, List<Integer> uriIds, boolean unique) {
+        long fromSecond = toEpochSecond(from);
+        long toSecond = toEpochSecond(to);
+        int[] uriFilter = null;
+        if (uriIds != null) {
+            uriFilter = uriIds.stream().mapToInt(Integer::intValue).sorted().toArray();
+        }
+        LongCountMap counts = new LongCountMap();
+        LongCountMap uniqueIps = unique ? new LongCountMap(1024) : null;
+        long fromHour = Math.floorDiv(fromSecond, SECONDS_PER_HOUR);
+        long toHour = Math.floorDiv(toSecond - 1, SECONDS_PER_HOUR);
+        if (fromHour <= toHour) {
+            for (HitBlock block : blocks.subMap(fromHour, true, toHour, true).values()) {
+                block.count(fromSecond, toSecond, uriFilter, counts, uniqueIps);
+            }
+        }
+        Map<AppUri, Long> result = new HashMap<>();
+        counts.forEach((key, hits) -> result.put(new AppUri(HitBlock.appId(key), HitBlock.uriId(key)), hits));
+        return result;
+    }
+
+    /**
+     * Сдвигает начало окна и удаляет устаревшие блоки. Блоки удаляются на час позже
+     * сдвига начала, чтобы не обрезать уже начатые запросы.
+     */
+    @Scheduled(fixedDelayString = "${stats-server.hot-window.evict-interval-ms:60000}")
+    public void evict() {
+        if (start == null) {
+            return;
+        }
+        LocalDateTime windowStart = windowStart();
+        if (windowStart.isAfter(start)) {
+            start = windowStart;
+        }
+        long keepFrom = Math.floorDiv(toEpochSecond(start), SECONDS_PER_HOUR) - 1;
+        blocks.headMap(keepFrom).clear();
+    }
+
+    private LocalDateTime windowStart() {
+        return Rollup.HOUR.floor(LocalDateTime.now()).minusHours(hours - 1);
+    }
+
+    private void add(int appId, int uriId, byte[] ip, long timestamp) {
+        blocks.computeIfAbsent(Math.floorDiv(timestamp, SECONDS_PER_HOUR), key -> new HitBlock())
+                .add(appId, uriId, Hashing.hash64(ip), timestamp);
+    }
+
+    private static long toEpochSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+}
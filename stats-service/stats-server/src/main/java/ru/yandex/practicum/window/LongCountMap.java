@@ -0,0 +1,84 @@
+package ru.yandex.practicum.window;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Хеш-таблица счётчиков с ключами long на примитивных массивах с открытой адресацией:
+ * подсчёт по миллионам строк окна обходится без упаковки ключей и значений в объекты.
+ */
+class LongCountMap {
+    private static final double LOAD_FACTOR = 0.5;
+
+    private long[] keys;
+    private long[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+    LongCountMap() {
+        this(16);
+    }
+
+    LongCountMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Прибавляет значение к счётчику ключа.
+     *
+     * @param key   ключ
+     * @param delta приращение
+     * @return true, если ключ встретился впервые
+     */
+    boolean add(long key, long delta) {
+        int slot = slot(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                values[slot] += delta;
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        used[slot] = true;
+        keys[slot] = key;
+        values[slot] = delta;
+        if (++size > keys.length * LOAD_FACTOR) {
+            grow();
+        }
+        return true;
+    }
+
+    void forEach(BiConsumer<Long, Long> consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9e3779b97f4a7c15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                add(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
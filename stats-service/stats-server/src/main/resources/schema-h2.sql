@@ -0,0 +1,10 @@
+CREATE TABLE IF NOT EXISTS hits
+(
+    id         BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    app_id     INTEGER                                 NOT NULL,
+    uri_id     INTEGER                                 NOT NULL,
+    ip         VARBINARY(16)                           NOT NULL,
+    time_stamp TIMESTAMP WITHOUT TIME ZONE             NOT NULL,
+    client_id  VARCHAR(64),
+    CONSTRAINT pk_hit PRIMARY KEY (id)
+);
@@ -0,0 +1,14 @@
+-- Сырые хиты секционированы по дням; секции создаёт и удаляет HitPartitionManager,
+-- хиты вне созданных секций попадают в секцию по умолчанию
+CREATE TABLE IF NOT EXISTS hits
+(
+    id         BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    app_id     INTEGER                                 NOT NULL,
+    uri_id     INTEGER                                 NOT NULL,
+    ip         BYTEA                                   NOT NULL,
+    time_stamp TIMESTAMP WITHOUT TIME ZONE             NOT NULL,
+    client_id  VARCHAR(64),
+    CONSTRAINT pk_hit PRIMARY KEY (id, time_stamp)
+) PARTITION BY RANGE (time_stamp);
+
+CREATE TABLE IF NOT EXISTS hits_default PARTITION OF hits DEFAULT;
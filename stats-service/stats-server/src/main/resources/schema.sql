@@ -1,9 +1,148 @@
-CREATE TABLE IF NOT EXISTS hits
-(
-    id         BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
-    app        VARCHAR(255)                            NOT NULL,
-    uri        VARCHAR(255)                            NOT NULL,
-    ip         VARCHAR(25)                             NOT NULL,
-    time_stamp TIMESTAMP WITHOUT TIME ZONE             NOT NULL,
-    CONSTRAINT pk_hit PRIMARY KEY (id)
-);
\ No newline at end of file
+CREATE INDEX IF NOT EXISTS idx_hits_time_stamp ON hits (time_stamp);
+CREATE INDEX IF NOT EXISTS idx_hits_uri_id_time_stamp ON hits (uri_id, time_stamp);
+-- Порядок выгрузки GET /hits/export
+CREATE INDEX IF NOT EXISTS idx_hits_time_stamp_id ON hits (time_stamp, id);
+
+-- Клиентский идентификатор хита: повторная отправка хита с тем же идентификатором не сохраняется
+ALTER TABLE hits ADD COLUMN IF NOT EXISTS client_id VARCHAR(64);
+DROP INDEX IF EXISTS uq_hits_client_id_time_stamp;
+
+-- Уникальность клиентских идентификаторов без учёта времени хита. Уникальный индекс секционированной
+-- таблицы hits обязан включать time_stamp, поэтому идентификаторы хранятся в отдельной таблице
+-- только для хитов, у которых они есть; строки старше срока хранения удаляются вместе с секциями хитов
+CREATE TABLE IF NOT EXISTS hit_client_ids
+(
+    client_id  VARCHAR(64)                 NOT NULL,
+    time_stamp TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    CONSTRAINT pk_hit_client_id PRIMARY KEY (client_id)
+);
+
+INSERT INTO hit_client_ids (client_id, time_stamp)
+SELECT client_id, MIN(time_stamp)
+FROM hits
+WHERE client_id IS NOT NULL
+  AND NOT EXISTS (SELECT 1 FROM hit_client_ids)
+GROUP BY client_id;
+
+-- Словари приложений и адресов: в хитах и агрегатах хранятся только их идентификаторы
+CREATE TABLE IF NOT EXISTS apps
+(
+    id   INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    name VARCHAR(255)                             NOT NULL,
+    CONSTRAINT pk_app PRIMARY KEY (id),
+    CONSTRAINT uq_app_name UNIQUE (name)
+);
+
+CREATE TABLE IF NOT EXISTS uris
+(
+    id   INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    name VARCHAR(255)                             NOT NULL,
+    CONSTRAINT pk_uri PRIMARY KEY (id),
+    CONSTRAINT uq_uri_name UNIQUE (name)
+);
+
+-- Порядковые номера IPv6-адресов для битовых карт уникальных посетителей; IPv4-адрес сам служит номером
+CREATE TABLE IF NOT EXISTS ipv6_ordinals
+(
+    id   INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    name VARCHAR(255)                             NOT NULL,
+    CONSTRAINT pk_ipv6_ordinal PRIMARY KEY (id),
+    CONSTRAINT uq_ipv6_ordinal_name UNIQUE (name)
+);
+
+CREATE TABLE IF NOT EXISTS hits_per_minute
+(
+    app_id INTEGER                     NOT NULL,
+    uri_id INTEGER                     NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits   BIGINT                      NOT NULL,
+    CONSTRAINT pk_hits_per_minute PRIMARY KEY (uri_id, bucket, app_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hits_per_minute_bucket ON hits_per_minute (bucket);
+
+CREATE TABLE IF NOT EXISTS hits_per_hour
+(
+    app_id INTEGER                     NOT NULL,
+    uri_id INTEGER                     NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits   BIGINT                      NOT NULL,
+    CONSTRAINT pk_hits_per_hour PRIMARY KEY (uri_id, bucket, app_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hits_per_hour_bucket ON hits_per_hour (bucket);
+
+-- Шаблоны адресов из stats-server.uri-templates и агрегаты по ним; адрес относится к шаблону при приёме хитов
+CREATE TABLE IF NOT EXISTS uri_templates
+(
+    id   INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    name VARCHAR(255)                             NOT NULL,
+    CONSTRAINT pk_uri_template PRIMARY KEY (id),
+    CONSTRAINT uq_uri_template_name UNIQUE (name)
+);
+
+-- Шаблон, к агрегатам которого относятся хиты адреса; при смене настройки агрегаты шаблонов пересобираются
+CREATE TABLE IF NOT EXISTS uri_template_ids
+(
+    uri_id      INTEGER NOT NULL,
+    template_id INTEGER NOT NULL,
+    CONSTRAINT pk_uri_template_ids PRIMARY KEY (uri_id)
+);
+
+CREATE TABLE IF NOT EXISTS template_hits_per_minute
+(
+    app_id      INTEGER                     NOT NULL,
+    template_id INTEGER                     NOT NULL,
+    bucket      TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits        BIGINT                      NOT NULL,
+    CONSTRAINT pk_template_hits_per_minute PRIMARY KEY (template_id, bucket, app_id)
+);
+
+CREATE TABLE IF NOT EXISTS template_hits_per_hour
+(
+    app_id      INTEGER                     NOT NULL,
+    template_id INTEGER                     NOT NULL,
+    bucket      TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits        BIGINT                      NOT NULL,
+    CONSTRAINT pk_template_hits_per_hour PRIMARY KEY (template_id, bucket, app_id)
+);
+
+-- Однократное заполнение таблиц предагрегации по уже накопленным хитам
+INSERT INTO hits_per_minute (app_id, uri_id, bucket, hits)
+SELECT app_id, uri_id, DATE_TRUNC('minute', time_stamp), COUNT(*)
+FROM hits
+WHERE NOT EXISTS (SELECT 1 FROM hits_per_minute)
+GROUP BY app_id, uri_id, DATE_TRUNC('minute', time_stamp);
+
+INSERT INTO hits_per_hour (app_id, uri_id, bucket, hits)
+SELECT app_id, uri_id, DATE_TRUNC('hour', time_stamp), COUNT(*)
+FROM hits
+WHERE NOT EXISTS (SELECT 1 FROM hits_per_hour)
+GROUP BY app_id, uri_id, DATE_TRUNC('hour', time_stamp);
+
+-- Счётчики хитов за всё время и время первого и последнего хита по парам приложение-адрес
+CREATE TABLE IF NOT EXISTS hits_all_time
+(
+    app_id     INTEGER                     NOT NULL,
+    uri_id     INTEGER                     NOT NULL,
+    hits       BIGINT                      NOT NULL,
+    first_seen TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    last_seen  TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    CONSTRAINT pk_hits_all_time PRIMARY KEY (uri_id, app_id)
+);
+
+-- Однократное заполнение по часовым агрегатам; границы времени расширяются до границ часов
+INSERT INTO hits_all_time (app_id, uri_id, hits, first_seen, last_seen)
+SELECT app_id, uri_id, SUM(hits), MIN(bucket), MAX(bucket) + INTERVAL '3599' SECOND
+FROM hits_per_hour
+WHERE NOT EXISTS (SELECT 1 FROM hits_all_time)
+GROUP BY app_id, uri_id;
+
+-- Отметка журнала хитов, до которой хиты загружены в базу; обновляется в одной транзакции со вставкой хитов
+CREATE TABLE IF NOT EXISTS hit_journal_checkpoint
+(
+    id       INTEGER NOT NULL,
+    segment  BIGINT  NOT NULL,
+    position BIGINT  NOT NULL,
+    CONSTRAINT pk_hit_journal_checkpoint PRIMARY KEY (id)
+);
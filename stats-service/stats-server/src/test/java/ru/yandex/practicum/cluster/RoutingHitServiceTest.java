@@ -0,0 +1,87 @@
+package ru.yandex.practicum.cluster;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.client.RestTemplate;
+import ru.yandex.practicum.HitDto;
+import ru.yandex.practicum.StatsDto;
+import ru.yandex.practicum.StatsServerApp;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Кластер из двух шардов и маршрутизатора в одном процессе: у каждого шарда своя база H2 в памяти.
+ */
+class RoutingHitServiceTest {
+    private static final String TEMPLATE = "/events/{id}";
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2024, 1, 10, 12, 0);
+    private static final List<String> IPS = List.of("10.0.0.1", "10.0.0.2", "2001:db8::1");
+    private static final int URIS = 20;
+
+    private static final List<ConfigurableApplicationContext> NODES = new ArrayList<>();
+    private static final RestTemplate REST = new RestTemplate();
+    private static List<String> shards;
+    private static String router;
+
+    @BeforeAll
+    static void startCluster() {
+        shards = List.of(start(), start());
+        router = start("--stats-server.cluster.role=router",
+                "--stats-server.cluster.shards=" + String.join(",", shards));
+        List<HitDto> hits = new ArrayList<>();
+        for (int id = 1; id <= URIS; id++) {
+            for (String ip : IPS) {
+                hits.add(HitDto.builder().app("ewm").uri("/events/" + id).ip(ip).timestamp(TIMESTAMP).build());
+            }
+        }
+        REST.postForLocation(router + "/hits/batch", hits);
+    }
+
+    @AfterAll
+    static void stopCluster() {
+        NODES.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    void templateHitsAreSpreadOverShards() {
+        for (String shard : shards) {
+            assertThat(templateStats(shard, false)).singleElement()
+                    .satisfies(stats -> assertThat(stats.getHits()).isPositive().isLessThan(URIS * IPS.size()));
+        }
+    }
+
+    @Test
+    void routerSumsTemplateHitsOfAllShards() {
+        assertThat(templateStats(router, false))
+                .containsExactly(new StatsDto("ewm", TEMPLATE, (long) URIS * IPS.size()));
+    }
+
+    @Test
+    void routerCountsVisitorsSeenOnSeveralShardsOnce() {
+        assertThat(templateStats(router, true))
+                .containsExactly(new StatsDto("ewm", TEMPLATE, (long) IPS.size()));
+    }
+
+    private static List<StatsDto> templateStats(String node, boolean unique) {
+        return REST.exchange(node + "/stats?start={start}&end={end}&template={template}&unique={unique}",
+                HttpMethod.GET, null, new ParameterizedTypeReference<List<StatsDto>>() {
+                }, "2024-01-10 00:00:00", "2024-01-11 00:00:00", TEMPLATE, unique).getBody();
+    }
+
+    private static String start(String... args) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(StatsServerApp.class)
+                .profiles("test")
+                .run(args);
+        NODES.add(context);
+        return "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+    }
+}
@@ -0,0 +1,98 @@
+package ru.yandex.practicum.hit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+import ru.yandex.practicum.HitDto;
+import ru.yandex.practicum.StatsDto;
+import ru.yandex.practicum.StatsServerApp;
+import ru.yandex.practicum.partition.RetentionNotice;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Уникальные хиты при сроке хранения сырых хитов: запрос за всю историю считается по битовым картам
+ * за всё время целиком, а запрос, начало которого обрезано по сроку хранения, отмечается заголовком.
+ */
+class HitServiceImplTest {
+    private static final int RETENTION_DAYS = 3;
+    private static final String URI = "/events/1";
+    private static final String START_HISTORY = "2000-01-01 00:00:00";
+    private static final List<String> OLD_IPS = List.of("10.0.0.1", "10.0.0.2");
+    private static final List<String> RECENT_IPS = List.of("10.0.0.2", "10.0.0.3", "2001:db8::1");
+    private static final long ALL_IPS = 4;
+    private static final long TIMEOUT_MS = 30_000;
+
+    private static final RestTemplate REST = new RestTemplate();
+    private static final LocalDateTime RECENT = LocalDateTime.now().withNano(0).minusHours(1);
+    private static ConfigurableApplicationContext context;
+    private static String node;
+
+    @BeforeAll
+    static void startNode() {
+        context = new SpringApplicationBuilder(StatsServerApp.class)
+                .profiles("test")
+                .run("--stats-server.partitions.retention-days=" + RETENTION_DAYS);
+        node = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        LocalDateTime old = RECENT.minusDays(RETENTION_DAYS * 3);
+        List<HitDto> hits = new ArrayList<>();
+        OLD_IPS.forEach(ip -> hits.add(HitDto.builder().app("ewm").uri(URI).ip(ip).timestamp(old).build()));
+        RECENT_IPS.forEach(ip -> hits.add(HitDto.builder().app("ewm").uri(URI).ip(ip).timestamp(RECENT).build()));
+        // хит после конца запросов за период не даёт ответить на них по счётчикам за всё время
+        hits.add(HitDto.builder().app("ewm").uri(URI).ip(RECENT_IPS.get(0)).timestamp(RECENT.plusMinutes(30)).build());
+        REST.postForLocation(node + "/hits/batch", hits);
+    }
+
+    @AfterAll
+    static void stopNode() {
+        context.close();
+    }
+
+    @Test
+    void wholeHistoryIsCountedByAllTimeBitmapsWithoutNotice() throws InterruptedException {
+        String end = RetentionNotice.format(RECENT.plusYears(1));
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        ResponseEntity<List<StatsDto>> response = stats(START_HISTORY, end, true);
+        while (response.getHeaders().containsKey(RetentionNotice.HEADER) && System.currentTimeMillis() < deadline) {
+            // счётчики за всё время читаются в фоне после старта, до этого запрос обрезается по сроку хранения
+            Thread.sleep(100);
+            response = stats(START_HISTORY, end, true);
+        }
+        assertThat(response.getHeaders().get(RetentionNotice.HEADER)).isNull();
+        assertThat(response.getBody()).containsExactly(new StatsDto("ewm", URI, ALL_IPS));
+    }
+
+    @Test
+    void uniqueStatsBeforeRetentionHorizonAreMarked() {
+        LocalDateTime horizon = LocalDate.now().minusDays(RETENTION_DAYS).atStartOfDay();
+        ResponseEntity<List<StatsDto>> response = stats(START_HISTORY, RetentionNotice.format(RECENT), true);
+        assertThat(response.getHeaders().getFirst(RetentionNotice.HEADER))
+                .isEqualTo(RetentionNotice.format(horizon));
+        assertThat(response.getBody()).containsExactly(new StatsDto("ewm", URI, (long) RECENT_IPS.size()));
+    }
+
+    @Test
+    void nonUniqueStatsAreNotMarked() {
+        ResponseEntity<List<StatsDto>> response = stats(START_HISTORY, RetentionNotice.format(RECENT), false);
+        assertThat(response.getHeaders().get(RetentionNotice.HEADER)).isNull();
+        assertThat(response.getBody())
+                .containsExactly(new StatsDto("ewm", URI, (long) OLD_IPS.size() + RECENT_IPS.size()));
+    }
+
+    private static ResponseEntity<List<StatsDto>> stats(String start, String end, boolean unique) {
+        return REST.exchange(node + "/stats?start={start}&end={end}&uris={uri}&unique={unique}",
+                HttpMethod.GET, null, new ParameterizedTypeReference<List<StatsDto>>() {
+                }, start, end, URI, unique);
+    }
+}